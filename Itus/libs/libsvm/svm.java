@@ -1,41 +1,102 @@
-
-
-
+// Originally generated from libsvm's svm.m4, kept as the upstream template
+// to compare libsvm updates against. Itus edits this file directly, so
+// change it here rather than regenerating it from the template.
 
 
 package libsvm;
 import java.io.*;
 import java.util.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 //
 // Kernel Cache
 //
 // l is the number of total data items
-// size is the cache size limit in bytes
+// the budget is in bytes, and counts the Java object and array headers as
+// well as the cached values (see budget below for the default)
+// columns live in float[] arrays, or with off_heap in fixed slots of l floats
+// each in a direct buffer; get_data then copies them into one of two scratch
+// columns, and the filled part must be written back with put_data
 //
 class Cache {
+	static final long HEAD_BYTES = 32;	// head_t object
+	static final long ARRAY_BYTES = 16;	// float[] header
+
 	private final int l;
-	private long size;
+	private long size;		// bytes left in the budget
+	private final long budget;
+	private final svm_cache_stats stats;
 	private final class head_t
 	{
 		head_t prev, next;	// a cicular list
 		float[] data;
+		int slot = -1;		// off_heap: the slot holding data
 		int len;		// data[0,len) is cached in this entry
 	}
 	private final head_t[] head;
 	private head_t lru_head;
 
-	Cache(int l_, long size_)
+	// off_heap only
+	private final FloatBuffer store;
+	private final int[] free_slots;
+	private int nr_free;
+	private final float[][] scratch;
+	private int next_scratch;
+
+	Cache(int l_, svm_parameter param)
 	{
 		l = l_;
-		size = size_;
+		stats = param.cache_stats;
 		head = new head_t[l];
 		for(int i=0;i<l;i++) head[i] = new head_t();
-		size /= 4;
-		size -= l * (16/4);	// sizeof(head_t) == 16
-		size = Math.max(size, 2* (long) l);  // cache must be large enough for two columns
 		lru_head = new head_t();
 		lru_head.next = lru_head.prev = lru_head;
+
+		long bytes = budget(param) - l * HEAD_BYTES;
+		if(param.cache_off_heap == 0)
+		{
+			// cache must be large enough for two columns
+			size = Math.max(bytes, 2 * (ARRAY_BYTES + 4L * l));
+			store = null;
+			free_slots = null;
+			scratch = null;
+		}
+		else
+		{
+			long column = 4L * Math.max(l,1);
+			long slots = Math.max(Math.min(bytes / column, l), 2);
+			slots = Math.min(slots, Integer.MAX_VALUE / column);
+			size = slots * column;
+			store = ByteBuffer.allocateDirect((int)size).order(ByteOrder.nativeOrder()).asFloatBuffer();
+			free_slots = new int[(int)slots];
+			for(int i=0;i<slots;i++)
+				free_slots[i] = (int)slots-1-i;
+			nr_free = (int)slots;
+			scratch = new float[2][l];
+		}
+		budget = size;
+		if(stats != null)
+			svm_cache_stats.max(stats.budget,budget + l * HEAD_BYTES);
+	}
+
+	// the budget in bytes: param.cache_size MB, but no more than half of
+	// the heap that is still available; a quarter of it if cache_size is 0,
+	// split between the solves that may run at once on param.pool
+	static long budget(svm_parameter param)
+	{
+		Runtime runtime = Runtime.getRuntime();
+		long available = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+		if(param.cache_size > 0)
+			return Math.min((long)(param.cache_size*(1<<20)), available/2);
+		long bytes = available/4;
+		if(param.pool != null)
+			bytes /= param.pool.getParallelism();
+		return bytes;
 	}
 
 	private void lru_delete(head_t h)
@@ -54,6 +115,43 @@ class Cache {
 		h.next.prev = h;
 	}
 
+	// bytes held by the column of h
+	private long bytes(head_t h)
+	{
+		if(store != null)
+			return 4L * l;
+		return h.data == null ? 0 : ARRAY_BYTES + 4L * h.data.length;
+	}
+
+	// drops the least recently used column
+	private void evict()
+	{
+		head_t old = lru_head.next;
+		lru_delete(old);
+		release(old);
+		if(stats != null)
+			stats.evictions.incrementAndGet();
+	}
+
+	private void release(head_t h)
+	{
+		if(store != null)
+		{
+			if(h.slot >= 0)
+			{
+				free_slots[nr_free++] = h.slot;
+				size += 4L * l;
+			}
+			h.slot = -1;
+		}
+		else
+		{
+			size += bytes(h);
+			h.data = null;
+		}
+		h.len = 0;
+	}
+
 	// request data [0,len)
 	// return some position p where [p,len) need to be filled
 	// (p >= len if nothing needs to be filled)
@@ -64,23 +162,31 @@ class Cache {
 		if(h.len > 0) lru_delete(h);
 		int more = len - h.len;
 
+		if(stats != null)
+		{
+			if(more > 0)
+				stats.misses.incrementAndGet();
+			else
+				stats.hits.incrementAndGet();
+		}
+
+		if(store != null)
+			return get_slot(h,data,len,more);
+
 		if(more > 0)
 		{
+			long need = 4L * more + (h.data == null ? ARRAY_BYTES : 0);
 			// free old space
-			while(size < more)
-			{
-				head_t old = lru_head.next;
-				lru_delete(old);
-				size += old.len;
-				old.data = null;
-				old.len = 0;
-			}
+			while(size < need && lru_head.next != lru_head)
+				evict();
 
 			// allocate new space
 			float[] new_data = new float[len];
 			if(h.data != null) System.arraycopy(h.data,0,new_data,0,h.len);
 			h.data = new_data;
-			size -= more;
+			size -= need;
+			if(stats != null)
+				svm_cache_stats.max(stats.peak,budget-size + l * HEAD_BYTES);
 			do {int _=h.len; h.len=len; len=_;} while(false);
 		}
 
@@ -89,6 +195,43 @@ class Cache {
 		return len;
 	}
 
+	// get_data for the off-heap store
+	private int get_slot(head_t h, float[][] data, int len, int more)
+	{
+		float[] column = scratch[next_scratch];
+		next_scratch = 1 - next_scratch;
+		if(h.len > 0)
+		{
+			store.position(h.slot * l);
+			store.get(column,0,Math.min(h.len,len));
+		}
+		if(more > 0)
+		{
+			if(h.slot < 0)
+			{
+				if(nr_free == 0)
+					evict();
+				h.slot = free_slots[--nr_free];
+				size -= 4L * l;
+				if(stats != null)
+					svm_cache_stats.max(stats.peak,budget-size + l * HEAD_BYTES);
+			}
+			do {int _=h.len; h.len=len; len=_;} while(false);
+		}
+		lru_insert(h);
+		data[0] = column;
+		return len;
+	}
+
+	// stores data[start,len) of a column that get_data asked to fill
+	void put_data(int index, float[] data, int start, int len)
+	{
+		if(store == null || start >= len)
+			return;
+		store.position(head[index].slot * l + start);
+		store.put(data,start,len-start);
+	}
+
 	void swap_index(int i, int j)
 	{
 		if(i==j) return;
@@ -96,6 +239,7 @@ class Cache {
 		if(head[i].len > 0) lru_delete(head[i]);
 		if(head[j].len > 0) lru_delete(head[j]);
 		do {float[] _=head[i].data; head[i].data=head[j].data; head[j].data=_;} while(false);
+		do {int _=head[i].slot; head[i].slot=head[j].slot; head[j].slot=_;} while(false);
 		do {int _=head[i].len; head[i].len=head[j].len; head[j].len=_;} while(false);
 		if(head[i].len > 0) lru_insert(head[i]);
 		if(head[j].len > 0) lru_insert(head[j]);
@@ -106,14 +250,22 @@ class Cache {
 			if(h.len > i)
 			{
 				if(h.len > j)
-					do {float _=h.data[i]; h.data[i]=h.data[j]; h.data[j]=_;} while(false);
+				{
+					if(store != null)
+					{
+						int base = h.slot * l;
+						float _ = store.get(base+i);
+						store.put(base+i,store.get(base+j));
+						store.put(base+j,_);
+					}
+					else
+						do {float _=h.data[i]; h.data[i]=h.data[j]; h.data[j]=_;} while(false);
+				}
 				else
 				{
 					// give up
 					lru_delete(h);
-					size += h.len;
-					h.data = null;
-					h.len = 0;
+					release(h);
 				}
 			}
 		}
@@ -137,6 +289,17 @@ abstract class Kernel extends QMatrix {
 	private svm_node[][] x;
 	private final double[] x_square;
 
+	// when every instance is dense (see aligned), the instances are also
+	// packed row by row into x_dense; x_offset[i] is where instance i starts
+	private final double[] x_dense;
+	private final int[] x_offset;
+	private final int dim;
+
+	// columns with at least 2*PARALLEL_COLUMN missing entries are filled
+	// in chunks of about PARALLEL_COLUMN entries on pool, if it is set
+	static final int PARALLEL_COLUMN = 2048;
+	private final ForkJoinPool pool;
+
 	// svm_parameter
 	private final int kernel_type;
 	private final int degree;
@@ -149,6 +312,7 @@ abstract class Kernel extends QMatrix {
 	void swap_index(int i, int j)
 	{
 		do {svm_node[] _=x[i]; x[i]=x[j]; x[j]=_;} while(false);
+		if(x_offset != null) do {int _=x_offset[i]; x_offset[i]=x_offset[j]; x_offset[j]=_;} while(false);
 		if(x_square != null) do {double _=x_square[i]; x_square[i]=x_square[j]; x_square[j]=_;} while(false);
 	}
 
@@ -166,6 +330,8 @@ abstract class Kernel extends QMatrix {
 
 	double kernel_function(int i, int j)
 	{
+		if(x_dense != null)
+			return dense_kernel_function(i,j);
 		switch(kernel_type)
 		{
 			case svm_parameter.LINEAR:
@@ -183,15 +349,54 @@ abstract class Kernel extends QMatrix {
 		}
 	}
 
+	// kernel_function on the packed instances
+	private double dense_kernel_function(int i, int j)
+	{
+		int xi = x_offset[i];
+		int xj = x_offset[j];
+		switch(kernel_type)
+		{
+			case svm_parameter.LINEAR:
+				return dense_dot(x_dense,xi,x_dense,xj,dim);
+			case svm_parameter.POLY:
+				return powi(gamma*dense_dot(x_dense,xi,x_dense,xj,dim)+coef0,degree);
+			case svm_parameter.RBF:
+				return Math.exp(-gamma*(x_square[i]+x_square[j]-2*dense_dot(x_dense,xi,x_dense,xj,dim)));
+			case svm_parameter.SIGMOID:
+				return Math.tanh(gamma*dense_dot(x_dense,xi,x_dense,xj,dim)+coef0);
+			default:
+				return 0;	// java
+		}
+	}
+
 	Kernel(int l, svm_node[][] x_, svm_parameter param)
 	{
 		this.kernel_type = param.kernel_type;
 		this.degree = param.degree;
 		this.gamma = param.gamma;
 		this.coef0 = param.coef0;
+		this.pool = param.pool;
 
 		x = (svm_node[][])x_.clone();
 
+		boolean dense = l > 0 && kernel_type != svm_parameter.PRECOMPUTED;
+		for(int i=0;dense && i<l;i++)
+			dense = aligned(x[0],x[i]);
+		if(dense)
+		{
+			dim = x[0].length;
+			x_dense = pack(x,l);
+			x_offset = new int[l];
+			for(int i=0;i<l;i++)
+				x_offset[i] = i*dim;
+		}
+		else
+		{
+			dim = 0;
+			x_dense = null;
+			x_offset = null;
+		}
+
 		if(kernel_type == svm_parameter.RBF)
 		{
 			x_square = new double[l];
@@ -201,8 +406,209 @@ abstract class Kernel extends QMatrix {
 		else x_square = null;
 	}
 
+	// sets column[j] = K(i,j), times y[i]*y[j] unless y is null, for j in
+	// [start,end)
+	void kernel_column(int i, byte[] y, float[] column, int start, int end)
+	{
+		if(pool == null || end-start < 2*PARALLEL_COLUMN)
+			fill_column(i,y,column,start,end);
+		else
+		{
+			ColumnTask task = new ColumnTask(i,y,column,start,end);
+			if(ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool)
+				task.invoke();
+			else
+				pool.invoke(task);
+		}
+	}
+
+	private void fill_column(int i, byte[] y, float[] column, int start, int end)
+	{
+		int j;
+		if(x_dense != null && kernel_type == svm_parameter.RBF)
+		{
+			// hoist everything that depends on i alone; the expression is
+			// the one in kernel_function, so the values are identical
+			int xi = x_offset[i];
+			double sq_i = x_square[i];
+			if(y == null)
+				for(j=start;j<end;j++)
+					column[j] = (float)Math.exp(-gamma*(sq_i+x_square[j]-2*dense_dot(x_dense,xi,x_dense,x_offset[j],dim)));
+			else
+			{
+				byte yi = y[i];
+				for(j=start;j<end;j++)
+					column[j] = (float)(yi*y[j]*Math.exp(-gamma*(sq_i+x_square[j]-2*dense_dot(x_dense,xi,x_dense,x_offset[j],dim))));
+			}
+		}
+		else if(y == null)
+			for(j=start;j<end;j++)
+				column[j] = (float)kernel_function(i,j);
+		else
+			for(j=start;j<end;j++)
+				column[j] = (float)(y[i]*y[j]*kernel_function(i,j));
+	}
+
+	// fills a range of a column, halving it until it is small enough
+	private class ColumnTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private final int i, start, end;
+		private final byte[] y;
+		private final float[] column;
+
+		ColumnTask(int i, byte[] y, float[] column, int start, int end)
+		{
+			this.i = i;
+			this.y = y;
+			this.column = column;
+			this.start = start;
+			this.end = end;
+		}
+
+		protected void compute()
+		{
+			if(end-start < 2*PARALLEL_COLUMN)
+				fill_column(i,y,column,start,end);
+			else
+			{
+				int mid = (start+end)>>>1;
+				invokeAll(new ColumnTask(i,y,column,start,mid),
+					  new ColumnTask(i,y,column,mid,end));
+			}
+		}
+	}
+
+	// the values of l aligned vectors, one after the other
+	static double[] pack(svm_node[][] x, int l)
+	{
+		int n = x[0].length;
+		double[] packed = new double[l*n];
+		for(int i=0;i<l;i++)
+			for(int j=0;j<n;j++)
+				packed[i*n+j] = x[i][j].value;
+		return packed;
+	}
+
+	// true if x and y hold the same run of consecutive indices, as dense
+	// vectors do; indices are ascending, so the end points suffice
+	static boolean aligned(svm_node[] x, svm_node[] y)
+	{
+		int n = x.length;
+		return n > 0 && n == y.length &&
+			x[0].index == y[0].index && x[n-1].index == y[n-1].index &&
+			x[n-1].index - x[0].index == n-1;
+	}
+
+	// dot product of aligned vectors: no index comparisons, unrolled by 4.
+	// terms are summed in the same order as the sparse loop so that both
+	// paths give identical results
+	static double dense_dot(svm_node[] x, svm_node[] y)
+	{
+		double sum = 0;
+		int n = x.length;
+		int i = 0;
+		for(;i+4<=n;i+=4)
+		{
+			sum += x[i].value * y[i].value;
+			sum += x[i+1].value * y[i+1].value;
+			sum += x[i+2].value * y[i+2].value;
+			sum += x[i+3].value * y[i+3].value;
+		}
+		for(;i<n;i++)
+			sum += x[i].value * y[i].value;
+		return sum;
+	}
+
+	// squared distance of aligned vectors
+	static double dense_dist2(svm_node[] x, svm_node[] y)
+	{
+		double sum = 0;
+		int n = x.length;
+		int i = 0;
+		for(;i+4<=n;i+=4)
+		{
+			double d0 = x[i].value - y[i].value;
+			double d1 = x[i+1].value - y[i+1].value;
+			double d2 = x[i+2].value - y[i+2].value;
+			double d3 = x[i+3].value - y[i+3].value;
+			sum += d0*d0;
+			sum += d1*d1;
+			sum += d2*d2;
+			sum += d3*d3;
+		}
+		for(;i<n;i++)
+		{
+			double d = x[i].value - y[i].value;
+			sum += d*d;
+		}
+		return sum;
+	}
+
+	// dense_dot on n values starting at x[xo] and y[yo]
+	static double dense_dot(double[] x, int xo, double[] y, int yo, int n)
+	{
+		double sum = 0;
+		int i = 0;
+		for(;i+4<=n;i+=4)
+		{
+			sum += x[xo+i] * y[yo+i];
+			sum += x[xo+i+1] * y[yo+i+1];
+			sum += x[xo+i+2] * y[yo+i+2];
+			sum += x[xo+i+3] * y[yo+i+3];
+		}
+		for(;i<n;i++)
+			sum += x[xo+i] * y[yo+i];
+		return sum;
+	}
+
+	// dense_dist2 on n values starting at x[xo] and y[yo]
+	static double dense_dist2(double[] x, int xo, double[] y, int yo, int n)
+	{
+		double sum = 0;
+		int i = 0;
+		for(;i+4<=n;i+=4)
+		{
+			double d0 = x[xo+i] - y[yo+i];
+			double d1 = x[xo+i+1] - y[yo+i+1];
+			double d2 = x[xo+i+2] - y[yo+i+2];
+			double d3 = x[xo+i+3] - y[yo+i+3];
+			sum += d0*d0;
+			sum += d1*d1;
+			sum += d2*d2;
+			sum += d3*d3;
+		}
+		for(;i<n;i++)
+		{
+			double d = x[xo+i] - y[yo+i];
+			sum += d*d;
+		}
+		return sum;
+	}
+
+	// k_function of x (dim values) against the packed vector at y[yo]
+	static double dense_k_function(double[] x, double[] y, int yo, int dim,
+					svm_parameter param)
+	{
+		switch(param.kernel_type)
+		{
+			case svm_parameter.LINEAR:
+				return dense_dot(x,0,y,yo,dim);
+			case svm_parameter.POLY:
+				return powi(param.gamma*dense_dot(x,0,y,yo,dim)+param.coef0,param.degree);
+			case svm_parameter.RBF:
+				return Math.exp(-param.gamma*dense_dist2(x,0,y,yo,dim));
+			case svm_parameter.SIGMOID:
+				return Math.tanh(param.gamma*dense_dot(x,0,y,yo,dim)+param.coef0);
+			default:
+				return 0;	// java
+		}
+	}
+
 	static double dot(svm_node[] x, svm_node[] y)
 	{
+		if(aligned(x,y))
+			return dense_dot(x,y);
 		double sum = 0;
 		int xlen = x.length;
 		int ylen = y.length;
@@ -234,6 +640,8 @@ abstract class Kernel extends QMatrix {
 				return powi(param.gamma*dot(x,y)+param.coef0,param.degree);
 			case svm_parameter.RBF:
 			{
+				if(aligned(x,y))
+					return Math.exp(-param.gamma*dense_dist2(x,y));
 				double sum = 0;
 				int xlen = x.length;
 				int ylen = y.length;
@@ -339,6 +747,14 @@ class Solver {
 
 	// java: information about solution except alpha,
 	// because we cannot return multiple values otherwise...
+	svm_print_interface print_func;	// progress output, null for none
+
+	void info(String s)
+	{
+		if(print_func != null)
+			print_func.print(s);
+	}
+
 	static class SolutionInfo {
 		double obj;
 		double rho;
@@ -376,7 +792,7 @@ class Solver {
 				nr_free++;
 
 		if(2*nr_free < active_size)
-			svm.info("\nWARNING: using -h 0 may be faster\n");
+			info("\nWARNING: using -h 0 may be faster\n");
 
 		if (nr_free*l > 2*active_size*(l-active_size))
 		{
@@ -469,7 +885,7 @@ class Solver {
 			{
 				counter = Math.min(l,1000);
 				if(shrinking!=0) do_shrinking();
-				svm.info(".");
+				info(".");
 			}
 
 			if(select_working_set(working_set)!=0)
@@ -478,7 +894,7 @@ class Solver {
 				reconstruct_gradient();
 				// reset active set size and check
 				active_size = l;
-				svm.info("*");
+				info("*");
 				if(select_working_set(working_set)!=0)
 					break;
 				else
@@ -638,7 +1054,7 @@ class Solver {
 				// reconstruct the whole gradient to calculate objective value
 				reconstruct_gradient();
 				active_size = l;
-				svm.info("*");
+				info("*");
 			}
 			System.err.print("\nWARNING: reaching max number of iterations\n");
 		}
@@ -666,7 +1082,7 @@ class Solver {
 		si.upper_bound_p = Cp;
 		si.upper_bound_n = Cn;
 
-		svm.info("\noptimization finished, #iter = "+iter+"\n");
+		info("\noptimization finished, #iter = "+iter+"\n");
 	}
 
 	// return 1 if already optimal, return 0 otherwise
@@ -1155,7 +1571,7 @@ class SVC_Q extends Kernel
 	{
 		super(prob.l, prob.x, param);
 		y = (byte[])y_.clone();
-		cache = new Cache(prob.l,(long)(param.cache_size*(1<<20)));
+		cache = new Cache(prob.l,param);
 		QD = new double[prob.l];
 		for(int i=0;i<prob.l;i++)
 			QD[i] = kernel_function(i,i);
@@ -1164,11 +1580,11 @@ class SVC_Q extends Kernel
 	float[] get_Q(int i, int len)
 	{
 		float[][] data = new float[1][];
-		int start, j;
+		int start;
 		if((start = cache.get_data(i,data,len)) < len)
 		{
-			for(j=start;j<len;j++)
-				data[0][j] = (float)(y[i]*y[j]*kernel_function(i,j));
+			kernel_column(i,y,data[0],start,len);
+			cache.put_data(i,data[0],start,len);
 		}
 		return data[0];
 	}
@@ -1195,7 +1611,7 @@ class ONE_CLASS_Q extends Kernel
 	ONE_CLASS_Q(svm_problem prob, svm_parameter param)
 	{
 		super(prob.l, prob.x, param);
-		cache = new Cache(prob.l,(long)(param.cache_size*(1<<20)));
+		cache = new Cache(prob.l,param);
 		QD = new double[prob.l];
 		for(int i=0;i<prob.l;i++)
 			QD[i] = kernel_function(i,i);
@@ -1204,11 +1620,11 @@ class ONE_CLASS_Q extends Kernel
 	float[] get_Q(int i, int len)
 	{
 		float[][] data = new float[1][];
-		int start, j;
+		int start;
 		if((start = cache.get_data(i,data,len)) < len)
 		{
-			for(j=start;j<len;j++)
-				data[0][j] = (float)kernel_function(i,j);
+			kernel_column(i,null,data[0],start,len);
+			cache.put_data(i,data[0],start,len);
 		}
 		return data[0];
 	}
@@ -1240,7 +1656,7 @@ class SVR_Q extends Kernel
 	{
 		super(prob.l, prob.x, param);
 		l = prob.l;
-		cache = new Cache(l,(long)(param.cache_size*(1<<20)));
+		cache = new Cache(l,param);
 		QD = new double[2*l];
 		sign = new byte[2*l];
 		index = new int[2*l];
@@ -1268,10 +1684,11 @@ class SVR_Q extends Kernel
 	{
 		float[][] data = new float[1][];
 		int j, real_i = index[i];
-		if(cache.get_data(real_i,data,l) < l)
+		int start;
+		if((start = cache.get_data(real_i,data,l)) < l)
 		{
-			for(j=0;j<l;j++)
-				data[0][j] = (float)kernel_function(real_i,j);
+			kernel_column(real_i,null,data[0],start,l);
+			cache.put_data(real_i,data[0],start,l);
 		}
 
 		// reorder and copy
@@ -1294,22 +1711,47 @@ public class svm {
 	// construct and solve various formulations
 	//
 	public static final int LIBSVM_VERSION=317; 
+	// unused, kept for the stock API; each shuffle draws its own Random
+	@Deprecated
 	public static final Random rand = new Random();
 
-	private static svm_print_interface svm_print_stdout = new svm_print_interface()
+	// output for parameters without a print_func; null for none
+	private static volatile svm_print_interface svm_print_string = null;
+
+	// param.print_func, or the one set by svm_set_print_string_function
+	static svm_print_interface print_func(svm_parameter param)
 	{
-		public void print(String s)
-		{
-			//System.out.print(s);
-			//System.out.flush();
-		}
-	};
+		return param.print_func != null ? param.print_func : svm_print_string;
+	}
 
-	private static svm_print_interface svm_print_string = svm_print_stdout;
+	// progress output goes to param.print_func, if set
+	static void info(svm_parameter param, String s) 
+	{
+		svm_print_interface print_func = print_func(param);
+		if(print_func != null)
+			print_func.print(s);
+	}
 
-	static void info(String s) 
+	// runs tasks on pool, or one after another if pool is null. Tasks
+	// already running on pool fork into it, so solves may nest.
+	static void invoke_all(ForkJoinPool pool, final ForkJoinTask<?>[] tasks)
 	{
-		//svm_print_string.print(s);
+		if(pool == null || tasks.length < 2)
+		{
+			for(int i=0;i<tasks.length;i++)
+				tasks[i].invoke();
+		}
+		else if(ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool)
+			ForkJoinTask.invokeAll(tasks);
+		else
+			pool.invoke(new RecursiveAction()
+			{
+				private static final long serialVersionUID = 1L;
+				protected void compute()
+				{
+					ForkJoinTask.invokeAll(tasks);
+				}
+			});
 	}
 
 	private static void solve_c_svc(svm_problem prob, svm_parameter param,
@@ -1329,7 +1771,11 @@ public class svm {
 			if(prob.y[i] > 0) y[i] = +1; else y[i] = -1;
 		}
 
+		if(prob.alpha != null)
+			warm_start(prob.alpha,y,alpha,Cp,Cn);
+
 		Solver s = new Solver();
+		s.print_func = print_func(param);
 		s.Solve(l, new SVC_Q(prob,param,y), minus_ones, y,
 			alpha, Cp, Cn, param.eps, si, param.shrinking);
 
@@ -1338,12 +1784,36 @@ public class svm {
 			sum_alpha += alpha[i];
 
 		if (Cp==Cn)
-			svm.info("nu = "+sum_alpha/(Cp*prob.l)+"\n");
+			svm.info(param,"nu = "+sum_alpha/(Cp*prob.l)+"\n");
 
 		for(i=0;i<l;i++)
 			alpha[i] *= y[i];
 	}
 
+	// copy a previous solution into alpha, clipped to [0,C]; alphas of
+	// instances that were dropped or clipped leave sum(y*alpha) != 0, so
+	// the side in excess is reduced until the start is feasible again
+	private static void warm_start(double[] init, byte[] y, double[] alpha,
+				       double Cp, double Cn)
+	{
+		int l = alpha.length;
+		int i;
+		double sum = 0;
+		for(i=0;i<l;i++)
+		{
+			double C = y[i] > 0 ? Cp : Cn;
+			alpha[i] = Math.max(0, Math.min(init[i], C));
+			sum += y[i]*alpha[i];
+		}
+		for(i=0;i<l && sum != 0;i++)
+			if(y[i]*sum > 0)
+			{
+				double d = Math.min(alpha[i],Math.abs(sum));
+				alpha[i] -= d;
+				if(d == Math.abs(sum)) sum = 0; else sum -= y[i]*d;
+			}
+	}
+
 	private static void solve_nu_svc(svm_problem prob, svm_parameter param,
 					double[] alpha, Solver.SolutionInfo si)
 	{
@@ -1380,11 +1850,12 @@ public class svm {
 			zeros[i] = 0;
 
 		Solver_NU s = new Solver_NU();
+		s.print_func = print_func(param);
 		s.Solve(l, new SVC_Q(prob,param,y), zeros, y,
 			alpha, 1.0, 1.0, param.eps, si, param.shrinking);
 		double r = si.r;
 
-		svm.info("C = "+1/r+"\n");
+		svm.info(param,"C = "+1/r+"\n");
 
 		for(i=0;i<l;i++)
 			alpha[i] *= y[i]/r;
@@ -1419,6 +1890,7 @@ public class svm {
 		}
 
 		Solver s = new Solver();
+		s.print_func = print_func(param);
 		s.Solve(l, new ONE_CLASS_Q(prob,param), zeros, ones,
 			alpha, 1.0, 1.0, param.eps, si, param.shrinking);
 	}
@@ -1444,6 +1916,7 @@ public class svm {
 		}
 
 		Solver s = new Solver();
+		s.print_func = print_func(param);
 		s.Solve(2*l, new SVR_Q(prob,param), linear_term, y,
 			alpha2, param.C, param.C, param.eps, si, param.shrinking);
 
@@ -1453,7 +1926,7 @@ public class svm {
 			alpha[i] = alpha2[i] - alpha2[i+l];
 			sum_alpha += Math.abs(alpha[i]);
 		}
-		svm.info("nu = "+sum_alpha/(param.C*l)+"\n");
+		svm.info(param,"nu = "+sum_alpha/(param.C*l)+"\n");
 	}
 
 	private static void solve_nu_svr(svm_problem prob, svm_parameter param,
@@ -1480,10 +1953,11 @@ public class svm {
 		}
 
 		Solver_NU s = new Solver_NU();
+		s.print_func = print_func(param);
 		s.Solve(2*l, new SVR_Q(prob,param), linear_term, y,
 			alpha2, C, C, param.eps, si, param.shrinking);
 
-		svm.info("epsilon = "+(-si.r)+"\n");
+		svm.info(param,"epsilon = "+(-si.r)+"\n");
 		
 		for(i=0;i<l;i++)
 			alpha[i] = alpha2[i] - alpha2[i+l];
@@ -1523,7 +1997,7 @@ public class svm {
 				break;
 		}
 
-		svm.info("obj = "+si.obj+", rho = "+si.rho+"\n");
+		svm.info(param,"obj = "+si.obj+", rho = "+si.rho+"\n");
 
 		// output SVs
 
@@ -1547,7 +2021,7 @@ public class svm {
 			}
 		}
 
-		svm.info("nSV = "+nSV+", nBSV = "+nBSV+"\n");
+		svm.info(param,"nSV = "+nSV+", nBSV = "+nBSV+"\n");
 
 		decision_function f = new decision_function();
 		f.alpha = alpha;
@@ -1556,7 +2030,7 @@ public class svm {
 	}
 
 	// Platt's binary SVM Probablistic Output: an improvement from Lin et al.
-	private static void sigmoid_train(int l, double[] dec_values, double[] labels, 
+	private static void sigmoid_train(svm_parameter param, int l, double[] dec_values, double[] labels, 
 				  double[] probAB)
 	{
 		double A, B;
@@ -1659,13 +2133,13 @@ public class svm {
 			
 			if (stepsize < min_step)
 			{
-				svm.info("Line search fails in two-class probability estimates\n");
+				svm.info(param,"Line search fails in two-class probability estimates\n");
 				break;
 			}
 		}
 		
 		if (iter>=max_iter)
-			svm.info("Reaching maximal iterations in two-class probability estimates\n");
+			svm.info(param,"Reaching maximal iterations in two-class probability estimates\n");
 		probAB[0]=A;probAB[1]=B;
 	}
 
@@ -1679,12 +2153,11 @@ public class svm {
 	}
 
 	// Method 2 from the multiclass_prob paper by Wu, Lin, and Weng
-	private static void multiclass_probability(int k, double[][] r, double[] p)
+	// Q (k*k) and Qp (k) are scratch buffers supplied by the caller
+	private static void multiclass_probability(svm_parameter param, int k, double[][] r, double[] p, double[][] Q, double[] Qp)
 	{
 		int t,j;
 		int iter = 0, max_iter=Math.max(100,k);
-		double[][] Q=new double[k][k];
-		double[] Qp=new double[k];
 		double pQp, eps=0.005/k;
 	
 		for (t=0;t<k;t++)
@@ -1735,16 +2208,18 @@ public class svm {
 			}
 		}
 		if (iter>=max_iter)
-			svm.info("Exceeds max_iter in multiclass_prob\n");
+			svm.info(param,"Exceeds max_iter in multiclass_prob\n");
 	}
 
 	// Cross-validation decision values for probability estimates
-	private static void svm_binary_svc_probability(svm_problem prob, svm_parameter param, double Cp, double Cn, double[] probAB)
+	// the folds are trained in parallel on param.pool
+	private static void svm_binary_svc_probability(final svm_problem prob, final svm_parameter param, final double Cp, final double Cn, double[] probAB)
 	{
 		int i;
-		int nr_fold = 5;
-		int[] perm = new int[prob.l];
-		double[] dec_values = new double[prob.l];
+		final int nr_fold = 5;
+		final int[] perm = new int[prob.l];
+		final double[] dec_values = new double[prob.l];
+		Random rand = new Random();
 
 		// random shuffle
 		for(i=0;i<prob.l;i++) perm[i]=i;
@@ -1753,70 +2228,84 @@ public class svm {
 			int j = i+rand.nextInt(prob.l-i);
 			do {int _=perm[i]; perm[i]=perm[j]; perm[j]=_;} while(false);
 		}
+		ForkJoinTask<?>[] folds = new ForkJoinTask<?>[nr_fold];
 		for(i=0;i<nr_fold;i++)
 		{
-			int begin = i*prob.l/nr_fold;
-			int end = (i+1)*prob.l/nr_fold;
-			int j,k;
-			svm_problem subprob = new svm_problem();
-
-			subprob.l = prob.l-(end-begin);
-			subprob.x = new svm_node[subprob.l][];
-			subprob.y = new double[subprob.l];
-			
-			k=0;
-			for(j=0;j<begin;j++)
+			final int fold = i;
+			folds[i] = new RecursiveAction()
 			{
-				subprob.x[k] = prob.x[perm[j]];
-				subprob.y[k] = prob.y[perm[j]];
-				++k;
-			}
-			for(j=end;j<prob.l;j++)
-			{
-				subprob.x[k] = prob.x[perm[j]];
-				subprob.y[k] = prob.y[perm[j]];
-				++k;
-			}
-			int p_count=0,n_count=0;
-			for(j=0;j<k;j++)
-				if(subprob.y[j]>0)
-					p_count++;
-				else
-					n_count++;
-			
-			if(p_count==0 && n_count==0)
-				for(j=begin;j<end;j++)
-					dec_values[perm[j]] = 0;
-			else if(p_count > 0 && n_count == 0)
-				for(j=begin;j<end;j++)
-					dec_values[perm[j]] = 1;
-			else if(p_count == 0 && n_count > 0)
-				for(j=begin;j<end;j++)
-					dec_values[perm[j]] = -1;
+				private static final long serialVersionUID = 1L;
+				protected void compute()
+				{
+					svm_binary_svc_probability_fold(prob,param,Cp,Cn,perm,fold*prob.l/nr_fold,(fold+1)*prob.l/nr_fold,dec_values);
+				}
+			};
+		}
+		invoke_all(param.pool,folds);
+		sigmoid_train(param,prob.l,dec_values,prob.y,probAB);
+	}
+
+	// trains on all but perm[begin..end) and sets their dec_values
+	private static void svm_binary_svc_probability_fold(svm_problem prob, svm_parameter param, double Cp, double Cn, int[] perm, int begin, int end, double[] dec_values)
+	{
+		int j,k;
+		svm_problem subprob = new svm_problem();
+
+		subprob.l = prob.l-(end-begin);
+		subprob.x = new svm_node[subprob.l][];
+		subprob.y = new double[subprob.l];
+		
+		k=0;
+		for(j=0;j<begin;j++)
+		{
+			subprob.x[k] = prob.x[perm[j]];
+			subprob.y[k] = prob.y[perm[j]];
+			++k;
+		}
+		for(j=end;j<prob.l;j++)
+		{
+			subprob.x[k] = prob.x[perm[j]];
+			subprob.y[k] = prob.y[perm[j]];
+			++k;
+		}
+		int p_count=0,n_count=0;
+		for(j=0;j<k;j++)
+			if(subprob.y[j]>0)
+				p_count++;
 			else
+				n_count++;
+		
+		if(p_count==0 && n_count==0)
+			for(j=begin;j<end;j++)
+				dec_values[perm[j]] = 0;
+		else if(p_count > 0 && n_count == 0)
+			for(j=begin;j<end;j++)
+				dec_values[perm[j]] = 1;
+		else if(p_count == 0 && n_count > 0)
+			for(j=begin;j<end;j++)
+				dec_values[perm[j]] = -1;
+		else
+		{
+			svm_parameter subparam = (svm_parameter)param.clone();
+			subparam.probability=0;
+			subparam.C=1.0;
+			subparam.nr_weight=2;
+			subparam.weight_label = new int[2];
+			subparam.weight = new double[2];
+			subparam.weight_label[0]=+1;
+			subparam.weight_label[1]=-1;
+			subparam.weight[0]=Cp;
+			subparam.weight[1]=Cn;
+			svm_model submodel = svm_train(subprob,subparam);
+			for(j=begin;j<end;j++)
 			{
-				svm_parameter subparam = (svm_parameter)param.clone();
-				subparam.probability=0;
-				subparam.C=1.0;
-				subparam.nr_weight=2;
-				subparam.weight_label = new int[2];
-				subparam.weight = new double[2];
-				subparam.weight_label[0]=+1;
-				subparam.weight_label[1]=-1;
-				subparam.weight[0]=Cp;
-				subparam.weight[1]=Cn;
-				svm_model submodel = svm_train(subprob,subparam);
-				for(j=begin;j<end;j++)
-				{
-					double[] dec_value=new double[1];
-					svm_predict_values(submodel,prob.x[perm[j]],dec_value);
-					dec_values[perm[j]]=dec_value[0];
-					// ensure +1 -1 order; reason not using CV subroutine
-					dec_values[perm[j]] *= submodel.label[0];
-				}		
-			}
-		}		
-		sigmoid_train(prob.l,dec_values,prob.y,probAB);
+				double[] dec_value=new double[1];
+				svm_predict_values(submodel,prob.x[perm[j]],dec_value);
+				dec_values[perm[j]]=dec_value[0];
+				// ensure +1 -1 order; reason not using CV subroutine
+				dec_values[perm[j]] *= submodel.label[0];
+			}		
+		}
 	}
 
 	// Return parameter of a Laplace distribution 
@@ -1845,7 +2334,7 @@ public class svm {
 			else 
 				mae+=Math.abs(ymv[i]);
 		mae /= (prob.l-count);
-		svm.info("Prob. model for test data: target value = predicted value + z,\nz: Laplace distribution e^(-|z|/sigma)/(2sigma),sigma="+mae+"\n");
+		svm.info(param,"Prob. model for test data: target value = predicted value + z,\nz: Laplace distribution e^(-|z|/sigma)/(2sigma),sigma="+mae+"\n");
 		return mae;
 	}
 
@@ -1932,7 +2421,7 @@ public class svm {
 	//
 	// Interface functions
 	//
-	public static svm_model svm_train(svm_problem prob, svm_parameter param)
+	public static svm_model svm_train(svm_problem prob, final svm_parameter param)
 	{
 		svm_model model = new svm_model();
 		model.param = param;
@@ -1996,7 +2485,7 @@ public class svm {
 			int[] count = tmp_count[0];
  			
 			if(nr_class == 1) 
-				svm.info("WARNING: training data in only one class. See README for details.\n");
+				svm.info(param,"WARNING: training data in only one class. See README for details.\n");
 			
 			svm_node[][] x = new svm_node[l][];
 			int i;
@@ -2025,7 +2514,7 @@ public class svm {
 			boolean[] nonzero = new boolean[l];
 			for(i=0;i<l;i++)
 				nonzero[i] = false;
-			decision_function[] f = new decision_function[nr_class*(nr_class-1)/2];
+			final decision_function[] f = new decision_function[nr_class*(nr_class-1)/2];
 
 			double[] probA=null,probB=null;
 			if (param.probability == 1)
@@ -2034,6 +2523,11 @@ public class svm {
 				probB=new double[nr_class*(nr_class-1)/2];
 			}
 
+			// the pairwise problems are independent, so they are solved
+			// in parallel on param.pool
+			final svm_problem[] sub_probs = new svm_problem[f.length];
+			final double[][] probAB = new double[f.length][2];
+			ForkJoinTask<?>[] solves = new ForkJoinTask<?>[f.length];
 			int p = 0;
 			for(i=0;i<nr_class;i++)
 				for(int j=i+1;j<nr_class;j++)
@@ -2055,16 +2549,46 @@ public class svm {
 						sub_prob.x[ci+k] = x[sj+k];
 						sub_prob.y[ci+k] = -1;
 					}
+					// a previous solution of the only pairwise problem
+					// seeds the solver
+					if(prob.alpha != null && nr_class == 2)
+					{
+						sub_prob.alpha = new double[sub_prob.l];
+						for(k=0;k<ci;k++)
+							sub_prob.alpha[k] = prob.alpha[perm[si+k]];
+						for(k=0;k<cj;k++)
+							sub_prob.alpha[ci+k] = prob.alpha[perm[sj+k]];
+					}
+					sub_probs[p] = sub_prob;
 
+					final int q = p;
+					final double Cp = weighted_C[i], Cn = weighted_C[j];
+					solves[p] = new RecursiveAction()
+					{
+						private static final long serialVersionUID = 1L;
+						protected void compute()
+						{
+							if(param.probability == 1)
+								svm_binary_svc_probability(sub_probs[q],param,Cp,Cn,probAB[q]);
+							f[q] = svm_train_one(sub_probs[q],param,Cp,Cn);
+						}
+					};
+					++p;
+				}
+			invoke_all(param.pool,solves);
+
+			p = 0;
+			for(i=0;i<nr_class;i++)
+				for(int j=i+1;j<nr_class;j++)
+				{
+					int si = start[i], sj = start[j];
+					int ci = count[i], cj = count[j];
+					int k;
 					if(param.probability == 1)
 					{
-						double[] probAB=new double[2];
-						svm_binary_svc_probability(sub_prob,param,weighted_C[i],weighted_C[j],probAB);
-						probA[p]=probAB[0];
-						probB[p]=probAB[1];
+						probA[p]=probAB[p][0];
+						probB[p]=probAB[p][1];
 					}
-
-					f[p] = svm_train_one(sub_prob,param,weighted_C[i],weighted_C[j]);
 					for(k=0;k<ci;k++)
 						if(!nonzero[si+k] && Math.abs(f[p].alpha[k]) > 0)
 							nonzero[si+k] = true;
@@ -2118,7 +2642,7 @@ public class svm {
 				nz_count[i] = nSV;
 			}
 
-			svm.info("Total nSV = "+nnz+"\n");
+			svm.info(param,"Total nSV = "+nnz+"\n");
 
 			model.l = nnz;
 			model.SV = new svm_node[nnz][];
@@ -2165,16 +2689,24 @@ public class svm {
 					++p;
 				}
 		}
+		svm_densify(model);
 		return model;
 	}
 	
 	// Stratified cross validation
 	public static void svm_cross_validation(svm_problem prob, svm_parameter param, int nr_fold, double[] target)
+	{
+		svm_cross_validation(prob,param,nr_fold,target,new Random());
+	}
+
+	// as above, with the folds drawn from rand; the folds are trained in
+	// parallel on param.pool
+	public static void svm_cross_validation(final svm_problem prob, final svm_parameter param, int nr_fold, final double[] target, Random rand)
 	{
 		int i;
-		int[] fold_start = new int[nr_fold+1];
+		final int[] fold_start = new int[nr_fold+1];
 		int l = prob.l;
-		int[] perm = new int[l];
+		final int[] perm = new int[l];
 		
 		// stratified cv may not give leave-one-out rate
 		// Each class to l folds -> some folds may have zero elements
@@ -2240,43 +2772,58 @@ public class svm {
 				fold_start[i]=i*l/nr_fold;
 		}
 
+		ForkJoinTask<?>[] folds = new ForkJoinTask<?>[nr_fold];
 		for(i=0;i<nr_fold;i++)
 		{
-			int begin = fold_start[i];
-			int end = fold_start[i+1];
-			int j,k;
-			svm_problem subprob = new svm_problem();
+			final int fold = i;
+			folds[i] = new RecursiveAction()
+			{
+				private static final long serialVersionUID = 1L;
+				protected void compute()
+				{
+					svm_cross_validation_fold(prob,param,perm,fold_start[fold],fold_start[fold+1],target);
+				}
+			};
+		}
+		invoke_all(param.pool,folds);
+	}
 
-			subprob.l = l-(end-begin);
-			subprob.x = new svm_node[subprob.l][];
-			subprob.y = new double[subprob.l];
+	// trains on all but perm[begin..end) and predicts their target
+	private static void svm_cross_validation_fold(svm_problem prob, svm_parameter param, int[] perm, int begin, int end, double[] target)
+	{
+		int l = prob.l;
+		int j,k;
+		svm_problem subprob = new svm_problem();
 
-			k=0;
-			for(j=0;j<begin;j++)
-			{
-				subprob.x[k] = prob.x[perm[j]];
-				subprob.y[k] = prob.y[perm[j]];
-				++k;
-			}
-			for(j=end;j<l;j++)
-			{
-				subprob.x[k] = prob.x[perm[j]];
-				subprob.y[k] = prob.y[perm[j]];
-				++k;
-			}
-			svm_model submodel = svm_train(subprob,param);
-			if(param.probability==1 &&
-			   (param.svm_type == svm_parameter.C_SVC ||
-			    param.svm_type == svm_parameter.NU_SVC))
-			{
-				double[] prob_estimates= new double[svm_get_nr_class(submodel)];
-				for(j=begin;j<end;j++)
-					target[perm[j]] = svm_predict_probability(submodel,prob.x[perm[j]],prob_estimates);
-			}
-			else
-				for(j=begin;j<end;j++)
-					target[perm[j]] = svm_predict(submodel,prob.x[perm[j]]);
+		subprob.l = l-(end-begin);
+		subprob.x = new svm_node[subprob.l][];
+		subprob.y = new double[subprob.l];
+
+		k=0;
+		for(j=0;j<begin;j++)
+		{
+			subprob.x[k] = prob.x[perm[j]];
+			subprob.y[k] = prob.y[perm[j]];
+			++k;
+		}
+		for(j=end;j<l;j++)
+		{
+			subprob.x[k] = prob.x[perm[j]];
+			subprob.y[k] = prob.y[perm[j]];
+			++k;
+		}
+		svm_model submodel = svm_train(subprob,param);
+		if(param.probability==1 &&
+		   (param.svm_type == svm_parameter.C_SVC ||
+		    param.svm_type == svm_parameter.NU_SVC))
+		{
+			double[] prob_estimates= new double[svm_get_nr_class(submodel)];
+			for(j=begin;j<end;j++)
+				target[perm[j]] = svm_predict_probability(submodel,prob.x[perm[j]],prob_estimates);
 		}
+		else
+			for(j=begin;j<end;j++)
+				target[perm[j]] = svm_predict(submodel,prob.x[perm[j]]);
 	}
 
 	public static int svm_get_svm_type(svm_model model)
@@ -2320,17 +2867,155 @@ public class svm {
 		}
 	}
 
+	// Packs the support vectors of model into model.SV_dense if they are all
+	// dense vectors over the same indices, so that predictions can skip the
+	// sparse index matching, and collapses linear models into their primal
+	// weights model.w. svm_train, svm_load_model and deserialization call
+	// this; models built by other means may call it before they are shared
+	// between threads. model.SV is kept for svm_save_model.
+	public static void svm_densify(svm_model model)
+	{
+		svm_support_vectors(model);
+		model.SV_dense = null;
+		model.SV_dim = 0;
+		model.SV_first_index = 0;
+		model.w = null;
+		if(model.l < 1 || model.param.kernel_type == svm_parameter.PRECOMPUTED)
+			return;
+		for(int i=0;i<model.l;i++)
+			if(!Kernel.aligned(model.SV[0],model.SV[i]))
+				return;
+		model.SV_dim = model.SV[0].length;
+		model.SV_first_index = model.SV[0][0].index;
+		model.SV_dense = Kernel.pack(model.SV,model.l);
+		if(model.param.kernel_type == svm_parameter.LINEAR)
+			model.w = svm_primal_weights(model);
+	}
+
+	// model.SV, rebuilt from model.SV_dense for models that were loaded
+	// with only their packed support vectors. Only sparse queries,
+	// svm_save_model and serialization need the nodes.
+	public static svm_node[][] svm_support_vectors(svm_model model)
+	{
+		synchronized(model)
+		{
+			if(model.SV == null && model.SV_dense != null)
+			{
+				int dim = model.SV_dim;
+				svm_node[][] SV = new svm_node[model.l][dim];
+				for(int i=0;i<model.l;i++)
+					for(int j=0;j<dim;j++)
+					{
+						SV[i][j] = new svm_node();
+						SV[i][j].index = model.SV_first_index+j;
+						SV[i][j].value = model.SV_dense[i*dim+j];
+					}
+				model.SV = SV;
+			}
+			return model.SV;
+		}
+	}
+
+	// w of each decision function: sum_k coef_k * SV_k, so that
+	// sum_k coef_k * K(x,SV_k) = w . x for the linear kernel
+	private static double[] svm_primal_weights(svm_model model)
+	{
+		int dim = model.SV_dim;
+		double[] SV_dense = model.SV_dense;
+		if(model.param.svm_type == svm_parameter.ONE_CLASS ||
+		   model.param.svm_type == svm_parameter.EPSILON_SVR ||
+		   model.param.svm_type == svm_parameter.NU_SVR)
+		{
+			double[] w = new double[dim];
+			for(int k=0;k<model.l;k++)
+				for(int t=0;t<dim;t++)
+					w[t] += model.sv_coef[0][k] * SV_dense[k*dim+t];
+			return w;
+		}
+
+		int nr_class = model.nr_class;
+		double[] w = new double[nr_class*(nr_class-1)/2*dim];
+		int[] start = new int[nr_class];
+		for(int i=1;i<nr_class;i++)
+			start[i] = start[i-1]+model.nSV[i-1];
+		int p=0;
+		for(int i=0;i<nr_class;i++)
+			for(int j=i+1;j<nr_class;j++)
+			{
+				// same coefficients as in svm_predict_values
+				double[] coef1 = model.sv_coef[j-1];
+				double[] coef2 = model.sv_coef[i];
+				for(int k=start[i];k<start[i]+model.nSV[i];k++)
+					for(int t=0;t<dim;t++)
+						w[p*dim+t] += coef1[k] * SV_dense[k*dim+t];
+				for(int k=start[j];k<start[j]+model.nSV[j];k++)
+					for(int t=0;t<dim;t++)
+						w[p*dim+t] += coef2[k] * SV_dense[k*dim+t];
+				p++;
+			}
+		return w;
+	}
+
+	// copies x into ws.x_dense if it has exactly the indices of the packed
+	// support vectors
+	private static boolean svm_dense_query(svm_model model, svm_node[] x, svm_workspace ws)
+	{
+		int dim = model.SV_dim;
+		if(model.SV_dense == null || x.length != dim ||
+		   x[0].index != model.SV_first_index || x[dim-1].index != model.SV_first_index+dim-1)
+			return false;
+		double[] x_dense = ws.x_dense;
+		for(int j=0;j<dim;j++)
+			x_dense[j] = x[j].value;
+		return true;
+	}
+
+	// kernel values of x against every support vector; x takes the dense
+	// path when it has exactly the indices of the packed support vectors
+	private static void svm_kernel_values(svm_model model, svm_node[] x, double[] kvalue, svm_workspace ws)
+	{
+		int l = model.l;
+		int dim = model.SV_dim;
+		if(svm_dense_query(model, x, ws))
+		{
+			for(int i=0;i<l;i++)
+				kvalue[i] = Kernel.dense_k_function(ws.x_dense,model.SV_dense,i*dim,dim,model.param);
+		}
+		else
+		{
+			svm_node[][] SV = svm_support_vectors(model);
+			for(int i=0;i<l;i++)
+				kvalue[i] = Kernel.k_function(x,SV[i],model.param);
+		}
+	}
+
 	public static double svm_predict_values(svm_model model, svm_node[] x, double[] dec_values)
+	{
+		return svm_predict_values(model, x, dec_values, new svm_workspace(model));
+	}
+
+	// Same as svm_predict_values(model, x, dec_values), but takes its scratch
+	// buffers from ws, which is replaced if it was sized for another model
+	public static double svm_predict_values(svm_model model, svm_node[] x, double[] dec_values, svm_workspace ws)
 	{
 		int i;
+		if(!ws.fits(model))
+			ws = new svm_workspace(model);
 		if(model.param.svm_type == svm_parameter.ONE_CLASS ||
 		   model.param.svm_type == svm_parameter.EPSILON_SVR ||
 		   model.param.svm_type == svm_parameter.NU_SVR)
 		{
-			double[] sv_coef = model.sv_coef[0];
 			double sum = 0;
-			for(i=0;i<model.l;i++)
-				sum += sv_coef[i] * Kernel.k_function(x,model.SV[i],model.param);
+			if(model.w != null && svm_dense_query(model, x, ws))
+				sum = Kernel.dense_dot(model.w,0,ws.x_dense,0,model.SV_dim);
+			else
+			{
+				double[] sv_coef = model.sv_coef[0];
+				double[] kvalue = ws.kvalue;
+				svm_kernel_values(model, x, kvalue, ws);
+				for(i=0;i<model.l;i++)
+					sum += sv_coef[i] * kvalue[i];
+			}
 			sum -= model.rho[0];
 			dec_values[0] = sum;
 
@@ -2342,18 +3027,20 @@ public class svm {
 		else
 		{
 			int nr_class = model.nr_class;
-			int l = model.l;
-		
-			double[] kvalue = new double[l];
-			for(i=0;i<l;i++)
-				kvalue[i] = Kernel.k_function(x,model.SV[i],model.param);
+			int dim = model.SV_dim;
+
+			// linear models with dense queries need only the primal weights
+			boolean linear = model.w != null && svm_dense_query(model, x, ws);
+			double[] kvalue = ws.kvalue;
+			if(!linear)
+				svm_kernel_values(model, x, kvalue, ws);
 
-			int[] start = new int[nr_class];
+			int[] start = ws.start;
 			start[0] = 0;
 			for(i=1;i<nr_class;i++)
 				start[i] = start[i-1]+model.nSV[i-1];
 
-			int[] vote = new int[nr_class];
+			int[] vote = ws.vote;
 			for(i=0;i<nr_class;i++)
 				vote[i] = 0;
 
@@ -2362,18 +3049,23 @@ public class svm {
 				for(int j=i+1;j<nr_class;j++)
 				{
 					double sum = 0;
-					int si = start[i];
-					int sj = start[j];
-					int ci = model.nSV[i];
-					int cj = model.nSV[j];
+					if(linear)
+						sum = Kernel.dense_dot(model.w,p*dim,ws.x_dense,0,dim);
+					else
+					{
+						int si = start[i];
+						int sj = start[j];
+						int ci = model.nSV[i];
+						int cj = model.nSV[j];
 				
-					int k;
-					double[] coef1 = model.sv_coef[j-1];
-					double[] coef2 = model.sv_coef[i];
-					for(k=0;k<ci;k++)
-						sum += coef1[si+k] * kvalue[si+k];
-					for(k=0;k<cj;k++)
-						sum += coef2[sj+k] * kvalue[sj+k];
+						int k;
+						double[] coef1 = model.sv_coef[j-1];
+						double[] coef2 = model.sv_coef[i];
+						for(k=0;k<ci;k++)
+							sum += coef1[si+k] * kvalue[si+k];
+						for(k=0;k<cj;k++)
+							sum += coef2[sj+k] * kvalue[sj+k];
+					}
 					sum -= model.rho[p];
 					dec_values[p] = sum;					
 
@@ -2407,18 +3099,34 @@ public class svm {
 		return pred_result;
 	}
 
+	public static double svm_predict(svm_model model, svm_node[] x, svm_workspace ws)
+	{
+		if(!ws.fits(model))
+			ws = new svm_workspace(model);
+		return svm_predict_values(model, x, ws.dec_values, ws);
+	}
+
 	public static double svm_predict_probability(svm_model model, svm_node[] x, double[] prob_estimates)
 	{
+		return svm_predict_probability(model, x, prob_estimates, new svm_workspace(model));
+	}
+
+	// Same as svm_predict_probability(model, x, prob_estimates), but takes its
+	// scratch buffers from ws, which is replaced if it was sized for another model
+	public static double svm_predict_probability(svm_model model, svm_node[] x, double[] prob_estimates, svm_workspace ws)
+	{
+		if(!ws.fits(model))
+			ws = new svm_workspace(model);
 		if ((model.param.svm_type == svm_parameter.C_SVC || model.param.svm_type == svm_parameter.NU_SVC) &&
 		    model.probA!=null && model.probB!=null)
 		{
 			int i;
 			int nr_class = model.nr_class;
-			double[] dec_values = new double[nr_class*(nr_class-1)/2];
-			svm_predict_values(model, x, dec_values);
+			double[] dec_values = ws.dec_values;
+			svm_predict_values(model, x, dec_values, ws);
 
 			double min_prob=1e-7;
-			double[][] pairwise_prob=new double[nr_class][nr_class];
+			double[][] pairwise_prob=ws.pairwise_prob;
 			
 			int k=0;
 			for(i=0;i<nr_class;i++)
@@ -2428,7 +3136,7 @@ public class svm {
 					pairwise_prob[j][i]=1-pairwise_prob[i][j];
 					k++;
 				}
-			multiclass_probability(nr_class,pairwise_prob,prob_estimates);
+			multiclass_probability(model.param,nr_class,pairwise_prob,prob_estimates,ws.Q,ws.Qp);
 
 			int prob_max_idx = 0;
 			for(i=1;i<nr_class;i++)
@@ -2437,7 +3145,7 @@ public class svm {
 			return model.label[prob_max_idx];
 		}
 		else 
-			return svm_predict(model, x);
+			return svm_predict(model, x, ws);
 	}
 
 	static final String svm_type_table[] =
@@ -2516,7 +3224,7 @@ public class svm {
 
 		fp.writeBytes("SV\n");
 		double[][] sv_coef = model.sv_coef;
-		svm_node[][] SV = model.SV;
+		svm_node[][] SV = svm_support_vectors(model);
 
 		for(int i=0;i<l;i++)
 		{
@@ -2688,6 +3396,7 @@ public class svm {
 		}
 
 		fp.close();
+		svm_densify(model);
 		return model;
 	}
 
@@ -2721,8 +3430,8 @@ public class svm {
 
 		// cache_size,eps,C,nu,p,shrinking
 
-		if(param.cache_size <= 0)
-			return "cache_size <= 0";
+		if(param.cache_size < 0)
+			return "cache_size < 0";
 
 		if(param.eps <= 0)
 			return "eps <= 0";
@@ -2754,6 +3463,9 @@ public class svm {
 		if(param.probability == 1 &&
 		   svm_type == svm_parameter.ONE_CLASS)
 			return "one-class SVM probability output not supported yet";
+
+		if(prob.alpha != null && prob.alpha.length != prob.l)
+			return "length of alpha != number of instances";
 		
 		// check whether nu-svc is feasible
 	
@@ -2822,11 +3534,12 @@ public class svm {
 			return 0;
 	}
 
+	// kept for the stock API; sets the output of parameters without a
+	// print_func, which are silent by default. Set svm_parameter.print_func
+	// instead.
+	@Deprecated
 	public static void svm_set_print_string_function(svm_print_interface print_func)
 	{
-		if (print_func == null)
-			svm_print_string = svm_print_stdout;
-		else 
-			svm_print_string = print_func;
+		svm_print_string = print_func;
 	}
 }
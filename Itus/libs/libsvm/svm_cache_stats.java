@@ -0,0 +1,44 @@
+//
+// svm_cache_stats
+//
+// Kernel cache counters, collected while training if set as
+// svm_parameter.cache_stats. Solves running in parallel share the counters,
+// so they are atomic.
+//
+package libsvm;
+import java.util.concurrent.atomic.AtomicLong;
+public class svm_cache_stats
+{
+	final AtomicLong hits = new AtomicLong();	// columns served entirely from the cache
+	final AtomicLong misses = new AtomicLong();	// columns (partly) computed
+	final AtomicLong evictions = new AtomicLong();	// columns dropped to stay within the budget
+	final AtomicLong budget = new AtomicLong();	// largest budget of a cache, in bytes
+	final AtomicLong peak = new AtomicLong();	// largest number of bytes used by a cache
+
+	public long get_hits() { return hits.get(); }
+	public long get_misses() { return misses.get(); }
+	public long get_evictions() { return evictions.get(); }
+	public long get_budget_bytes() { return budget.get(); }
+	public long get_peak_bytes() { return peak.get(); }
+
+	public double get_hit_rate()
+	{
+		long h = hits.get(), m = misses.get();
+		return h+m == 0 ? 0 : (double)h/(h+m);
+	}
+
+	public void reset()
+	{
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+		budget.set(0);
+		peak.set(0);
+	}
+
+	static void max(AtomicLong value, long v)
+	{
+		long old;
+		while(v > (old = value.get()) && !value.compareAndSet(old,v));
+	}
+}
@@ -4,10 +4,19 @@
 package libsvm;
 public class svm_model implements java.io.Serializable
 {
+	// unchanged since before the dense fields were added, so that models
+	// serialized by earlier versions still load; the dense fields are not
+	// serialized but rebuilt from SV on reading (see readObject)
+	private static final long serialVersionUID = 278220065587415279L;
+
 	public svm_parameter param;	// parameter
 	public int nr_class;		// number of classes, = 2 in regression/one class svm
 	public int l;			// total #SV
-	public svm_node[][] SV;	// SVs (SV[l])
+	public svm_node[][] SV;	// SVs (SV[l]); null in models loaded with only SV_dense, see svm.svm_support_vectors
+	public transient double[] SV_dense;	// SVs packed row by row (SV_dense[l*SV_dim]), null unless all SVs are dense; see svm.svm_densify
+	public transient int SV_dim;		// number of values per packed SV
+	public transient int SV_first_index;	// index of the first value of each packed SV
+	public transient double[] w;		// linear kernel only: primal weights of each decision function (w[k*(k-1)/2*SV_dim]), null unless SV_dense is set
 	public double[][] sv_coef;	// coefficients for SVs in decision functions (sv_coef[k-1][l])
 	public double[] rho;		// constants in decision functions (rho[k*(k-1)/2])
 	public double[] probA;         // pariwise probability information
@@ -19,4 +28,17 @@ public class svm_model implements java.io.Serializable
 	public int[] label;		// label of each class (label[k])
 	public int[] nSV;		// number of SVs for each class (nSV[k])
 				// nSV[0] + nSV[1] + ... + nSV[k-1] = l
+
+	private void writeObject(java.io.ObjectOutputStream out) throws java.io.IOException
+	{
+		svm.svm_support_vectors(this);
+		out.defaultWriteObject();
+	}
+
+	private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException
+	{
+		in.defaultReadObject();
+		if(SV != null)
+			svm.svm_densify(this);
+	}
 };
@@ -1,6 +1,11 @@
 package libsvm;
+import java.util.concurrent.ForkJoinPool;
 public class svm_parameter implements Cloneable,java.io.Serializable
 {
+	// unchanged since before the transient fields were added, so that
+	// parameters serialized by earlier versions (e.g. in models) still load
+	private static final long serialVersionUID = -2733609912517132812L;
+
 	/* svm_type */
 	public static final int C_SVC = 0;
 	public static final int NU_SVC = 1;
@@ -22,7 +27,8 @@ public class svm_parameter implements Cloneable,java.io.Serializable
 	public double coef0;	// for poly/sigmoid
 
 	// these are for training only
-	public double cache_size; // in MB
+	public double cache_size; // in MB, capped at half of the available heap; 0 for a quarter of it
+	public int cache_off_heap;	// keep the kernel cache in a direct buffer
 	public double eps;	// stopping criteria
 	public double C;	// for C_SVC, EPSILON_SVR and NU_SVR
 	public int nr_weight;		// for C_SVC
@@ -33,6 +39,11 @@ public class svm_parameter implements Cloneable,java.io.Serializable
 	public int shrinking;	// use the shrinking heuristics
 	public int probability; // do probability estimates
 
+	// these are not serialized, and are shared by clones
+	public transient ForkJoinPool pool;	// for independent solves; null to train serially
+	public transient svm_print_interface print_func;	// training output; null for svm_set_print_string_function's, if any
+	public transient svm_cache_stats cache_stats;	// kernel cache counters; null for none
+
 	public Object clone() 
 	{
 		try 
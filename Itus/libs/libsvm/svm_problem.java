@@ -1,7 +1,12 @@
 package libsvm;
 public class svm_problem implements java.io.Serializable
 {
+	// unchanged since before alpha was added, so that problems
+	// serialized by earlier versions still load
+	private static final long serialVersionUID = -4451389443706847272L;
 	public int l;
 	public double[] y;
 	public svm_node[][] x;
+	public double[] alpha;	// for C_SVC with two classes: starting alpha of
+				// each instance (warm start), or null for zero
 }
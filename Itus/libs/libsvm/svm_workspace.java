@@ -0,0 +1,41 @@
+//
+// svm_workspace
+//
+// Scratch buffers for svm_predict, svm_predict_values and
+// svm_predict_probability, so that repeated predictions with the same model
+// allocate nothing. A workspace is sized for one model and must not be
+// shared between threads.
+//
+package libsvm;
+public class svm_workspace
+{
+	svm_model model;		// model the buffers are sized for
+	double[] kvalue;		// kernel values (kvalue[l])
+	int[] start;			// first SV of each class (start[k])
+	int[] vote;			// votes of each class (vote[k])
+	double[] dec_values;		// decision values (dec_values[k*(k-1)/2])
+	double[][] pairwise_prob;	// pairwise probabilities (pairwise_prob[k][k])
+	double[][] Q;			// multiclass_probability matrix (Q[k][k])
+	double[] Qp;			// multiclass_probability vector (Qp[k])
+	double[] x_dense;		// values of a dense instance (x_dense[SV_dim])
+
+	public svm_workspace(svm_model model)
+	{
+		int nr_class = model.nr_class;
+		this.model = model;
+		kvalue = new double[model.l];
+		start = new int[nr_class];
+		vote = new int[nr_class];
+		dec_values = new double[Math.max(1,nr_class*(nr_class-1)/2)];
+		pairwise_prob = new double[nr_class][nr_class];
+		Q = new double[nr_class][nr_class];
+		Qp = new double[nr_class];
+		x_dense = new double[model.SV_dim];
+	}
+
+	public boolean fits(svm_model model)
+	{
+		return this.model == model && kvalue.length == model.l &&
+			x_dense.length == model.SV_dim;
+	}
+}
@@ -18,16 +18,16 @@ import java.util.ArrayList;
 import java.util.List;
 
 import ca.uwaterloo.crysp.itus.machinelearning.Classifier;
-import ca.uwaterloo.crysp.itus.machinelearning.ClassifierState;
 import ca.uwaterloo.crysp.itus.measurements.Dispatcher;
 import ca.uwaterloo.crysp.itus.measurements.Measurement;
 import ca.uwaterloo.crysp.itus.storage.BinLabel;
-import ca.uwaterloo.crysp.itus.storage.DataStorage;
+import ca.uwaterloo.crysp.itus.storage.Bins;
 import ca.uwaterloo.crysp.itus.storage.PermanentStorage;
 
 /**
  * The main Itus thread that orchestrates other components to perform Implicit
- * Authentication
+ * Authentication. Each Itus drives one {@link ItusSession}; the default
+ * constructor drives the default session used by the static API.
  * @author Aaron Atwater
  * @author Hassan Khan
  *
@@ -39,45 +39,49 @@ public class Itus extends Thread {
 	private static Itus itus = null;
 
 	/**
-	 * The classifier to use with this Itus instance
+	 * The session driven by this Itus instance
 	 */
-	static Classifier classifier = null;
+	private final ItusSession session;
 	
-	private Measurement measurement;
 	/**
-	 * The main event dispatcher for this Itus instance
+	 * Link to the permanent storage class, shared by every session
 	 */
-	private Dispatcher dispatcher = null;
-	
-	/**
-	 * Stores the past scores
-	 */
-	private static ArrayList<Integer> scores = new ArrayList<Integer>();
+	private static PermanentStorage permanentStorage;
 	
 	/**
-	 * Link to the permanent storage class
+	 * Set once the default session's classifier has been trained
 	 */
-	private static PermanentStorage permanentStorage;
-	
 	public static boolean enoughDataTrigger = false;/**TODO**/
 	
 	/**
-	 * Default constructor. 
-	 * @param ctx Takes context from the user app
+	 * Default constructor. Drives the default session.
 	 */
 	public Itus() {
-		itus = this;
-		dispatcher = new Dispatcher();
-		scores = new ArrayList<Integer>(Parameters.getScoreHistorySize());
+		this(ItusSession.getDefault());
+	}
+	
+	/**
+	 * Creates an Itus thread driving {@code session}. Only the thread of 
+	 * the default session is returned by {@link #getItus()}.
+	 * @param session the session to drive
+	 * @throws IllegalArgumentException
+	 */
+	public Itus(ItusSession session) throws IllegalArgumentException {
+		if (session == null)
+			throw new IllegalArgumentException("session must not be null");
+		this.session = session;
+		if (session == ItusSession.getDefault())
+			itus = this;
 		
 		/* DEFAULT PARAMETER VALUES
 		 * These are default values only.  Prefabs may overwrite them
 		 * by calling setParam() after invoking this parent constructor.*/
-		Parameters.setItusPeriod(1000);
-		Parameters.setTrainingThreshold(10);
-		Parameters.setScoreHistorySize(10);
+		SessionParameters parameters = session.getParameters();
+		parameters.setItusPeriod(1000);
+		parameters.setTrainingThreshold(10);
+		parameters.setScoreHistorySize(10);
 		if (!enoughData()) 
-			DataStorage.setDefaultBin(BinLabel.BIN_TRAIN);
+			session.getBins().setDefaultBin(BinLabel.BIN_TRAIN);
 	}
 
 	/**
@@ -85,8 +89,7 @@ public class Itus extends Thread {
 	 * @param measurement type to use
 	 */
 	public void useMeasurement(Measurement _measurement) {
-		_measurement.staticInitializer(getDispatcher());
-		this.measurement = _measurement;
+		session.useMeasurement(_measurement);
 	}
 	
 	/**
@@ -94,98 +97,107 @@ public class Itus extends Thread {
 	 * @param c Classifier type to use
 	 */
 	public void useClassifier(Classifier _classifier) {
-		classifier = _classifier;
+		session.useClassifier(_classifier);
 	}
 	
 	/**
 	 * The main thread of Itus.  Once the thread is started using .start(),
-	 * this loop will not exit until Itus state is changed to pause.
+	 * this loop will not exit until Itus state is changed to pause. The 
+	 * loop blocks until data arrives, so recent samples are classified as 
+	 * soon as they are stored; the Itus period only bounds how long it 
+	 * waits before checking its state again.
 	 */
 	public void run() {
-		if (Parameters.getMode() == Parameters.Mode.CONFIG_MODE) 
+		SessionParameters parameters = session.getParameters();
+		if (parameters.getMode() == Parameters.Mode.CONFIG_MODE) 
 			return;
 			
-		Parameters.setItusState(Parameters.State.RUNNING);
-		while (Parameters.getItusState() != Parameters.State.STOPPED) {
+		parameters.setItusState(Parameters.State.RUNNING);
+		while (parameters.getItusState() != Parameters.State.STOPPED) {
 			
-			if (enoughData()) {	//System.out.println("enough data...");
-				if (!enoughDataTrigger) {
+			if (!enoughData()) {
+				//System.out.println("Not enough data");
+				try {
+					session.getBins().awaitData(BinLabel.BIN_TRAIN, 
+							parameters.getTrainingThreshold(), 
+							parameters.getItusPeriod());
+				} catch (InterruptedException e) {}
+			}
+			else {	//System.out.println("enough data...");
+				if (!session.isTrained()) {
 					System.out.println("Triggering training!");
-					/*grab default negative instances from the measurement
-					 * XXX support for other constructions and different FV size*/
-					boolean state = false;
-					if (Parameters.getMode() == Parameters.Mode.ONLINE_MODE) {
-						List <FeatureVector> dataset = 
-								DataStorage.getAll(BinLabel.BIN_TRAIN);
-						if (measurement.defaultNegativeInstances() != null)
-							dataset.addAll(measurement.defaultNegativeInstances());
-						state = classifier.train(dataset);
-						classifier.saveModel(classifier.getModel());
-					}
-					else {
-						state = classifier.train(
-								DataStorage.getAll(BinLabel.BIN_TRAIN));
-					}
-					/*state = classifier.train(
-							DataStorage.getAll(BinLabel.BIN_TRAIN));*/
-					if (state == false) {
+					if (!session.train()) {
 						System.out.print("Failed to train the classifier");
 						return;
 					}
-					enoughDataTrigger = true;
-				}
-				//DataStorage.setDefaultBin(BinLabel.BIN_RECENT);
-				FeatureVector recentSample = DataStorage.getMostRecent();
-				if (recentSample != null) {
-					int score = classifier.classify(recentSample);
-					if (score != 0)
-						updateScore(score);
-					//System.out.println("classification result " + score);
+					if (session == ItusSession.getDefault())
+						enoughDataTrigger = true;
 				}
-			}
-			//else
-			//	System.out.println("Not enough data");
-			try {
 				//XXX
 				//dispatcher.procEvent(EventType.PERIODIC_EVENT, null);
-				Thread.sleep(Parameters.getItusPeriod());
-			} catch (InterruptedException e) {}
+				session.score(awaitRecentSamples());
+			}
 		}
 	}
 	
+	/**
+	 * Waits up to the Itus period for a recent sample and, if micro-batching
+	 * is enabled, up to the micro-batch window for more, then drains every
+	 * pending recent sample so a burst is scored in one batch
+	 * @return recent samples to classify; empty if none arrived
+	 */
+	private List<FeatureVector> awaitRecentSamples() {
+		SessionParameters parameters = session.getParameters();
+		Bins bins = session.getBins();
+		try {
+			if (!bins.awaitData(BinLabel.BIN_RECENT, 1, 
+					parameters.getItusPeriod()))
+				return new ArrayList<FeatureVector>(0);
+			/*the recent bin never holds more than its capacity*/
+			int batchSize = Math.min(parameters.getMicroBatchSize(), 
+					bins.getMaxRecent());
+			if (batchSize > 1)
+				bins.awaitData(BinLabel.BIN_RECENT, batchSize, 
+						parameters.getMicroBatchWindow());
+		} catch (InterruptedException e) {}
+		return bins.drainRecent();
+	}
+	
 
 	/**
 	 * Checks if there is enough training data
 	 * @return true if their is enough training data
 	 */
 	protected boolean enoughData() {
-		/*System.out.println("Train bin Size: " 
-				+ String.valueOf(DataStorage.binSize(BinLabel.BIN_TRAIN)) + 
-				" Training Threshold: " + Parameters.getTrainingThreshold());*/
-		if (classifier != null)
-			if(classifier.getState() == ClassifierState.TRAINED) {
-				enoughDataTrigger = true;
-				return true;
-			}
-		return DataStorage.binSize(BinLabel.BIN_TRAIN) >= 
-				Parameters.getTrainingThreshold();
+		boolean enough = session.enoughData();
+		if (session.isTrained() && session == ItusSession.getDefault())
+			enoughDataTrigger = true;
+		return enough;
 	}
 	
 	/**
-	 * Returns instance of this Authenticator
-	 * @return this 
+	 * Returns the Itus thread of the default session
+	 * @return the Itus thread of the default session 
 	 */
 	public static Itus getItus() {
 		return itus;
 	}
 	
+	/**
+	 * Gets the session driven by this Itus Agent
+	 * @return the session
+	 */
+	public ItusSession getSession() {
+		return session;
+	}
+	
 	/**
 	 * Gets the main event dispatcher for this Itus Agent
 	 * 
 	 * @return 
 	 */
 	public Dispatcher getDispatcher() {
-		return dispatcher;
+		return session.getDispatcher();
 	}
 	/**
 	 * Gets the classifier for this Itus Agent
@@ -193,27 +205,14 @@ public class Itus extends Thread {
 	 * @return classifier
 	 */
 	public Classifier getClassifier() {
-		return classifier;
+		return session.getClassifier();
 	}
 	/**
 	 * Returns score history for the current classifier and clears history
 	 * @return score history for the current classifier
 	 */
-	public synchronized ArrayList<Integer> getPastScores() {
-		ArrayList<Integer> pastScores = new ArrayList<Integer>(scores.size());
-		for (int score : scores)
-			pastScores.add(score);
-		scores.clear();
-		return pastScores;
-	}
-	
-	/**
-	 * Adds {@code score} to the score history
-	 * @param score the new score that should be added
-	 */
-	private synchronized void updateScore(int score) {
-		//XXX: Don't want to limit the history size for ORACLE
-		scores.add(score);
+	public ArrayList<Integer> getPastScores() {
+		return session.getPastScores();
 	}
 
 	/**
@@ -0,0 +1,258 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.uwaterloo.crysp.itus.machinelearning.Classifier;
+import ca.uwaterloo.crysp.itus.machinelearning.ClassifierState;
+import ca.uwaterloo.crysp.itus.measurements.Dispatcher;
+import ca.uwaterloo.crysp.itus.measurements.Measurement;
+import ca.uwaterloo.crysp.itus.storage.BinLabel;
+import ca.uwaterloo.crysp.itus.storage.Bins;
+import ca.uwaterloo.crysp.itus.storage.TrainingStore;
+import ca.uwaterloo.crysp.itus.storage.TrainingView;
+
+/**
+ * The state of one user's Implicit Authentication: its parameters,
+ * dispatcher, bins, measurement, classifier and score history. Sessions
+ * share nothing but the permanent storage, so one JVM can score many users
+ * at once. An {@link Itus} thread drives a session from live events; a
+ * session may also be driven without a thread by dispatching recorded
+ * events to it and calling {@link #process()}.
+ *
+ * The static {@link Parameters}, {@link ca.uwaterloo.crysp.itus.storage.DataStorage}
+ * and {@link Itus#getItus()} act on the default session.
+ */
+public class ItusSession {
+	/**
+	 * The session behind the static API; created on first use
+	 */
+	private static ItusSession defaultSession = null;
+
+	/**
+	 * Parameters of this session
+	 */
+	private final SessionParameters parameters = new SessionParameters();
+
+	/**
+	 * Bins that the dispatcher stores FeatureVectors to
+	 */
+	private final Bins bins = new Bins(parameters);
+
+	/**
+	 * Event dispatcher of this session
+	 */
+	private final Dispatcher dispatcher = new Dispatcher(this);
+
+	/**
+	 * The measurement used by this session
+	 */
+	private volatile Measurement measurement = null;
+
+	/**
+	 * The classifier used by this session
+	 */
+	private volatile Classifier classifier = null;
+
+	/**
+	 * True once the classifier has been trained or loaded trained
+	 */
+	private volatile boolean trained = false;
+
+	/**
+	 * Stores the past scores
+	 */
+	private final ArrayList<Integer> scores = new ArrayList<Integer>();
+
+	/**
+	 * Returns the session used by the static API, creating it on first use
+	 * @return the default session
+	 */
+	public static synchronized ItusSession getDefault() {
+		if (defaultSession == null)
+			defaultSession = new ItusSession();
+		return defaultSession;
+	}
+
+	/**
+	 * Instructs the session to use the Measurement type 'measurement'
+	 * @param _measurement type to use
+	 */
+	public void useMeasurement(Measurement _measurement) {
+		_measurement.staticInitializer(dispatcher);
+		this.measurement = _measurement;
+	}
+
+	/**
+	 * Instructs the session to use the Classifier type 'classifier'. Until
+	 * there is enough training data, incoming FeatureVectors are stored to
+	 * the training bin.
+	 * @param _classifier Classifier type to use
+	 */
+	public void useClassifier(Classifier _classifier) {
+		this.classifier = _classifier;
+		if (!enoughData())
+			bins.setDefaultBin(BinLabel.BIN_TRAIN);
+	}
+
+	/**
+	 * Checks if there is enough training data
+	 * @return true if the classifier is trained or there is enough
+	 * 			training data
+	 */
+	public boolean enoughData() {
+		Classifier classifier = this.classifier;
+		if (classifier != null &&
+				classifier.getState() == ClassifierState.TRAINED) {
+			trained = true;
+			return true;
+		}
+		return bins.binSize(BinLabel.BIN_TRAIN) >=
+				parameters.getTrainingThreshold();
+	}
+
+	/**
+	 * Trains the classifier on the training bin. In online mode, the
+	 * measurement's default negative instances are added to the training
+	 * data and the model is saved to the permanent storage.
+	 * @return true if the classifier was trained
+	 * @throws IllegalStateException
+	 */
+	public boolean train() throws IllegalStateException {
+		Classifier classifier = this.classifier;
+		if (classifier == null)
+			throw new IllegalStateException("No classifier to train");
+		/*grab default negative instances from the measurement
+		 * XXX support for other constructions and different FV size*/
+		boolean state = false;
+		if (parameters.getMode() == Parameters.Mode.ONLINE_MODE) {
+			TrainingView dataset = bins.getTrainingData();
+			List<FeatureVector> negatives = measurement == null ? null :
+					measurement.defaultNegativeInstances();
+			if (negatives != null) {
+				/*the snapshot is read-only; extend a copy*/
+				TrainingStore combined = new TrainingStore(dataset);
+				combined.addAll(negatives);
+				dataset = combined.snapshot();
+			}
+			state = classifier.trainPacked(dataset);
+			classifier.saveModel(classifier.getModel());
+		}
+		else {
+			state = classifier.trainPacked(bins.getTrainingData());
+		}
+		if (state)
+			trained = true;
+		return state;
+	}
+
+	/**
+	 * Scores every FeatureVector pending in the recent bin, training the
+	 * classifier first once there is enough training data. Does not wait
+	 * for data, so recorded events can be replayed by dispatching them and
+	 * calling this in turn.
+	 * @return number of FeatureVectors scored
+	 * @throws IllegalStateException
+	 */
+	public int process() throws IllegalStateException {
+		if (!enoughData())
+			return 0;
+		if (!trained && !train())
+			throw new IllegalStateException("Failed to train the classifier");
+		List<FeatureVector> recentSamples = bins.drainRecent();
+		score(recentSamples);
+		return recentSamples.size();
+	}
+
+	/**
+	 * Classifies {@code samples} and adds their scores to the score history
+	 * @param samples recent samples to classify
+	 */
+	void score(List<FeatureVector> samples) {
+		if (samples.size() == 1) {
+			int score = classifier.classify(samples.get(0));
+			if (score != 0)
+				updateScore(score);
+		}
+		else if (samples.size() > 1) {
+			for (int score : classifier.classifyBatch(samples))
+				if (score != 0)
+					updateScore(score);
+		}
+	}
+
+	/**
+	 * Returns score history for the current classifier and clears history
+	 * @return score history for the current classifier
+	 */
+	public synchronized ArrayList<Integer> getPastScores() {
+		ArrayList<Integer> pastScores = new ArrayList<Integer>(scores);
+		scores.clear();
+		return pastScores;
+	}
+
+	/**
+	 * Adds {@code score} to the score history
+	 * @param score the new score that should be added
+	 */
+	private synchronized void updateScore(int score) {
+		//XXX: Don't want to limit the history size for ORACLE
+		scores.add(score);
+	}
+
+	/**
+	 * @return true once the classifier has been trained
+	 */
+	public boolean isTrained() {
+		return trained;
+	}
+
+	/**
+	 * @return the parameters of this session
+	 */
+	public SessionParameters getParameters() {
+		return parameters;
+	}
+
+	/**
+	 * @return the bins of this session
+	 */
+	public Bins getBins() {
+		return bins;
+	}
+
+	/**
+	 * @return the event dispatcher of this session
+	 */
+	public Dispatcher getDispatcher() {
+		return dispatcher;
+	}
+
+	/**
+	 * @return the measurement used by this session
+	 */
+	public Measurement getMeasurement() {
+		return measurement;
+	}
+
+	/**
+	 * @return the classifier used by this session
+	 */
+	public Classifier getClassifier() {
+		return classifier;
+	}
+}
@@ -0,0 +1,200 @@
+package ca.uwaterloo.crysp.itus;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uwaterloo.crysp.itus.machinelearning.ClassLabel;
+import ca.uwaterloo.crysp.itus.machinelearning.KNNClassifier;
+import ca.uwaterloo.crysp.itus.measurements.Dispatcher;
+import ca.uwaterloo.crysp.itus.measurements.EventType;
+import ca.uwaterloo.crysp.itus.measurements.Measurement;
+import ca.uwaterloo.crysp.itus.storage.BinLabel;
+
+public class ItusSessionTest {
+
+	/**
+	 * Measurement that takes recorded FeatureVectors as events
+	 */
+	static class ReplayMeasurement extends Measurement {
+		ReplayMeasurement() {
+			setFeatureList(new String[] {"x", "y", "z"});
+		}
+
+		@Override
+		public void staticInitializer(Dispatcher eventDispatcher) {
+			eventDispatcher.registerCallback(EventType.TOUCH_INPUT, this);
+		}
+
+		@Override
+		public boolean procEvent(Object ev, EventType eventType) {
+			fv = (FeatureVector) ev;
+			return true;
+		}
+
+		@Override
+		public Measurement newInstance() {
+			return new ReplayMeasurement();
+		}
+
+		@Override
+		public List<FeatureVector> defaultPositiveInstances() {
+			return null;
+		}
+
+		@Override
+		public List<FeatureVector> defaultNegativeInstances() {
+			return null;
+		}
+
+		@Override
+		public Class<?> getRecommendedClassifier() {
+			return KNNClassifier.class;
+		}
+
+		@Override
+		public ArrayList<Class<?>> getSupportedClassifier() {
+			return null;
+		}
+	}
+
+	/**
+	 * ReplayMeasurement for the default session
+	 */
+	static class DefaultReplayMeasurement extends ReplayMeasurement {
+		@Override
+		public Measurement newInstance() {
+			return new DefaultReplayMeasurement();
+		}
+	}
+
+	ItusSession owner, other;
+	double [] near = {1.0, 1.0, 1.0};
+	double [] far = {10.0, 10.0, 10.0};
+
+	private static ItusSession newSession() {
+		ItusSession session = new ItusSession();
+		session.getParameters().setMode(Parameters.Mode.ORACLE_MODE);
+		session.getParameters().setTrainingThreshold(6);
+		session.useMeasurement(new ReplayMeasurement());
+		session.useClassifier(new KNNClassifier(3, 3));
+		return session;
+	}
+
+	private static void replay(ItusSession session, double[] features,
+			ClassLabel label) {
+		session.getDispatcher().procEvent(EventType.TOUCH_INPUT,
+				new FeatureVector(features, label));
+	}
+
+	@Before
+	public void setUp() {
+		owner = newSession();
+		other = newSession();
+		/*the sessions learn opposite labels for the same data*/
+		for (int i = 0; i < 3; i++) {
+			replay(owner, near, ClassLabel.POSITIVE);
+			replay(owner, far, ClassLabel.NEGATIVE);
+			replay(other, near, ClassLabel.NEGATIVE);
+			replay(other, far, ClassLabel.POSITIVE);
+		}
+	}
+
+	@Test
+	public void testSeparateBins() {
+		assertEquals("ItusSession shared the training bin",
+				owner.getBins().binSize(BinLabel.BIN_TRAIN), 6);
+		assertEquals("ItusSession shared the training bin",
+				other.getBins().binSize(BinLabel.BIN_TRAIN), 6);
+		assertEquals("ItusSession used the default session's bins",
+				ItusSession.getDefault().getBins() == owner.getBins(), false);
+		owner.getParameters().setTrainingThreshold(4);
+		assertEquals("ItusSession shared the parameters",
+				other.getParameters().getTrainingThreshold(), 6);
+	}
+
+	@Test
+	public void testProcess() {
+		assertEquals("ItusSession.process failed to train",
+				owner.process(), 0);
+		assertTrue("ItusSession.process failed to train", owner.isTrained());
+		assertFalse("ItusSession trained another session", other.isTrained());
+
+		replay(owner, near, ClassLabel.UNKNOWN);
+		replay(owner, far, ClassLabel.UNKNOWN);
+		replay(other, near, ClassLabel.UNKNOWN);
+		assertEquals("ItusSession.process failed", owner.process(), 2);
+		assertEquals("ItusSession.process failed", other.process(), 1);
+
+		ArrayList<Integer> ownerScores = owner.getPastScores();
+		assertEquals("ItusSession.getPastScores failed", ownerScores.size(),
+				2);
+		assertEquals("ItusSession scored with the wrong classifier",
+				(int) ownerScores.get(0), 1);
+		assertEquals("ItusSession scored with the wrong classifier",
+				(int) ownerScores.get(1), -1);
+		ArrayList<Integer> otherScores = other.getPastScores();
+		assertEquals("ItusSession shared the score history",
+				otherScores.size(), 1);
+		assertEquals("ItusSession scored with the wrong classifier",
+				(int) otherScores.get(0), -1);
+		assertEquals("ItusSession.getPastScores failed to clear",
+				owner.getPastScores().size(), 0);
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testFeatureLists() {
+		Measurement measurement = new ReplayMeasurement();
+		owner.getDispatcher().registerCallback(EventType.KEY_INPUT,
+				measurement);
+		measurement.procEvent(new FeatureVector(near, ClassLabel.UNKNOWN),
+				EventType.KEY_INPUT);
+		measurement.setUsesFeature(1, false);
+		assertEquals("Measurement.setUsesFeature failed",
+				measurement.getFeatureVector().size(), 2);
+		assertFalse("ItusSession published its feature list",
+				Measurement.employedFeatures.containsKey(
+						ReplayMeasurement.class));
+
+		/*the default session keeps the static lists in sync*/
+		Dispatcher dispatcher = ItusSession.getDefault().getDispatcher();
+		Measurement shared = new DefaultReplayMeasurement();
+		dispatcher.registerCallback(EventType.KEY_INPUT, shared);
+		try {
+			shared.procEvent(new FeatureVector(near, ClassLabel.UNKNOWN),
+					EventType.KEY_INPUT);
+			assertEquals("Default session failed to publish its feature list",
+					Measurement.employedFeatures.get(
+							DefaultReplayMeasurement.class).size(), 3);
+			shared.setUsesFeature(1, false);
+			assertFalse("Measurement.setUsesFeature failed to publish",
+					Measurement.employedFeatures.get(
+							DefaultReplayMeasurement.class).get(1));
+			Measurement.employedFeatures.get(
+					DefaultReplayMeasurement.class).set(2, false);
+			assertFalse("Measurement.usesFeature ignored employedFeatures",
+					shared.usesFeature("z"));
+			assertEquals("Measurement.getFeatureVector ignored "
+					+ "employedFeatures", shared.getFeatureVector().size(), 1);
+		} finally {
+			dispatcher.unRegisterCallback(EventType.KEY_INPUT);
+			Measurement.employedFeatures.remove(
+					DefaultReplayMeasurement.class);
+			Measurement.featureIndexMap.remove(
+					DefaultReplayMeasurement.class);
+		}
+	}
+
+	@Test
+	public void testProcessWithoutData() {
+		ItusSession session = newSession();
+		assertEquals("ItusSession.process failed without data",
+				session.process(), 0);
+		assertFalse("ItusSession trained without data", session.isTrained());
+	}
+}
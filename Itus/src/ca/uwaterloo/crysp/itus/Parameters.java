@@ -21,37 +21,15 @@ import ca.uwaterloo.crysp.itus.storage.PermanentStorage;
  * Various parameters used by Itus. These are default values only.  
  * Prefabs may overwrite them by calling setParam() 
  * 
+ * The mode, period, micro-batch, training threshold, state and score history
+ * size are those of the default {@link ItusSession}; other sessions have
+ * their own {@link SessionParameters}. The file names and permanent storage
+ * are shared by every session.
+ * 
  * @author Aaron Atwater
  * @author Hassan Khan
  */
 public class Parameters {
-	/**
-	 * Current operation mode 
-	 */
-	private static Mode mode = Mode.ONLINE_MODE;
-
-	/**
-	 * How often we invoke the Itus train/classify loop, in ms
-	 */
-	private static long itusPeriod = 5000;
-	
-	/**
-	 * minimum number of instances required before training kicks in
-	 * note: this is a minimum -- training might be invoked with more
-	 * instances than this
-	 */
-	private static int trainingThreshold = 8;
-	
-	/**
-	 * Used to pause/resume the Itus thread after it has been launched.
-	 */
-	private static State itusState = State.STOPPED;
-	
-	/**
-	 * History size of past scores
-	 */
-	private static int scoreHistorySize = 10;
-	
 	/**
 	 * The default filename for the touch log file
 	 */
@@ -63,12 +41,21 @@ public class Parameters {
 	private static String modelFileName = "itus_classifier_model_file";
 	
 	private static PermanentStorage permanentStorageInstance = null;
+	
+	/**
+	 * Gets the parameters of the default session
+	 * @return the default session's parameters
+	 */
+	private static SessionParameters defaults() {
+		return ItusSession.getDefault().getParameters();
+	}
+	
 	/**
 	 * Gets the Itus' operation mode
 	 * @return the mode
 	 */
 	public static Mode getMode() {
-		return mode;
+		return defaults().getMode();
 	}
 
 	
@@ -77,7 +64,7 @@ public class Parameters {
 	 * @param mode the mode to set
 	 */
 	public static void setOracleMode(PermanentStorage permanentStorage) {
-		Parameters.mode = Parameters.Mode.ORACLE_MODE;
+		defaults().setMode(Parameters.Mode.ORACLE_MODE);
 		Itus.setPermanentStorage(permanentStorage);
 	} 
 
@@ -86,7 +73,7 @@ public class Parameters {
 	 * @param mode the mode to set
 	 */
 	public static void setConfigMode(PermanentStorage permanentStorage) {
-		Parameters.mode = Parameters.Mode.CONFIG_MODE;
+		defaults().setMode(Parameters.Mode.CONFIG_MODE);
 		Itus.setPermanentStorage(permanentStorage);
 	}
 	
@@ -95,22 +82,55 @@ public class Parameters {
 	 * @param mode the mode to set
 	 */
 	public static void setOnlineMode() {
-		Parameters.mode = Parameters.Mode.ONLINE_MODE;
+		defaults().setMode(Parameters.Mode.ONLINE_MODE);
 	} 
 	/**
-	 * Gets the Itus' period/How often it is invoked in ms
+	 * Gets the Itus' period/The longest it waits for new data in ms
 	 * @return the itusPeriod
 	 */
 	public static long getItusPeriod() {
-		return itusPeriod;
+		return defaults().getItusPeriod();
 	}
 
 	/**
-	 * Sets the Itus' period/How often it is invoked in ms
+	 * Sets the Itus' period/The longest it waits for new data in ms
 	 * @param itusPeriod the itusPeriod to set
 	 */
 	public static void setItusPeriod(long itusPeriod) {
-		Parameters.itusPeriod = itusPeriod;
+		defaults().setItusPeriod(itusPeriod);
+	}
+	
+	/**
+	 * Gets the number of recent samples the Itus loop waits for before
+	 * classifying them together
+	 * @return the microBatchSize
+	 */
+	public static int getMicroBatchSize() {
+		return defaults().getMicroBatchSize();
+	}
+	
+	/**
+	 * Gets how long a batch of recent samples is collected for, in ms
+	 * @return the microBatchWindow
+	 */
+	public static long getMicroBatchWindow() {
+		return defaults().getMicroBatchWindow();
+	}
+	
+	/**
+	 * Lets the Itus loop classify recent samples in batches: once a sample
+	 * arrives, the loop waits up to {@code window} ms until {@code size} 
+	 * samples are pending, then classifies every pending sample. A size of 1
+	 * (the default) classifies samples as soon as they arrive. The loop 
+	 * waits for at most as many samples as the RecentBin holds 
+	 * ({@link ca.uwaterloo.crysp.itus.storage.DataStorage#setMaxRecent}).
+	 * @param size the microBatchSize to set
+	 * @param window the microBatchWindow to set
+	 * @throws IllegalArgumentException
+	 */
+	public static void setMicroBatch(int size, long window) 
+			throws IllegalArgumentException {
+		defaults().setMicroBatch(size, window);
 	}
 
 
@@ -119,7 +139,7 @@ public class Parameters {
 	 * @return the trainingThreshold
 	 */
 	public static int getTrainingThreshold() {
-		return trainingThreshold;
+		return defaults().getTrainingThreshold();
 	}
 
 	/**
@@ -127,7 +147,7 @@ public class Parameters {
 	 * @param trainingThreshold the trainingThreshold to set
 	 */
 	public static void setTrainingThreshold(int trainingThreshold) {
-		Parameters.trainingThreshold = trainingThreshold;
+		defaults().setTrainingThreshold(trainingThreshold);
 	}
 
 
@@ -135,16 +155,16 @@ public class Parameters {
 	 * Gets the execution state of Itus
 	 * @return the itusState
 	 */
-	public static synchronized State getItusState() {
-		return itusState;
+	public static State getItusState() {
+		return defaults().getItusState();
 	}
 
 	/**
 	 * Sets the execution state of Itus
 	 * @param itusState the itusState to set
 	 */
-	public static synchronized void setItusState(State itusState) {
-		Parameters.itusState = itusState;
+	public static void setItusState(State itusState) {
+		defaults().setItusState(itusState);
 	}
 
 
@@ -153,7 +173,7 @@ public class Parameters {
 	 * @return the scoreHistorySize
 	 */
 	public static int getScoreHistorySize() {
-		return scoreHistorySize;
+		return defaults().getScoreHistorySize();
 	}
 
 	/**
@@ -161,7 +181,7 @@ public class Parameters {
 	 * @param scoreHistorySize the scoreHistorySize to set
 	 */
 	public static void setScoreHistorySize(int scoreHistorySize) {
-		Parameters.scoreHistorySize = scoreHistorySize;
+		defaults().setScoreHistorySize(scoreHistorySize);
 	}
 
 
@@ -0,0 +1,176 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus;
+
+/**
+ * The parameters of one {@link ItusSession}. The static {@link Parameters}
+ * read and write the parameters of the default session.
+ */
+public class SessionParameters {
+	/**
+	 * Current operation mode 
+	 */
+	private volatile Parameters.Mode mode = Parameters.Mode.ONLINE_MODE;
+
+	/**
+	 * Longest time the Itus train/classify loop waits for new data before
+	 * it checks its state again, in ms. Samples are classified as soon as 
+	 * they arrive; 0 polls without waiting.
+	 */
+	private volatile long itusPeriod = 5000;
+	
+	/**
+	 * Number of recent samples the Itus loop waits for before classifying
+	 */
+	private volatile int microBatchSize = 1;
+	
+	/**
+	 * How long the Itus loop keeps collecting recent samples after the 
+	 * first one of a batch arrives, in ms
+	 */
+	private volatile long microBatchWindow = 0;
+	
+	/**
+	 * minimum number of instances required before training kicks in
+	 * note: this is a minimum -- training might be invoked with more
+	 * instances than this
+	 */
+	private volatile int trainingThreshold = 8;
+	
+	/**
+	 * Used to pause/resume the Itus thread after it has been launched.
+	 */
+	private Parameters.State itusState = Parameters.State.STOPPED;
+	
+	/**
+	 * History size of past scores
+	 */
+	private volatile int scoreHistorySize = 10;
+
+	/**
+	 * Gets the session's operation mode
+	 * @return the mode
+	 */
+	public Parameters.Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Sets the session's operation mode
+	 * @param mode the mode to set
+	 * @throws IllegalArgumentException
+	 */
+	public void setMode(Parameters.Mode mode) 
+			throws IllegalArgumentException {
+		if (mode == null)
+			throw new IllegalArgumentException("mode must not be null");
+		this.mode = mode;
+	}
+
+	/**
+	 * Gets the Itus' period/The longest it waits for new data in ms
+	 * @return the itusPeriod
+	 */
+	public long getItusPeriod() {
+		return itusPeriod;
+	}
+
+	/**
+	 * Sets the Itus' period/The longest it waits for new data in ms
+	 * @param itusPeriod the itusPeriod to set
+	 */
+	public void setItusPeriod(long itusPeriod) {
+		this.itusPeriod = itusPeriod;
+	}
+	
+	/**
+	 * Gets the number of recent samples the Itus loop waits for before
+	 * classifying them together
+	 * @return the microBatchSize
+	 */
+	public int getMicroBatchSize() {
+		return microBatchSize;
+	}
+	
+	/**
+	 * Gets how long a batch of recent samples is collected for, in ms
+	 * @return the microBatchWindow
+	 */
+	public long getMicroBatchWindow() {
+		return microBatchWindow;
+	}
+	
+	/**
+	 * Sets the micro-batch; see {@link Parameters#setMicroBatch}
+	 * @param size the microBatchSize to set
+	 * @param window the microBatchWindow to set
+	 * @throws IllegalArgumentException
+	 */
+	public synchronized void setMicroBatch(int size, long window) 
+			throws IllegalArgumentException {
+		if (size < 1 || window < 0)
+			throw new IllegalArgumentException("Invalid micro-batch");
+		this.microBatchSize = size;
+		this.microBatchWindow = window;
+	}
+
+	/**
+	 * Gets the training threshold
+	 * @return the trainingThreshold
+	 */
+	public int getTrainingThreshold() {
+		return trainingThreshold;
+	}
+
+	/**
+	 * Sets the training threshold
+	 * @param trainingThreshold the trainingThreshold to set
+	 */
+	public void setTrainingThreshold(int trainingThreshold) {
+		this.trainingThreshold = trainingThreshold;
+	}
+
+	/**
+	 * Gets the execution state of the session's Itus thread
+	 * @return the itusState
+	 */
+	public synchronized Parameters.State getItusState() {
+		return itusState;
+	}
+
+	/**
+	 * Sets the execution state of the session's Itus thread
+	 * @param itusState the itusState to set
+	 */
+	public synchronized void setItusState(Parameters.State itusState) {
+		this.itusState = itusState;
+	}
+
+	/**
+	 * Returns the scoreHistorySize
+	 * @return the scoreHistorySize
+	 */
+	public int getScoreHistorySize() {
+		return scoreHistorySize;
+	}
+
+	/**
+	 * Sets the score history size
+	 * @param scoreHistorySize the scoreHistorySize to set
+	 */
+	public void setScoreHistorySize(int scoreHistorySize) {
+		this.scoreHistorySize = scoreHistorySize;
+	}
+}
@@ -18,6 +18,7 @@ import java.util.List;
 
 import ca.uwaterloo.crysp.itus.FeatureVector;
 import ca.uwaterloo.crysp.itus.Parameters;
+import ca.uwaterloo.crysp.itus.storage.TrainingView;
 
 /**
  * Contains Interface that is to be implemented by 
@@ -67,6 +68,22 @@ public abstract class Classifier {
 	public abstract boolean train(List<FeatureVector> data)
 			throws IllegalArgumentException;
 	
+	/**
+	 * Trains the classifier using the rows of {@code data}. Subclasses 
+	 * override this to read the packed features directly; the default 
+	 * implementation trains on the rows as FeatureVectors.
+	 * 
+	 * @param data contains positive and negative training samples 
+	 * @return returns true is training is successful, false otherwise
+	 * @throws IllegalArgumentException
+	 */
+	public boolean trainPacked(TrainingView data) 
+			throws IllegalArgumentException {
+		if (data == null)
+			throw new IllegalArgumentException("Provided data is invalid");
+		return train(data.asList());
+	}
+	
 	/**
 	 * Classifies the given {@code featureVector} 
 	 * 
@@ -78,6 +95,42 @@ public abstract class Classifier {
 	public abstract int classify(FeatureVector featureVector) 
 			throws IllegalStateException;
 	
+	/**
+	 * Classifies every FeatureVector in {@code featureVectors}. Subclasses 
+	 * override this to share per-call setup across the batch.
+	 * 
+	 * @param featureVectors instances of {@code FeatureVector} to classify
+	 * @return for each instance, the value {@code classify} would return
+	 * @throws IllegalStateException
+	 */
+	public int[] classifyBatch(List<FeatureVector> featureVectors)
+			throws IllegalStateException {
+		int[] labels = new int[featureVectors.size()];
+		for (int i = 0; i < labels.length; i++)
+			labels[i] = classify(featureVectors.get(i));
+		return labels;
+	}
+	
+	/**
+	 * Scores every FeatureVector in {@code featureVectors} with the 
+	 * classifier's confidence that it is a positive instance
+	 * 
+	 * @param featureVectors instances of {@code FeatureVector} to score
+	 * @return for each instance, a score between 0 (negative) and 1 
+	 * 			(positive); {@code Double.NaN} if it could not be scored. 
+	 * 			The default implementation scores the result of 
+	 * 			{@code classify} as 0 or 1
+	 * @throws IllegalStateException
+	 */
+	public double[] scoreBatch(List<FeatureVector> featureVectors)
+			throws IllegalStateException {
+		int[] labels = classifyBatch(featureVectors);
+		double[] scores = new double[labels.length];
+		for (int i = 0; i < labels.length; i++)
+			scores[i] = labels[i] == 0 ? Double.NaN : (labels[i] > 0 ? 1 : 0);
+		return scores;
+	}
+	
 	/**
 	 * Returns the Model associated with this classifier
 	 * @return model associated with this classifier as an object
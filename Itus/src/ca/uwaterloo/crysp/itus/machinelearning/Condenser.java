@@ -0,0 +1,300 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus.machinelearning;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Prototype reduction for the packed training matrix of a 
+ * {@code KNNModel}. Each method replaces the model's training rows with a
+ * smaller representative set; the model must hold {@code DOUBLE} storage
+ * and no search index yet.
+ */
+public class Condenser {
+	/**
+	 * Maximum number of k-means iterations per class
+	 */
+	static final int KMEANS_ITERATIONS = 20;
+
+	private Condenser() {
+	}
+
+	/**
+	 * Applies {@code condensation} to {@code model}
+	 * @param model a model with packed training data
+	 * @param condensation the reduction to apply
+	 * @param reduction number of rows of a class per prototype, for
+	 * 			{@code KMEANS}
+	 * @param seed seed of the k-means initialization
+	 */
+	public static void apply(KNNClassifier.KNNModel model, 
+			KNNCondensation condensation, int reduction, long seed) {
+		if (condensation == KNNCondensation.EDITED)
+			edit(model);
+		else if (condensation == KNNCondensation.CONDENSED) {
+			edit(model);
+			condense(model);
+		} else if (condensation == KNNCondensation.KMEANS)
+			kMeans(model, reduction, seed);
+	}
+
+	/**
+	 * Wilson editing: removes every row whose k nearest other rows vote 
+	 * for a different label. All votes are taken on the unedited set. If 
+	 * every row would be removed, the model is left unchanged.
+	 * @param model a model with packed training data
+	 */
+	public static void edit(KNNClassifier.KNNModel model) {
+		final int n = model.numSamples;
+		final int numFeatures = model.numFeatures;
+		final double[] data = model.trainingData;
+		int[] kept = new int[n];
+		int numKept = 0;
+		NeighborHeap nearest = new NeighborHeap(model.k);
+		for (int i = 0; i < n; i++) {
+			nearest.clear();
+			int query = i * numFeatures;
+			for (int j = 0; j < n; j++) {
+				if (j == i)
+					continue;
+				double bound = nearest.worst();
+				double distance = KNNClassifier.squaredDistance(data, 
+						j * numFeatures, data, query, numFeatures, bound);
+				if (distance <= bound)
+					nearest.offer(distance, model.labels[j], j);
+			}
+			if (nearest.size() == 0 || 
+					nearest.getMajorityLabel() == model.labels[i])
+				kept[numKept++] = i;
+		}
+		if (numKept > 0)
+			retain(model, kept, numKept);
+	}
+
+	/**
+	 * Hart condensation: starting from the first row, repeatedly adds 
+	 * every row that the rows kept so far misclassify by their single 
+	 * nearest neighbor, until a full pass adds none. The kept rows then 
+	 * classify every row of the original set correctly by 1-NN.
+	 * @param model a model with packed training data
+	 */
+	public static void condense(KNNClassifier.KNNModel model) {
+		final int n = model.numSamples;
+		final int numFeatures = model.numFeatures;
+		final double[] data = model.trainingData;
+		if (n == 0)
+			return;
+		boolean[] inStore = new boolean[n];
+		int[] store = new int[n];
+		int storeSize = 0;
+		store[storeSize++] = 0;
+		inStore[0] = true;
+		boolean added = true;
+		while (added) {
+			added = false;
+			for (int i = 0; i < n; i++) {
+				if (inStore[i])
+					continue;
+				int query = i * numFeatures;
+				double best = Double.POSITIVE_INFINITY;
+				int bestLabel = 0;
+				for (int s = 0; s < storeSize; s++) {
+					double distance = KNNClassifier.squaredDistance(data, 
+							store[s] * numFeatures, data, query, numFeatures,
+							best);
+					if (distance < best) {
+						best = distance;
+						bestLabel = model.labels[store[s]];
+					}
+				}
+				if (bestLabel != model.labels[i]) {
+					store[storeSize++] = i;
+					inStore[i] = true;
+					added = true;
+				}
+			}
+		}
+		/*keep the original row order*/
+		Arrays.sort(store, 0, storeSize);
+		retain(model, store, storeSize);
+	}
+
+	/**
+	 * Replaces the rows of each label by the centroids of a k-means 
+	 * clustering of those rows, with k-means++ initialization. Each label
+	 * gets one centroid per {@code reduction} rows, rounded up, so that 
+	 * the labels keep their proportions and the k nearest prototypes vote
+	 * the way the k nearest rows would.
+	 * @param model a model with packed training data
+	 * @param reduction number of rows per centroid
+	 * @param seed seed of the initialization
+	 * @throws IllegalArgumentException
+	 */
+	public static void kMeans(KNNClassifier.KNNModel model, 
+			int reduction, long seed) throws IllegalArgumentException {
+		if (reduction < 1)
+			throw new IllegalArgumentException("reduction must be " 
+					+ "greater than zero");
+		final int n = model.numSamples;
+		final int numFeatures = model.numFeatures;
+		final double[] data = model.trainingData;
+		Random random = new Random(seed);
+		
+		int[] distinctLabels = distinctLabels(model.labels, n);
+		double[] prototypes = new double[n * numFeatures];
+		int[] prototypeLabels = new int[n];
+		int numPrototypes = 0;
+		int[] rows = new int[n];
+		for (int label : distinctLabels) {
+			int numRows = 0;
+			for (int i = 0; i < n; i++)
+				if (model.labels[i] == label)
+					rows[numRows++] = i;
+			int numCentroids = (numRows + reduction - 1) / reduction;
+			double[] centroids = reduction == 1 ? 
+					copyRows(data, rows, numRows, numFeatures) :
+					cluster(data, rows, numRows, numFeatures, numCentroids, 
+							random);
+			System.arraycopy(centroids, 0, prototypes, 
+					numPrototypes * numFeatures, numCentroids * numFeatures);
+			for (int c = 0; c < numCentroids; c++)
+				prototypeLabels[numPrototypes++] = label;
+		}
+		model.trainingData = Arrays.copyOf(prototypes, 
+				numPrototypes * numFeatures);
+		model.labels = Arrays.copyOf(prototypeLabels, numPrototypes);
+		model.numSamples = numPrototypes;
+	}
+
+	/**
+	 * Lloyd's k-means over the given rows
+	 * @return {@code numCentroids} centroids in row-major order
+	 */
+	private static double[] cluster(double[] data, int[] rows, int numRows,
+			int numFeatures, int numCentroids, Random random) {
+		double[] centroids = new double[numCentroids * numFeatures];
+		
+		/*k-means++: each centroid is a row drawn with probability 
+		 * proportional to its squared distance from the nearest centroid*/
+		double[] nearest = new double[numRows];
+		Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+		int first = rows[random.nextInt(numRows)];
+		System.arraycopy(data, first * numFeatures, centroids, 0, 
+				numFeatures);
+		for (int c = 1; c < numCentroids; c++) {
+			double total = 0;
+			for (int r = 0; r < numRows; r++) {
+				double distance = KNNClassifier.squaredDistance(centroids, 
+						(c - 1) * numFeatures, data, rows[r] * numFeatures, 
+						numFeatures, Double.POSITIVE_INFINITY);
+				nearest[r] = Math.min(nearest[r], distance);
+				total += nearest[r];
+			}
+			int chosen = numRows - 1;
+			double target = random.nextDouble() * total;
+			for (int r = 0; r < numRows; r++) {
+				target -= nearest[r];
+				if (target < 0) {
+					chosen = r;
+					break;
+				}
+			}
+			System.arraycopy(data, rows[chosen] * numFeatures, centroids, 
+					c * numFeatures, numFeatures);
+		}
+		
+		int[] assignment = new int[numRows];
+		Arrays.fill(assignment, -1);
+		double[] sums = new double[numCentroids * numFeatures];
+		int[] counts = new int[numCentroids];
+		for (int iteration = 0; iteration < KMEANS_ITERATIONS; iteration++) {
+			boolean changed = false;
+			for (int r = 0; r < numRows; r++) {
+				int best = 0;
+				double bestDistance = Double.POSITIVE_INFINITY;
+				for (int c = 0; c < numCentroids; c++) {
+					double distance = KNNClassifier.squaredDistance(centroids,
+							c * numFeatures, data, rows[r] * numFeatures, 
+							numFeatures, bestDistance);
+					if (distance < bestDistance) {
+						bestDistance = distance;
+						best = c;
+					}
+				}
+				if (assignment[r] != best) {
+					assignment[r] = best;
+					changed = true;
+				}
+			}
+			if (!changed)
+				break;
+			Arrays.fill(sums, 0);
+			Arrays.fill(counts, 0);
+			for (int r = 0; r < numRows; r++) {
+				int c = assignment[r];
+				counts[c]++;
+				for (int j = 0; j < numFeatures; j++)
+					sums[c * numFeatures + j] += data[rows[r] * numFeatures + j];
+			}
+			/*an empty cluster keeps its previous centroid*/
+			for (int c = 0; c < numCentroids; c++)
+				if (counts[c] > 0)
+					for (int j = 0; j < numFeatures; j++)
+						centroids[c * numFeatures + j] = 
+							sums[c * numFeatures + j] / counts[c];
+		}
+		return centroids;
+	}
+
+	/**
+	 * Keeps only the first {@code numKept} rows listed in {@code kept}
+	 */
+	private static void retain(KNNClassifier.KNNModel model, int[] kept, 
+			int numKept) {
+		model.trainingData = copyRows(model.trainingData, kept, numKept, 
+				model.numFeatures);
+		int[] labels = new int[numKept];
+		for (int i = 0; i < numKept; i++)
+			labels[i] = model.labels[kept[i]];
+		model.labels = labels;
+		model.numSamples = numKept;
+	}
+
+	private static double[] copyRows(double[] data, int[] rows, int numRows,
+			int numFeatures) {
+		double[] copy = new double[numRows * numFeatures];
+		for (int i = 0; i < numRows; i++)
+			System.arraycopy(data, rows[i] * numFeatures, copy, 
+					i * numFeatures, numFeatures);
+		return copy;
+	}
+
+	/**
+	 * Returns the distinct labels in order of first appearance
+	 */
+	private static int[] distinctLabels(int[] labels, int n) {
+		int[] distinct = new int[n];
+		int numDistinct = 0;
+		for (int i = 0; i < n; i++) {
+			boolean seen = false;
+			for (int d = 0; d < numDistinct && !seen; d++)
+				seen = distinct[d] == labels[i];
+			if (!seen)
+				distinct[numDistinct++] = labels[i];
+		}
+		return Arrays.copyOf(distinct, numDistinct);
+	}
+}
@@ -0,0 +1,93 @@
+package ca.uwaterloo.crysp.itus.machinelearning;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uwaterloo.crysp.itus.FeatureVector;
+
+public class CondenserTest {
+	int numFeatures, k;
+	ArrayList<FeatureVector> data;
+	KNNClassifier.KNNModel model;
+
+	@Before
+	public void setUp() {
+		numFeatures = 2;
+		k = 3;
+		Random random = new Random(42);
+		data = new ArrayList<FeatureVector>();
+		/*two well separated blobs of 100 instances each*/
+		for (int i = 0; i < 200; i++) {
+			boolean positive = i % 2 == 0;
+			double center = positive ? 0 : 10;
+			double [] features = {center + random.nextGaussian(),
+					center + random.nextGaussian()};
+			data.add(new FeatureVector(features, positive ?
+					ClassLabel.POSITIVE : ClassLabel.NEGATIVE));
+		}
+		/*a mislabelled instance in the middle of the positive blob*/
+		double [] noise = {0.0, 0.0};
+		data.add(new FeatureVector(noise, ClassLabel.NEGATIVE));
+		model = new KNNClassifier.KNNModel(k, numFeatures);
+		model.setTrainingData(data);
+	}
+
+	@Test
+	public void testEdit() {
+		Condenser.edit(model);
+		assertEquals("edit kept the wrong number of instances",
+				model.numSamples, 200);
+		for (int i = 0; i < model.numSamples; i++)
+			if (model.labels[i] == ClassLabel.NEGATIVE.getClassLabel())
+				assertTrue("edit kept the mislabelled instance",
+						model.trainingData[i * numFeatures] > 5);
+		assertEquals("edit left a stale training matrix",
+				model.trainingData.length, 200 * numFeatures);
+	}
+
+	@Test
+	public void testCondense() {
+		double [] original = model.trainingData;
+		int [] originalLabels = model.labels;
+		int numOriginal = model.numSamples;
+		Condenser.condense(model);
+		assertTrue("condense kept too many instances: " + model.numSamples,
+				model.numSamples < numOriginal / 4);
+		/*every original instance is classified correctly by 1-NN*/
+		for (int i = 0; i < numOriginal; i++) {
+			double best = Double.POSITIVE_INFINITY;
+			int bestLabel = 0;
+			for (int s = 0; s < model.numSamples; s++) {
+				double distance = KNNClassifier.squaredDistance(
+						model.trainingData, s * numFeatures, original,
+						i * numFeatures, numFeatures, Double.POSITIVE_INFINITY);
+				if (distance < best) {
+					best = distance;
+					bestLabel = model.labels[s];
+				}
+			}
+			assertEquals("condensed set misclassifies instance " + i,
+					bestLabel, originalLabels[i]);
+		}
+	}
+
+	@Test
+	public void testKMeans() {
+		Condenser.kMeans(model, 10, 7);
+		assertEquals("kMeans kept the wrong number of prototypes",
+				model.numSamples, 10 + 11);
+		int positives = 0;
+		for (int i = 0; i < model.numSamples; i++)
+			if (model.labels[i] == ClassLabel.POSITIVE.getClassLabel()) {
+				positives++;
+				assertTrue("positive prototype outside its blob",
+						model.trainingData[i * numFeatures] < 5);
+			}
+		assertEquals("kMeans changed the class proportions", positives, 10);
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus.machinelearning;
+
+/**
+ * A KD-tree over the packed, row-major training matrix of a
+ * {@code KNNModel}. The tree stores only a permutation of the training rows
+ * and the split planes, in flat arrays indexed like a binary heap, so it
+ * serializes cheaply alongside the model it indexes. Searches are exact.
+ */
+public class KDTree implements java.io.Serializable {
+	/**
+	 * Fixed so that stored models remain readable across versions
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Maximum number of training rows in a leaf
+	 */
+	public static final int LEAF_SIZE = 16;
+
+	/**
+	 * Number of features of every training row
+	 */
+	private final int numFeatures;
+
+	/**
+	 * Training row indices, permuted so that each node covers a contiguous
+	 * range
+	 */
+	private final int[] order;
+
+	/**
+	 * Split dimension of each node, or -1 for leaves. Node {@code i} has
+	 * children {@code 2i} and {@code 2i+1}; the root is node 1.
+	 */
+	private final int[] splitDimension;
+
+	/**
+	 * Split value of each internal node. Rows in the left subtree have a
+	 * value <= split; rows in the right subtree have a value >= split.
+	 */
+	private final double[] splitValue;
+
+	/**
+	 * Builds a KD-tree over the first {@code numSamples} rows of
+	 * {@code trainingData}
+	 * @param trainingData training instances in row-major order
+	 * @param numSamples number of training rows
+	 * @param numFeatures number of features of every row
+	 * @throws IllegalArgumentException
+	 */
+	public KDTree(double[] trainingData, int numSamples, int numFeatures)
+			throws IllegalArgumentException {
+		if (numSamples < 1 || numFeatures < 1 ||
+				trainingData.length < numSamples * numFeatures)
+			throw new IllegalArgumentException("Invalid training matrix");
+		this.numFeatures = numFeatures;
+		order = new int[numSamples];
+		for (int i = 0; i < numSamples; i++)
+			order[i] = i;
+
+		int depth = 0;
+		while ((numSamples + (1 << depth) - 1) >> depth > LEAF_SIZE)
+			depth++;
+		int numNodes = 1 << (depth + 1);
+		splitDimension = new int[numNodes];
+		splitValue = new double[numNodes];
+		build(trainingData, 1, 0, numSamples);
+	}
+
+	/**
+	 * Offers the training rows nearest to {@code query} to {@code nearest},
+	 * keyed by squared distance. Subtrees that cannot contain a row nearer
+	 * than the current k-th neighbor are skipped.
+	 * @param trainingData the matrix this tree was built on
+	 * @param labels class labels of the training rows
+	 * @param query the instance to search for
+	 * @param nearest receives the k nearest neighbors
+	 */
+	public void search(double[] trainingData, int[] labels, double[] query,
+			NeighborHeap nearest) {
+		search(trainingData, labels, query, nearest, 1, 0, order.length);
+	}
+
+	private void search(double[] trainingData, int[] labels, double[] query,
+			NeighborHeap nearest, int node, int lo, int hi) {
+		int dimension = splitDimension[node];
+		if (dimension < 0) {
+			for (int i = lo; i < hi; i++) {
+				int row = order[i];
+				double bound = nearest.worst();
+				double distance = KNNClassifier.squaredDistance(trainingData,
+						row * numFeatures, query, numFeatures, bound);
+				if (distance <= bound)
+					nearest.offer(distance, labels[row], row);
+			}
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		double diff = query[dimension] - splitValue[node];
+		if (diff < 0) {
+			search(trainingData, labels, query, nearest, 2 * node, lo, mid);
+			if (diff * diff <= nearest.worst())
+				search(trainingData, labels, query, nearest, 2 * node + 1,
+						mid, hi);
+		} else {
+			search(trainingData, labels, query, nearest, 2 * node + 1,
+					mid, hi);
+			if (diff * diff <= nearest.worst())
+				search(trainingData, labels, query, nearest, 2 * node, lo, mid);
+		}
+	}
+
+	/**
+	 * Splits the rows {@code order[lo, hi)} on the dimension with the
+	 * largest spread, at the median
+	 */
+	private void build(double[] trainingData, int node, int lo, int hi) {
+		if (hi - lo <= LEAF_SIZE) {
+			splitDimension[node] = -1;
+			return;
+		}
+		int dimension = 0;
+		double maxSpread = -1;
+		for (int j = 0; j < numFeatures; j++) {
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = lo; i < hi; i++) {
+				double value = trainingData[order[i] * numFeatures + j];
+				if (value < min)
+					min = value;
+				if (value > max)
+					max = value;
+			}
+			if (max - min > maxSpread) {
+				maxSpread = max - min;
+				dimension = j;
+			}
+		}
+		if (maxSpread <= 0) {
+			/*all rows are identical; nothing to split on*/
+			splitDimension[node] = -1;
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		select(trainingData, dimension, lo, hi - 1, mid);
+		splitDimension[node] = dimension;
+		splitValue[node] = trainingData[order[mid] * numFeatures + dimension];
+		build(trainingData, 2 * node, lo, mid);
+		build(trainingData, 2 * node + 1, mid, hi);
+	}
+
+	/**
+	 * Partially sorts {@code order[left, right]} so that the row at
+	 * {@code k} has the k-th smallest value on {@code dimension}, rows
+	 * before it are not larger and rows after it are not smaller
+	 */
+	private void select(double[] trainingData, int dimension, int left,
+			int right, int k) {
+		while (right > left) {
+			int pivotIndex = (left + right) >>> 1;
+			double pivot = trainingData[order[pivotIndex] * numFeatures
+			                            + dimension];
+			swap(pivotIndex, right);
+			int store = left;
+			for (int i = left; i < right; i++)
+				if (trainingData[order[i] * numFeatures + dimension] < pivot)
+					swap(i, store++);
+			swap(store, right);
+			if (store == k)
+				return;
+			if (store < k)
+				left = store + 1;
+			else
+				right = store - 1;
+		}
+	}
+
+	private void swap(int i, int j) {
+		int tmp = order[i];
+		order[i] = order[j];
+		order[j] = tmp;
+	}
+}
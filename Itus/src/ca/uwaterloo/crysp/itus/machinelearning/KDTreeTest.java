@@ -0,0 +1,69 @@
+package ca.uwaterloo.crysp.itus.machinelearning;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class KDTreeTest {
+	int numSamples, numFeatures, k;
+	double [] trainingData;
+	int [] labels;
+	Random random;
+	
+	@Before
+	public void setUp() {
+		numSamples = 1000;
+		numFeatures = 5;
+		k = 7;
+		random = new Random(42);
+		trainingData = new double[numSamples * numFeatures];
+		labels = new int[numSamples];
+		for (int i = 0; i < numSamples; i++) {
+			/*coarse values so that many distances tie*/
+			for (int j = 0; j < numFeatures; j++)
+				trainingData[i * numFeatures + j] = random.nextInt(10);
+			labels[i] = random.nextBoolean() ? 1 : -1;
+		}
+	}
+
+	@Test
+	public void testSearchMatchesLinearScan() {
+		KDTree kdTree = new KDTree(trainingData, numSamples, numFeatures);
+		for (int q = 0; q < 50; q++) {
+			double [] query = new double[numFeatures];
+			for (int j = 0; j < numFeatures; j++)
+				query[j] = random.nextDouble() * 10;
+			
+			NeighborHeap expected = new NeighborHeap(k);
+			for (int i = 0; i < numSamples; i++)
+				expected.offer(KNNClassifier.squaredDistance(trainingData, 
+						i * numFeatures, query, numFeatures, 
+						Double.POSITIVE_INFINITY), labels[i], i);
+			NeighborHeap actual = new NeighborHeap(k);
+			kdTree.search(trainingData, labels, query, actual);
+			
+			expected.sort();
+			actual.sort();
+			assertEquals("KDTree.search returned wrong number of neighbors",
+					actual.size(), expected.size());
+			for (int i = 0; i < k; i++)
+				assertEquals("KDTree.search is not exact", 
+						actual.getIndex(i), expected.getIndex(i));
+		}
+	}
+	
+	@Test
+	public void testIdenticalRows() {
+		double [] identical = new double[100 * numFeatures];
+		int [] identicalLabels = new int[100];
+		KDTree kdTree = new KDTree(identical, 100, numFeatures);
+		NeighborHeap nearest = new NeighborHeap(k);
+		kdTree.search(identical, identicalLabels, new double[numFeatures], 
+				nearest);
+		assertEquals("KDTree.search failed on identical rows",
+				nearest.size(), k);
+	}
+}
@@ -16,11 +16,14 @@
 package ca.uwaterloo.crysp.itus.machinelearning;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 import ca.uwaterloo.crysp.itus.FeatureVector;
+import ca.uwaterloo.crysp.itus.storage.TrainingView;
 
 /**
  * An implementation of kNN Classifier (Assumes two classes only)
@@ -31,17 +34,51 @@ import ca.uwaterloo.crysp.itus.FeatureVector;
 public class KNNClassifier extends Classifier {
 
 	/**
-	 * Model for the KNN Classifier
+	 * Model for the KNN Classifier. The training samples are packed into a 
+	 * single row-major matrix so that classification is a linear scan over
+	 * contiguous memory
 	 * 
 	 * @author Aaron Atwater
 	 * @author Hassan Khan
 	 */
-	@SuppressWarnings("serial")
-	public class KNNModel implements java.io.Serializable {
+	public static class KNNModel implements java.io.Serializable {
+		/**
+		 * Fixed so that models saved to the permanent storage remain 
+		 * readable when fields are added to this class
+		 */
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * A reference to training instances the model was trained on; the
+		 * packed {@code trainingData} is what gets stored and classified
+		 */
+		public transient List<FeatureVector> data;
+		
 		/**
-		 * A reference to training and testing instances
+		 * Training instances in row-major order i.e. feature {@code j} of 
+		 * sample {@code i} is at {@code trainingData[i * numFeatures + j]}.
+		 * When shared with a {@code TrainingView} it may be longer than 
+		 * {@code numSamples * numFeatures}, and must not be modified.
 		 */
-		public List<FeatureVector> data;
+		public double[] trainingData;
+		
+		/**
+		 * Integer class labels of the training instances, parallel to the 
+		 * rows of {@code trainingData}
+		 */
+		public int[] labels;
+		
+		/**
+		 * Number of training instances in {@code trainingData}
+		 */
+		public int numSamples;
+		
+		/**
+		 * Number of instances the model was trained on, before any 
+		 * condensation; 0 in models stored before condensation existed
+		 */
+		public int numOriginalSamples;
+		
 		/**
 		 * Number of nearest neighbors 'k'
 		 */
@@ -52,6 +89,61 @@ public class KNNClassifier extends Classifier {
 		 */
 		public int numFeatures;
 		
+		/**
+		 * Size of the FeatureVectors the model was trained on; instances to 
+		 * classify must have the same size
+		 */
+		public int vectorSize;
+		
+		/**
+		 * Optional spatial index over {@code trainingData}; null if the
+		 * model is searched by a linear scan
+		 */
+		public KDTree kdTree;
+		
+		/**
+		 * Optional locality-sensitive hash index over {@code trainingData}
+		 * for approximate search; null if the model is searched exactly
+		 */
+		public LSHIndex lshIndex;
+		
+		/**
+		 * How the training instances are held; null in models stored 
+		 * before storage modes existed, which hold doubles
+		 */
+		public KNNStorage storage = KNNStorage.DOUBLE;
+		
+		/**
+		 * Training instances in row-major order for {@code FLOAT} storage;
+		 * {@code trainingData} is null
+		 */
+		public float[] floatData;
+		
+		/**
+		 * Training instances in row-major order for {@code INT8} storage;
+		 * {@code trainingData} is null. Feature {@code j} with value 
+		 * {@code x} is stored as 
+		 * {@code round((x - quantMin[j]) / quantStep[j]) - 128}.
+		 */
+		public byte[] int8Data;
+		
+		/**
+		 * Smallest training value of each feature, for {@code INT8} storage
+		 */
+		public double[] quantMin;
+		
+		/**
+		 * Value of one quantization step of each feature, for {@code INT8}
+		 * storage; 0 for features that are constant in the training data
+		 */
+		public double[] quantStep;
+		
+		/**
+		 * Squares of {@code quantStep}, which weight each feature's squared
+		 * difference in quantized units; derived on first use
+		 */
+		private transient double[] quantWeight;
+		
 		/**
 		 * constructor for KNNModel
 		 * @param k Number of nearest neighbors 'k'
@@ -64,14 +156,173 @@ public class KNNClassifier extends Classifier {
 		
 		/**
 		 * Copy constructor for KNNModel
-		 * @param k Number of nearest neighbors 'k'
-		 * @param numFeatures Number of Features for the classifier
+		 * @param objModel the KNNModel to copy
 		 */
 		public KNNModel(Object objModel){
 			KNNModel model = (KNNModel) objModel;
 			this.k = model.k;
 			this.numFeatures = model.numFeatures;
 			this.data = model.data;
+			this.trainingData = model.trainingData;
+			this.labels = model.labels;
+			this.numSamples = model.numSamples;
+			this.numOriginalSamples = model.numOriginalSamples > 0 ? 
+					model.numOriginalSamples : model.numSamples;
+			this.vectorSize = model.vectorSize;
+			this.kdTree = model.kdTree;
+			this.lshIndex = model.lshIndex;
+			this.storage = model.storage == null ? KNNStorage.DOUBLE : 
+				model.storage;
+			this.floatData = model.floatData;
+			this.int8Data = model.int8Data;
+			this.quantMin = model.quantMin;
+			this.quantStep = model.quantStep;
+		}
+		
+		/**
+		 * Packs the first {@code numFeatures} features of every instance in 
+		 * {@code data} into {@code trainingData} and their labels into 
+		 * {@code labels}
+		 * @param data training instances
+		 * @throws IllegalArgumentException
+		 */
+		public void setTrainingData(List<FeatureVector> data) 
+				throws IllegalArgumentException {
+			int n = data.size();
+			double[] packed = new double[n * numFeatures];
+			int[] packedLabels = new int[n];
+			int offset = 0;
+			for (int i = 0; i < n; i++) {
+				FeatureVector fv = data.get(i);
+				if (fv.size() < numFeatures)
+					throw new IllegalArgumentException("FeatureVector at " + i
+							+ " has fewer than " + numFeatures + " features");
+				for (int j = 0; j < numFeatures; j++)
+					packed[offset++] = fv.get(j);
+				packedLabels[i] = fv.getIntClassLabel();
+			}
+			setPacked(data, packed, packedLabels, n, 
+					n > 0 ? data.get(0).size() : numFeatures);
+		}
+		
+		/**
+		 * Takes the first {@code numFeatures} features of every row of 
+		 * {@code view} and their labels. When the rows have exactly 
+		 * {@code numFeatures} features the view's arrays are used as they
+		 * are, without copying.
+		 * @param view training instances
+		 * @throws IllegalArgumentException
+		 */
+		public void setTrainingData(TrainingView view) 
+				throws IllegalArgumentException {
+			int n = view.size();
+			int width = view.getNumFeatures();
+			if (n > 0 && width < numFeatures)
+				throw new IllegalArgumentException("Training instances have "
+						+ "fewer than " + numFeatures + " features");
+			if (width == numFeatures) {
+				setPacked(view.asList(), view.getFeatureArray(), 
+						view.getLabelArray(), n, width);
+				return;
+			}
+			double[] packed = new double[n * numFeatures];
+			for (int i = 0; i < n; i++)
+				System.arraycopy(view.getFeatureArray(), i * width, packed, 
+						i * numFeatures, numFeatures);
+			setPacked(view.asList(), packed, 
+					Arrays.copyOf(view.getLabelArray(), n), n, 
+					n > 0 ? width : numFeatures);
+		}
+		
+		/**
+		 * Replaces the training data with packed rows, dropping any index 
+		 * and quantization of the previous data
+		 */
+		private void setPacked(List<FeatureVector> data, double[] packed, 
+				int[] packedLabels, int n, int vectorSize) {
+			this.data = data;
+			this.trainingData = packed;
+			this.labels = packedLabels;
+			this.numSamples = n;
+			this.numOriginalSamples = n;
+			this.vectorSize = vectorSize;
+			this.kdTree = null;
+			this.lshIndex = null;
+			this.storage = KNNStorage.DOUBLE;
+			this.floatData = null;
+			this.int8Data = null;
+			this.quantMin = null;
+			this.quantStep = null;
+			this.quantWeight = null;
+		}
+		
+		/**
+		 * Converts the packed {@code trainingData} to {@code storage}, 
+		 * releasing the doubles. The per-feature ranges used by 
+		 * {@code INT8} are taken from the training data.
+		 * @param storage the storage mode to convert to
+		 */
+		public void quantize(KNNStorage storage) {
+			int length = numSamples * numFeatures;
+			if (storage == KNNStorage.FLOAT) {
+				floatData = new float[length];
+				for (int i = 0; i < length; i++)
+					floatData[i] = (float) trainingData[i];
+			} else if (storage == KNNStorage.INT8) {
+				quantMin = new double[numFeatures];
+				quantStep = new double[numFeatures];
+				for (int j = 0; j < numFeatures; j++) {
+					double min = Double.POSITIVE_INFINITY;
+					double max = Double.NEGATIVE_INFINITY;
+					for (int i = j; i < length; i += numFeatures) {
+						min = Math.min(min, trainingData[i]);
+						max = Math.max(max, trainingData[i]);
+					}
+					quantMin[j] = min;
+					quantStep[j] = max > min ? (max - min) / 255 : 0;
+				}
+				int8Data = new byte[length];
+				for (int i = 0; i < length; i++) {
+					int j = i % numFeatures;
+					int q = quantStep[j] == 0 ? 0 : (int) Math.round(
+							(trainingData[i] - quantMin[j]) / quantStep[j]);
+					int8Data[i] = (byte) (Math.min(Math.max(q, 0), 255) - 128);
+				}
+			} else
+				return;
+			this.storage = storage;
+			this.trainingData = null;
+		}
+		
+		/**
+		 * Maps {@code numFeatures} features of {@code query}, starting at 
+		 * {@code offset}, in place into the units distances are computed 
+		 * in. Only {@code INT8} storage changes the query: each feature 
+		 * is expressed in quantization steps, unrounded.
+		 * @param query queries in row-major order
+		 * @param offset index of the first feature of the query
+		 */
+		void mapQuery(double[] query, int offset) {
+			if (storage != KNNStorage.INT8)
+				return;
+			for (int j = 0; j < numFeatures; j++)
+				query[offset + j] = quantStep[j] == 0 ? -128 :
+					(query[offset + j] - quantMin[j]) / quantStep[j] - 128;
+		}
+		
+		/**
+		 * Returns the weight of each feature's squared difference in 
+		 * quantized units, for {@code INT8} storage
+		 */
+		double[] getQuantWeight() {
+			double[] weight = quantWeight;
+			if (weight == null) {
+				weight = new double[numFeatures];
+				for (int j = 0; j < numFeatures; j++)
+					weight[j] = quantStep[j] * quantStep[j];
+				quantWeight = weight;
+			}
+			return weight;
 		}
 	}
 	
@@ -103,6 +354,88 @@ public class KNNClassifier extends Classifier {
 	}
 	public KNNModel model = null;
 	
+	/**
+	 * Number of queries per tile in batch classification
+	 */
+	static final int QUERY_BLOCK = 32;
+	
+	/**
+	 * Number of training rows per tile in batch classification
+	 */
+	static final int TRAINING_BLOCK = 256;
+	
+	/**
+	 * If true, {@code train} builds a KD-tree over the training data
+	 */
+	private boolean useKDTree = false;
+	
+	/**
+	 * If true, {@code train} builds an LSH index over the training data and
+	 * classification is approximate
+	 */
+	private boolean useLSH = false;
+	
+	/**
+	 * Number of LSH hash tables
+	 */
+	private int lshTables = 16;
+	
+	/**
+	 * Number of random projections hashed together in each LSH table
+	 */
+	private int lshProjections = 8;
+	
+	/**
+	 * Width of the LSH buckets relative to the interquartile range of the 
+	 * training data along each projection
+	 */
+	private double lshBucketWidth = 0.25;
+	
+	/**
+	 * Seed of the LSH projections, fixed so that retraining on the same 
+	 * data gives the same index
+	 */
+	static final long LSH_SEED = 42;
+	
+	/**
+	 * How {@code train} reduces the training data to prototypes
+	 */
+	private KNNCondensation condensation = KNNCondensation.NONE;
+	
+	/**
+	 * Number of training instances per prototype kept by {@code KMEANS} 
+	 * condensation
+	 */
+	private int kMeansReduction = 4;
+	
+	/**
+	 * Seed of the k-means initialization, fixed so that retraining on the 
+	 * same data gives the same prototypes
+	 */
+	static final long CONDENSATION_SEED = 42;
+	
+	/**
+	 * How {@code train} stores the training data in the model
+	 */
+	private KNNStorage storage = KNNStorage.DOUBLE;
+	
+	/**
+	 * Number of training rows scanned by each task of a parallel scan
+	 */
+	static final int PARALLEL_CHUNK = 4096;
+	
+	/**
+	 * Models with at least this many training rows are scanned in parallel;
+	 * parallel scans are disabled by default
+	 */
+	private int parallelThreshold = Integer.MAX_VALUE;
+	
+	/**
+	 * Pool shared by the parallel scans of all KNNClassifiers, created on 
+	 * first use
+	 */
+	private static ForkJoinPool pool;
+	
 	/**
 	 * constructor for KNNClassifier
 	 * @param k Number of nearest neighbors 'k'
@@ -124,6 +457,9 @@ public class KNNClassifier extends Classifier {
 	 */
 	public KNNClassifier(Object objModel) {
 		model = new KNNModel(objModel);
+		useKDTree = model.kdTree != null;
+		useLSH = model.lshIndex != null;
+		storage = model.storage;
 		setState(ClassifierState.TRAINED);
 	}
 	
@@ -133,7 +469,39 @@ public class KNNClassifier extends Classifier {
 			throws IllegalArgumentException{
 		if (data == null || data.size() < 1) 
 			throw new IllegalArgumentException("Provided data is invalid");
-		model.data = data;
+		model.setTrainingData(data);
+		return build();
+	}
+	
+	/**
+	 * Trains on the packed rows of {@code data}; when they have exactly 
+	 * {@code numFeatures} features the model shares the view's arrays
+	 */
+	@Override
+	public boolean trainPacked(TrainingView data) 
+			throws IllegalArgumentException{
+		if (data == null || data.size() < 1) 
+			throw new IllegalArgumentException("Provided data is invalid");
+		model.setTrainingData(data);
+		return build();
+	}
+	
+	/**
+	 * Condenses, quantizes and indexes the training data just set on the
+	 * model
+	 * @return true
+	 */
+	private boolean build() {
+		Condenser.apply(model, condensation, kMeansReduction, 
+				CONDENSATION_SEED);
+		model.quantize(storage);
+		if (useLSH && storage == KNNStorage.DOUBLE)
+			model.lshIndex = new LSHIndex(model.trainingData, 
+					model.numSamples, model.numFeatures, lshTables, 
+					lshProjections, lshBucketWidth, LSH_SEED);
+		else if (useKDTree && storage == KNNStorage.DOUBLE)
+			model.kdTree = new KDTree(model.trainingData, model.numSamples, 
+					model.numFeatures);
 		setState(ClassifierState.TRAINED);
 		return true;
 	}
@@ -145,25 +513,396 @@ public class KNNClassifier extends Classifier {
 		if (getState() == ClassifierState.NOT_TRAINED)
 			throw new IllegalStateException("Classifier state not trained");
 
-		if (featureVector.size() != model.data.get(0).size()) {
+		if (featureVector.size() != model.vectorSize) {
 			System.out.println("FeatureVector size mismatch in Classify");
 			return 0;
 		}
-		List<ComputedDistance> computedDistance = 
-				new ArrayList<ComputedDistance>();
+		return nearest(featureVector, false).getMajorityLabel();
+	}
+	
+	/**
+	 * Returns the training set indices of the k nearest neighbors of 
+	 * {@code featureVector}, nearest first
+	 * @param featureVector the instance to search for
+	 * @param exact if true, the LSH index is bypassed so that the result 
+	 * 			is exact
+	 * @return indices of the nearest training instances; empty if 
+	 * 			{@code featureVector} is malformed
+	 * @throws IllegalStateException
+	 */
+	public int[] getNeighbors(FeatureVector featureVector, boolean exact) 
+			throws IllegalStateException {
+		if (getState() == ClassifierState.NOT_TRAINED)
+			throw new IllegalStateException("Classifier state not trained");
+		if (featureVector.size() != model.vectorSize)
+			return new int[0];
+		NeighborHeap nearest = nearest(featureVector, exact);
+		nearest.sort();
+		int[] indices = new int[nearest.size()];
+		for (int i = 0; i < indices.length; i++)
+			indices[i] = nearest.getIndex(i);
+		return indices;
+	}
+	
+	/**
+	 * Finds the k nearest neighbors of a well-formed instance
+	 * @param featureVector the instance to search for
+	 * @param exact if true, the LSH index is bypassed
+	 * @return the k nearest neighbors
+	 */
+	private NeighborHeap nearest(FeatureVector featureVector, boolean exact) {
+		final double[] query = featureVector.getAll();
+		model.mapQuery(query, 0);
 		
+		/*neighbors are ranked on squared distances, which order the same
+		 * as Euclidean distances; no square root is needed to vote*/
+		NeighborHeap nearest = new NeighborHeap(model.k);
+		if (model.lshIndex != null && !exact)
+			model.lshIndex.search(model.trainingData, model.labels, query, 
+					nearest);
+		else if (model.kdTree != null)
+			model.kdTree.search(model.trainingData, model.labels, query, 
+					nearest);
+		else if (model.numSamples >= parallelThreshold)
+			nearest = getPool().invoke(
+					new ScanTask(query, 0, model.numSamples));
+		else
+			scan(query, 0, 0, model.numSamples, nearest);
+		return nearest;
+	}
+	
+	/**
+	 * Offers the training rows {@code [lo, hi)} to {@code nearest}, keyed by
+	 * their squared distance from the query at {@code queryOffset} of
+	 * {@code queries}
+	 */
+	private void scan(double[] queries, int queryOffset, int lo, int hi, 
+			NeighborHeap nearest) {
+		final int numFeatures = model.numFeatures;
+		final int[] labels = model.labels;
+		int offset = lo * numFeatures;
+		if (model.storage == KNNStorage.FLOAT) {
+			final float[] floatData = model.floatData;
+			for (int i = lo; i < hi; i++, offset += numFeatures) {
+				double bound = nearest.worst();
+				double distance = squaredDistance(floatData, offset, queries, 
+						queryOffset, numFeatures, bound);
+				if (distance <= bound)
+					nearest.offer(distance, labels[i], i);
+			}
+		} else if (model.storage == KNNStorage.INT8) {
+			final byte[] int8Data = model.int8Data;
+			final double[] weight = model.getQuantWeight();
+			for (int i = lo; i < hi; i++, offset += numFeatures) {
+				double bound = nearest.worst();
+				double distance = squaredDistance(int8Data, weight, offset, 
+						queries, queryOffset, numFeatures, bound);
+				if (distance <= bound)
+					nearest.offer(distance, labels[i], i);
+			}
+		} else {
+			final double[] trainingData = model.trainingData;
+			for (int i = lo; i < hi; i++, offset += numFeatures) {
+				double bound = nearest.worst();
+				double distance = squaredDistance(trainingData, offset, queries, 
+						queryOffset, numFeatures, bound);
+				if (distance <= bound)
+					nearest.offer(distance, labels[i], i);
+			}
+		}
+	}
+	
+	/**
+	 * Scans a range of training rows for the k nearest neighbors of one 
+	 * query. Ranges larger than {@code PARALLEL_CHUNK} are split in half 
+	 * and the halves scanned concurrently, each into its own heap; the 
+	 * heaps are merged on the way back up. Neighbors are ordered by 
+	 * distance and then index, so the result equals that of a serial scan.
+	 */
+	@SuppressWarnings("serial")
+	private class ScanTask extends RecursiveTask<NeighborHeap> {
+		private final double[] query;
+		private final int lo;
+		private final int hi;
 		
-		for (FeatureVector fv : model.data) {
-			double eucDistance = 0;
-			for (int i = 0; i < model.numFeatures; i++)
-				eucDistance += Math.pow(fv.get(i)- featureVector.get(i), 2);
-			eucDistance = Math.sqrt(eucDistance);
-			computedDistance.add(new ComputedDistance(fv.getIntClassLabel(), 
-					eucDistance));
+		ScanTask(double[] query, int lo, int hi) {
+			this.query = query;
+			this.lo = lo;
+			this.hi = hi;
 		}
 		
-		List<ComputedDistance> sortedDistance = sortDistances(computedDistance);
-		return getMajorityLabel(sortedDistance);
+		@Override
+		protected NeighborHeap compute() {
+			if (hi - lo <= PARALLEL_CHUNK) {
+				NeighborHeap nearest = new NeighborHeap(model.k);
+				scan(query, 0, lo, hi, nearest);
+				return nearest;
+			}
+			int mid = (lo + hi) >>> 1;
+			ScanTask right = new ScanTask(query, mid, hi);
+			right.fork();
+			NeighborHeap nearest = new ScanTask(query, lo, mid).compute();
+			nearest.merge(right.join());
+			return nearest;
+		}
+	}
+	
+	/**
+	 * Scans the whole training set for each query in a range of blocks of 
+	 * a batch, splitting the range across workers
+	 */
+	@SuppressWarnings("serial")
+	private class BatchTask extends RecursiveAction {
+		private final double[] queries;
+		private final NeighborHeap[] nearest;
+		private final int qStart;
+		private final int qEnd;
+		
+		BatchTask(double[] queries, NeighborHeap[] nearest, int qStart, 
+				int qEnd) {
+			this.queries = queries;
+			this.nearest = nearest;
+			this.qStart = qStart;
+			this.qEnd = qEnd;
+		}
+		
+		@Override
+		protected void compute() {
+			if (qEnd - qStart <= QUERY_BLOCK) {
+				scanBlock(queries, nearest, qStart, qEnd);
+				return;
+			}
+			/*split on a block boundary so that every task keeps whole tiles*/
+			int numBlocks = (qEnd - qStart + QUERY_BLOCK - 1) / QUERY_BLOCK;
+			int mid = qStart + (numBlocks / 2) * QUERY_BLOCK;
+			invokeAll(new BatchTask(queries, nearest, qStart, mid),
+					new BatchTask(queries, nearest, mid, qEnd));
+		}
+	}
+	
+	/**
+	 * Returns the pool that runs parallel scans
+	 */
+	private static synchronized ForkJoinPool getPool() {
+		if (pool == null)
+			pool = new ForkJoinPool();
+		return pool;
+	}
+	
+	/**
+	 * Squared Euclidean distance between {@code query} and the training row 
+	 * starting at {@code offset} of {@code trainingData}. The sum is 
+	 * abandoned as soon as it exceeds {@code bound}, since such a row 
+	 * cannot be among the k nearest.
+	 * @param trainingData training instances in row-major order
+	 * @param offset index of the first feature of the training row
+	 * @param query the instance being classified
+	 * @param numFeatures number of features to compare
+	 * @param bound squared distance of the current k-th nearest neighbor
+	 * @return the squared distance, or a partial sum greater than 
+	 * 			{@code bound} if the row was abandoned
+	 */
+	static double squaredDistance(double[] trainingData, int offset, 
+			double[] query, int numFeatures, double bound) {
+		return squaredDistance(trainingData, offset, query, 0, numFeatures, 
+				bound);
+	}
+	
+	/**
+	 * Same as {@link #squaredDistance(double[], int, double[], int, double)}
+	 * for a query stored at {@code queryOffset} of {@code queries}
+	 */
+	static double squaredDistance(double[] trainingData, int offset, 
+			double[] queries, int queryOffset, int numFeatures, 
+			double bound) {
+		double sum = 0;
+		int j = 0;
+		for (; j + 4 <= numFeatures; j += 4) {
+			double d0 = trainingData[offset + j] - queries[queryOffset + j];
+			double d1 = trainingData[offset + j + 1] - 
+					queries[queryOffset + j + 1];
+			double d2 = trainingData[offset + j + 2] - 
+					queries[queryOffset + j + 2];
+			double d3 = trainingData[offset + j + 3] - 
+					queries[queryOffset + j + 3];
+			sum += d0 * d0 + d1 * d1 + d2 * d2 + d3 * d3;
+			if (sum > bound)
+				return sum;
+		}
+		for (; j < numFeatures; j++) {
+			double diff = trainingData[offset + j] - queries[queryOffset + j];
+			sum += diff * diff;
+		}
+		return sum;
+	}
+	
+	/**
+	 * Same as {@link #squaredDistance(double[], int, double[], int, int, 
+	 * double)} for training data stored as floats
+	 */
+	static double squaredDistance(float[] trainingData, int offset, 
+			double[] queries, int queryOffset, int numFeatures, 
+			double bound) {
+		double sum = 0;
+		int j = 0;
+		for (; j + 4 <= numFeatures; j += 4) {
+			double d0 = trainingData[offset + j] - queries[queryOffset + j];
+			double d1 = trainingData[offset + j + 1] - 
+					queries[queryOffset + j + 1];
+			double d2 = trainingData[offset + j + 2] - 
+					queries[queryOffset + j + 2];
+			double d3 = trainingData[offset + j + 3] - 
+					queries[queryOffset + j + 3];
+			sum += d0 * d0 + d1 * d1 + d2 * d2 + d3 * d3;
+			if (sum > bound)
+				return sum;
+		}
+		for (; j < numFeatures; j++) {
+			double diff = trainingData[offset + j] - queries[queryOffset + j];
+			sum += diff * diff;
+		}
+		return sum;
+	}
+	
+	/**
+	 * Same as {@link #squaredDistance(double[], int, double[], int, int, 
+	 * double)} for training data quantized to bytes. The query must have 
+	 * been mapped to quantization steps by {@code KNNModel.mapQuery}; each 
+	 * squared difference is scaled back by {@code weight}. Features that 
+	 * are constant in the training data have weight 0, which shifts every 
+	 * distance by the same amount and leaves the ranking unchanged.
+	 */
+	static double squaredDistance(byte[] trainingData, double[] weight, 
+			int offset, double[] queries, int queryOffset, int numFeatures, 
+			double bound) {
+		double sum = 0;
+		int j = 0;
+		for (; j + 4 <= numFeatures; j += 4) {
+			double d0 = trainingData[offset + j] - queries[queryOffset + j];
+			double d1 = trainingData[offset + j + 1] - 
+					queries[queryOffset + j + 1];
+			double d2 = trainingData[offset + j + 2] - 
+					queries[queryOffset + j + 2];
+			double d3 = trainingData[offset + j + 3] - 
+					queries[queryOffset + j + 3];
+			sum += weight[j] * d0 * d0 + weight[j + 1] * d1 * d1 + 
+					weight[j + 2] * d2 * d2 + weight[j + 3] * d3 * d3;
+			if (sum > bound)
+				return sum;
+		}
+		for (; j < numFeatures; j++) {
+			double diff = trainingData[offset + j] - queries[queryOffset + j];
+			sum += weight[j] * diff * diff;
+		}
+		return sum;
+	}
+	
+	@Override
+	public int[] classifyBatch(List<FeatureVector> featureVectors)
+			throws IllegalStateException {
+		NeighborHeap[] nearest = nearestBatch(featureVectors);
+		int[] labels = new int[nearest.length];
+		for (int i = 0; i < nearest.length; i++)
+			labels[i] = nearest[i] == null ? 0 : 
+				nearest[i].getMajorityLabel();
+		return labels;
+	}
+	
+	/**
+	 * Scores each instance with the fraction of its k nearest neighbors 
+	 * that are positive
+	 */
+	@Override
+	public double[] scoreBatch(List<FeatureVector> featureVectors)
+			throws IllegalStateException {
+		NeighborHeap[] nearest = nearestBatch(featureVectors);
+		double[] scores = new double[nearest.length];
+		for (int i = 0; i < nearest.length; i++) {
+			if (nearest[i] == null || nearest[i].size() == 0) {
+				scores[i] = Double.NaN;
+				continue;
+			}
+			int positives = 0;
+			for (int j = 0; j < nearest[i].size(); j++)
+				if (nearest[i].getLabel(j) == 
+						ClassLabel.POSITIVE.getClassLabel())
+					positives++;
+			scores[i] = (double) positives / nearest[i].size();
+		}
+		return scores;
+	}
+	
+	/**
+	 * Finds the k nearest neighbors of every instance in 
+	 * {@code featureVectors}. The query x training distance matrix is 
+	 * evaluated in tiles of {@code QUERY_BLOCK} queries by 
+	 * {@code TRAINING_BLOCK} training rows so that each tile of the 
+	 * training matrix is reused from cache by a whole block of queries.
+	 * @param featureVectors instances to search for
+	 * @return the neighbors of each instance; null for malformed instances
+	 * @throws IllegalStateException
+	 */
+	private NeighborHeap[] nearestBatch(List<FeatureVector> featureVectors)
+			throws IllegalStateException {
+		if (getState() == ClassifierState.NOT_TRAINED)
+			throw new IllegalStateException("Classifier state not trained");
+		
+		final int numQueries = featureVectors.size();
+		final int numFeatures = model.numFeatures;
+		final double[] trainingData = model.trainingData;
+		NeighborHeap[] nearest = new NeighborHeap[numQueries];
+		double[] queries = new double[numQueries * numFeatures];
+		for (int q = 0; q < numQueries; q++) {
+			FeatureVector fv = featureVectors.get(q);
+			if (fv.size() != model.vectorSize)
+				continue;
+			nearest[q] = new NeighborHeap(model.k);
+			for (int j = 0; j < numFeatures; j++)
+				queries[q * numFeatures + j] = fv.get(j);
+			model.mapQuery(queries, q * numFeatures);
+		}
+		
+		if (model.kdTree != null || model.lshIndex != null) {
+			double[] query = new double[numFeatures];
+			for (int q = 0; q < numQueries; q++) {
+				if (nearest[q] == null)
+					continue;
+				System.arraycopy(queries, q * numFeatures, query, 0, 
+						numFeatures);
+				if (model.lshIndex != null)
+					model.lshIndex.search(trainingData, model.labels, query, 
+							nearest[q]);
+				else
+					model.kdTree.search(trainingData, model.labels, query, 
+							nearest[q]);
+			}
+			return nearest;
+		}
+		
+		if (model.numSamples >= parallelThreshold && 
+				numQueries > QUERY_BLOCK)
+			getPool().invoke(new BatchTask(queries, nearest, 0, numQueries));
+		else
+			for (int qStart = 0; qStart < numQueries; qStart += QUERY_BLOCK)
+				scanBlock(queries, nearest, qStart, 
+						Math.min(qStart + QUERY_BLOCK, numQueries));
+		return nearest;
+	}
+	
+	/**
+	 * Scans the whole training set, one tile of {@code TRAINING_BLOCK} rows
+	 * at a time, for the queries {@code [qStart, qEnd)} of a batch
+	 */
+	private void scanBlock(double[] queries, NeighborHeap[] nearest, 
+			int qStart, int qEnd) {
+		final int numFeatures = model.numFeatures;
+		for (int tStart = 0; tStart < model.numSamples; 
+				tStart += TRAINING_BLOCK) {
+			int tEnd = Math.min(tStart + TRAINING_BLOCK, model.numSamples);
+			for (int q = qStart; q < qEnd; q++)
+				if (nearest[q] != null)
+					scan(queries, q * numFeatures, tStart, tEnd, nearest[q]);
+		}
 	}
 	
 	@Override
@@ -172,56 +911,39 @@ public class KNNClassifier extends Classifier {
 	}
 	
 	/**
-	 * 
+	 * Selects the k nearest of {@code computedDistance} in a single pass
 	 * @param computedDistance A {@code List} containing computedDistances
-	 * @return A {@code} List containing sorted distances
+	 * @return A {@code} List containing the k smallest distances, sorted
 	 */
 	public ArrayList<ComputedDistance> sortDistances(List<ComputedDistance> 
 	computedDistance) {
+		NeighborHeap nearest = new NeighborHeap(model.k);
+		for (int i = 0; i < computedDistance.size(); i++)
+			nearest.offer(computedDistance.get(i).distance, 
+					computedDistance.get(i).label, i);
+		nearest.sort();
 		ArrayList<ComputedDistance> sortedDistance = 
-				new ArrayList<ComputedDistance>();
-		for (int i = 0; i < model.k; i++) {
-			double minDistance = Double.MAX_VALUE;
-			int minIndex = -1;
-			for (int j = 0; j < computedDistance.size(); j++)
-				if (minDistance > computedDistance.get(j).distance) {
-					minIndex = j;
-					minDistance = computedDistance.get(j).distance;
-				}
-			if (minIndex == -1)
-				break;
-			sortedDistance.add(new ComputedDistance(
-					computedDistance.get(minIndex).label, 
-					computedDistance.get(minIndex).distance));
-			computedDistance.remove(minIndex);
-		}
+				new ArrayList<ComputedDistance>(nearest.size());
+		for (int i = 0; i < nearest.size(); i++)
+			sortedDistance.add(new ComputedDistance(nearest.getLabel(i), 
+					nearest.getDistance(i)));
 		return sortedDistance;
 	}
 	/**
 	 * 
 	 * @param sortedDistance A k-sized {@code ArrayList} of sortedDistances
 	 * 				supported class labels are -1 or 1 only
-	 * @return ClassLabel of the majority class; 0 if error
+	 * @return ClassLabel of the majority class, ties broken in favour of the
+	 * 			label with the nearest neighbor; 0 if error
 	 */
 	public int getMajorityLabel(List<ComputedDistance> sortedDistance ) {
 		if (sortedDistance.size() == 0 )
 			return 0;
-		Map <Integer, Integer> majoritySum = new HashMap<Integer, Integer>();
-		for (ComputedDistance cd : sortedDistance) {
-			if (majoritySum.containsKey(cd.label))
-				majoritySum.put(cd.label, majoritySum.get(cd.label)+1);
-			else
-				majoritySum.put(cd.label, 1);
-		}
-		int majorityClassLabel = -1;
-		int maxOccurences = -1;
-		for (int classLabel : majoritySum.keySet()) {
-			if (majoritySum.get(classLabel) > maxOccurences) {//XXX: break ties
-				majorityClassLabel = classLabel;
-				maxOccurences = majoritySum.get(classLabel);
-			}
-		}
-		return majorityClassLabel;
+		NeighborHeap nearest = new NeighborHeap(sortedDistance.size());
+		for (int i = 0; i < sortedDistance.size(); i++)
+			nearest.offer(sortedDistance.get(i).distance, 
+					sortedDistance.get(i).label, i);
+		return nearest.getMajorityLabel();
 	}
 	/**
 	 * @return the k
@@ -240,6 +962,169 @@ public class KNNClassifier extends Classifier {
 		model.k = k;
 	}
 
+	/**
+	 * @return true if training builds a KD-tree for classification
+	 */
+	public boolean getUseKDTree() {
+		return useKDTree;
+	}
+
+	/**
+	 * Enables or disables the KD-tree index. Takes effect at the next call
+	 * to {@code train}; models retrieved from storage keep the index they 
+	 * were saved with
+	 * @param useKDTree true to build a KD-tree during training
+	 */
+	public void setUseKDTree(boolean useKDTree) {
+		this.useKDTree = useKDTree;
+	}
+
+	/**
+	 * @return the training set size from which scans run in parallel
+	 */
+	public int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	/**
+	 * Scans models with at least {@code parallelThreshold} training rows
+	 * across all available cores. Smaller models are scanned serially,
+	 * where splitting the work costs more than it saves. Has no effect
+	 * while a KD-tree index is in use.
+	 * @param parallelThreshold minimum number of training rows;
+	 * 				{@code Integer.MAX_VALUE} disables parallel scans
+	 * @throws IllegalArgumentException
+	 */
+	public void setParallelThreshold(int parallelThreshold)
+			throws IllegalArgumentException {
+		if (parallelThreshold < 1)
+			throw new IllegalArgumentException("parallelThreshold must be " +
+					"greater than zero");
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * @return true if training builds an LSH index for approximate 
+	 * 			classification
+	 */
+	public boolean getUseLSH() {
+		return useLSH;
+	}
+
+	/**
+	 * Enables or disables approximate classification with an LSH index. 
+	 * Only the training instances that share a hash bucket with the 
+	 * instance being classified are ranked, so some true neighbors may be 
+	 * missed; see {@link #setLSHParameters(int, int, double)} to trade 
+	 * recall for speed. The index replaces the KD-tree if both are enabled
+	 * and, like it, is only built for {@code DOUBLE} storage. Takes effect
+	 * at the next call to {@code train}.
+	 * @param useLSH true to build an LSH index during training
+	 */
+	public void setUseLSH(boolean useLSH) {
+		this.useLSH = useLSH;
+	}
+
+	/**
+	 * Sets the shape of the LSH index. More tables or wider buckets raise 
+	 * recall but rank more candidates; more projections per table make 
+	 * each bucket smaller. Takes effect at the next call to {@code train}.
+	 * @param numTables number of hash tables (default 16)
+	 * @param numProjections number of projections per table (default 8)
+	 * @param bucketWidth bucket width relative to the interquartile range
+	 * 			of the training data along each projection (default 0.25)
+	 * @throws IllegalArgumentException
+	 */
+	public void setLSHParameters(int numTables, int numProjections, 
+			double bucketWidth) throws IllegalArgumentException {
+		if (numTables < 1 || numProjections < 1 || !(bucketWidth > 0))
+			throw new IllegalArgumentException("numTables, numProjections " +
+					"and bucketWidth must be greater than zero");
+		this.lshTables = numTables;
+		this.lshProjections = numProjections;
+		this.lshBucketWidth = bucketWidth;
+	}
+
+	/**
+	 * @return how training reduces the training data to prototypes
+	 */
+	public KNNCondensation getCondensation() {
+		return condensation;
+	}
+
+	/**
+	 * Sets how training reduces the training data to a smaller set of
+	 * prototypes, which shrinks the model and speeds up classification. 
+	 * {@code EDITED} and {@code CONDENSED} compare every training instance
+	 * with every other, so training takes time quadratic in the number of
+	 * instances. Takes effect at the next call to {@code train}.
+	 * @param condensation the condensation mode
+	 * @throws IllegalArgumentException
+	 */
+	public void setCondensation(KNNCondensation condensation) 
+			throws IllegalArgumentException {
+		if (condensation == null)
+			throw new IllegalArgumentException("condensation cannot be null");
+		this.condensation = condensation;
+	}
+
+	/**
+	 * @return number of training instances per prototype kept by 
+	 * 			{@code KMEANS}
+	 */
+	public int getKMeansReduction() {
+		return kMeansReduction;
+	}
+
+	/**
+	 * @param kMeansReduction number of training instances of each class 
+	 * 			per prototype kept by {@code KMEANS} condensation 
+	 * 			(default 4)
+	 * @throws IllegalArgumentException
+	 */
+	public void setKMeansReduction(int kMeansReduction) 
+			throws IllegalArgumentException {
+		if (kMeansReduction < 1)
+			throw new IllegalArgumentException("kMeansReduction must be " +
+					"greater than zero");
+		this.kMeansReduction = kMeansReduction;
+	}
+
+	/**
+	 * Returns how many training instances the model was trained on per 
+	 * instance it keeps
+	 * @return the compression ratio; 1 if nothing was condensed
+	 * @throws IllegalStateException
+	 */
+	public double getCompressionRatio() throws IllegalStateException {
+		if (getState() == ClassifierState.NOT_TRAINED)
+			throw new IllegalStateException("Classifier state not trained");
+		return (double) model.numOriginalSamples / model.numSamples;
+	}
+
+	/**
+	 * @return how training data is stored in the model
+	 */
+	public KNNStorage getStorage() {
+		return storage;
+	}
+
+	/**
+	 * Sets how training data is stored in the model. {@code FLOAT} halves
+	 * the memory and stored size of the model and {@code INT8} cuts them 
+	 * by about eight, at the cost of some precision in the distances. 
+	 * Quantized models are always searched by a linear scan. Takes effect 
+	 * at the next call to {@code train}.
+	 * @param storage the storage mode
+	 * @throws IllegalArgumentException
+	 */
+	public void setStorage(KNNStorage storage) 
+			throws IllegalArgumentException {
+		if (storage == null)
+			throw new IllegalArgumentException("storage cannot be null");
+		this.storage = storage;
+	}
+
 	/**
 	 * @return the numFeatures
 	 */
@@ -254,11 +1139,11 @@ public class KNNClassifier extends Classifier {
 	 */
 	public boolean setNumFeatures(int numFeatures) 
 			throws IllegalArgumentException {
-		if (model.data.size() > 0)
-			if (model.data.get(0).size() <= numFeatures)
-				throw new IllegalArgumentException("restriction: "
-						+ "numFeatures > 0 and existing dataset should "
-						+ " contain <= numFeatures features"); 
+		if (numFeatures < 1 || (model.labels != null && 
+				numFeatures != model.numFeatures))
+			throw new IllegalArgumentException("restriction: "
+					+ "numFeatures > 0 and a trained model's numFeatures "
+					+ "is fixed by its packed training data"); 
 		model.numFeatures = numFeatures;
 		return true;
 	}
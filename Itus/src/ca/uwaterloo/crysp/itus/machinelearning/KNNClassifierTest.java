@@ -2,12 +2,19 @@ package ca.uwaterloo.crysp.itus.machinelearning;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import ca.uwaterloo.crysp.itus.FeatureVector;
+import ca.uwaterloo.crysp.itus.storage.TrainingStore;
+import ca.uwaterloo.crysp.itus.storage.TrainingView;
 import ca.uwaterloo.crysp.itus.machinelearning.KNNClassifier.ComputedDistance;
 
 public class KNNClassifierTest {
@@ -78,6 +85,227 @@ public class KNNClassifierTest {
 				knnClassifier.classify(negative), -1);
 	}
 
+	@Test
+	public void testClassifyWithKDTree() {
+		double [] positiveSample = {1.0,2.0,3.0};
+		double [] negativeSample = {7.0,8.0,9.0};
+		knnClassifier.setUseKDTree(true);
+		if (!knnClassifier.train(data))
+			fail("KnnClassifier.Classify failed in train");
+		assertNotNull("KD-tree not built in train", knnClassifier.model.kdTree);
+		
+		assertEquals("Test of known positive sample failed", 
+				knnClassifier.classify(new FeatureVector(positiveSample, 
+						ClassLabel.UNKNOWN)), 1);
+		assertEquals("Test of known negative sample failed", 
+				knnClassifier.classify(new FeatureVector(negativeSample, 
+						ClassLabel.UNKNOWN)), -1);
+	}
+
+	@Test
+	public void testClassifyWithLSH() {
+		double [] positiveSample = {1.0,2.0,3.0};
+		double [] negativeSample = {7.0,8.0,9.0};
+		knnClassifier.setUseLSH(true);
+		knnClassifier.setLSHParameters(4, 2, 1.0);
+		if (!knnClassifier.train(data))
+			fail("KnnClassifier.Classify failed in train");
+		assertNotNull("LSH index not built in train",
+				knnClassifier.model.lshIndex);
+
+		FeatureVector positive = new FeatureVector(positiveSample,
+				ClassLabel.UNKNOWN);
+		assertEquals("Test of known positive sample failed",
+				knnClassifier.classify(positive), 1);
+		assertEquals("Test of known negative sample failed",
+				knnClassifier.classify(new FeatureVector(negativeSample,
+						ClassLabel.UNKNOWN)), -1);
+		assertEquals("getNeighbors returned wrong number of neighbors",
+				knnClassifier.getNeighbors(positive, false).length, k);
+		assertArrayEquals("exact getNeighbors is not nearest first",
+				knnClassifier.getNeighbors(positive, true),
+				new int[] {0, 1, 2});
+	}
+
+	@Test
+	public void testCondensation() {
+		double [] positiveSample = {1.0,2.0,3.0};
+		double [] negativeSample = {7.0,8.0,9.0};
+		knnClassifier.setCondensation(KNNCondensation.CONDENSED);
+		if (!knnClassifier.train(data))
+			fail("KnnClassifier.Classify failed in train");
+		assertEquals("CONDENSED kept redundant instances",
+				knnClassifier.getCompressionRatio(), 3.0, 0.0);
+		assertEquals("Test of known positive sample failed",
+				knnClassifier.classify(new FeatureVector(positiveSample,
+						ClassLabel.UNKNOWN)), 1);
+		assertEquals("Test of known negative sample failed",
+				knnClassifier.classify(new FeatureVector(negativeSample,
+						ClassLabel.UNKNOWN)), -1);
+
+		knnClassifier.setCondensation(KNNCondensation.NONE);
+		knnClassifier.train(data);
+		assertEquals("NONE condensed the training data",
+				knnClassifier.getCompressionRatio(), 1.0, 0.0);
+	}
+
+	@Test
+	public void testSquaredDistance() {
+		double [] trainingData = {1.0,1.0,1.0,1.0,1.0, 4.0,5.0,6.0,7.0,8.0};
+		double [] query = {1.0,2.0,3.0,4.0,5.0};
+		assertEquals("KNNClassifier.squaredDistance failed", 
+				KNNClassifier.squaredDistance(trainingData, 0, query, 5,
+						Double.POSITIVE_INFINITY), 30.0, 0.0);
+		assertEquals("KNNClassifier.squaredDistance failed at offset", 
+				KNNClassifier.squaredDistance(trainingData, 5, query, 5,
+						Double.POSITIVE_INFINITY), 45.0, 0.0);
+		assertTrue("KNNClassifier.squaredDistance failed to abandon", 
+				KNNClassifier.squaredDistance(trainingData, 5, query, 5, 
+						10.0) > 10.0);
+	}
+
+	@Test
+	public void testClassifyBatch() {
+		Random random = new Random(7);
+		ArrayList<FeatureVector> training = new ArrayList<FeatureVector>();
+		for (int i = 0; i < 700; i++) {
+			double [] features = {random.nextDouble(), random.nextDouble(),
+					random.nextDouble()};
+			training.add(new FeatureVector(features, random.nextBoolean() ?
+					ClassLabel.POSITIVE : ClassLabel.NEGATIVE));
+		}
+		ArrayList<FeatureVector> queries = new ArrayList<FeatureVector>();
+		for (int i = 0; i < 70; i++) {
+			double [] features = {random.nextDouble(), random.nextDouble(),
+					random.nextDouble()};
+			queries.add(new FeatureVector(features, ClassLabel.UNKNOWN));
+		}
+		double [] malformedSample = {7.0,8.0,9.0,10.0};
+		queries.add(new FeatureVector(malformedSample, ClassLabel.UNKNOWN));
+		
+		knnClassifier.train(training);
+		int [] labels = knnClassifier.classifyBatch(queries);
+		double [] scores = knnClassifier.scoreBatch(queries);
+		assertEquals("classifyBatch returned wrong number of labels", 
+				labels.length, queries.size());
+		for (int i = 0; i < queries.size(); i++)
+			assertEquals("classifyBatch disagrees with classify", 
+					labels[i], knnClassifier.classify(queries.get(i)));
+		for (int i = 0; i < queries.size() - 1; i++)
+			assertEquals("scoreBatch disagrees with classifyBatch", 
+					labels[i], scores[i] > 0.5 ? 1 : -1);
+		assertTrue("scoreBatch should not score malformed sample", 
+				Double.isNaN(scores[queries.size() - 1]));
+	}
+
+	@Test
+	public void testParallelScan() {
+		Random random = new Random(11);
+		ArrayList<FeatureVector> training = new ArrayList<FeatureVector>();
+		for (int i = 0; i < 3 * KNNClassifier.PARALLEL_CHUNK; i++) {
+			double [] features = {random.nextDouble(), random.nextDouble(),
+					random.nextDouble()};
+			training.add(new FeatureVector(features, random.nextBoolean() ?
+					ClassLabel.POSITIVE : ClassLabel.NEGATIVE));
+		}
+		ArrayList<FeatureVector> queries = new ArrayList<FeatureVector>();
+		for (int i = 0; i < 3 * KNNClassifier.QUERY_BLOCK + 5; i++) {
+			double [] features = {random.nextDouble(), random.nextDouble(),
+					random.nextDouble()};
+			queries.add(new FeatureVector(features, ClassLabel.UNKNOWN));
+		}
+
+		knnClassifier.train(training);
+		int [] serial = new int[queries.size()];
+		for (int i = 0; i < queries.size(); i++)
+			serial[i] = knnClassifier.classify(queries.get(i));
+		double [] serialScores = knnClassifier.scoreBatch(queries);
+
+		knnClassifier.setParallelThreshold(training.size());
+		int [] parallelBatch = knnClassifier.classifyBatch(queries);
+		double [] parallelScores = knnClassifier.scoreBatch(queries);
+		for (int i = 0; i < queries.size(); i++) {
+			assertEquals("parallel classify disagrees with serial scan",
+					knnClassifier.classify(queries.get(i)), serial[i]);
+			assertEquals("parallel classifyBatch disagrees with serial scan",
+					parallelBatch[i], serial[i]);
+			assertEquals("parallel scoreBatch disagrees with serial scan",
+					parallelScores[i], serialScores[i], 0.0);
+		}
+
+		try {
+			knnClassifier.setParallelThreshold(0);
+			fail("setParallelThreshold accepted a non-positive threshold");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testQuantizedStorage() throws Exception {
+		Random random = new Random(13);
+		ArrayList<FeatureVector> training = new ArrayList<FeatureVector>();
+		for (int i = 0; i < 1000; i++) {
+			double [] features = {random.nextDouble(), 100 * random.nextDouble(),
+					random.nextGaussian()};
+			training.add(new FeatureVector(features, random.nextBoolean() ?
+					ClassLabel.POSITIVE : ClassLabel.NEGATIVE));
+		}
+		ArrayList<FeatureVector> queries = new ArrayList<FeatureVector>();
+		for (int i = 0; i < 100; i++) {
+			double [] features = {random.nextDouble(), 100 * random.nextDouble(),
+					random.nextGaussian()};
+			queries.add(new FeatureVector(features, ClassLabel.UNKNOWN));
+		}
+
+		knnClassifier.train(training);
+		int [] exact = knnClassifier.classifyBatch(queries);
+		int doubleSize = serialize(knnClassifier.getModel()).length;
+
+		knnClassifier.setStorage(KNNStorage.FLOAT);
+		knnClassifier.train(training);
+		assertNull("FLOAT storage kept the doubles",
+				knnClassifier.model.trainingData);
+		assertEquals("FLOAT storage agrees too rarely with DOUBLE",
+				agreement(knnClassifier, queries, exact) >= 98, true);
+
+		knnClassifier.setStorage(KNNStorage.INT8);
+		knnClassifier.train(training);
+		assertEquals("INT8 storage agrees too rarely with DOUBLE",
+				agreement(knnClassifier, queries, exact) >= 90, true);
+		int [] quantized = knnClassifier.classifyBatch(queries);
+		for (int i = 0; i < queries.size(); i++)
+			assertEquals("INT8 classifyBatch disagrees with classify",
+					quantized[i], knnClassifier.classify(queries.get(i)));
+
+		byte [] stored = serialize(knnClassifier.getModel());
+		assertEquals("INT8 model is not much smaller than DOUBLE",
+				stored.length * 3 < doubleSize, true);
+		KNNClassifier restored = new KNNClassifier(new ObjectInputStream(
+				new ByteArrayInputStream(stored)).readObject());
+		assertEquals("restored model lost its storage mode",
+				restored.getStorage(), KNNStorage.INT8);
+		for (int i = 0; i < queries.size(); i++)
+			assertEquals("restored INT8 model classifies differently",
+					restored.classify(queries.get(i)), quantized[i]);
+	}
+
+	private static int agreement(KNNClassifier knnClassifier,
+			ArrayList<FeatureVector> queries, int [] expected) {
+		int agree = 0;
+		for (int i = 0; i < queries.size(); i++)
+			if (knnClassifier.classify(queries.get(i)) == expected[i])
+				agree++;
+		return agree;
+	}
+
+	private static byte [] serialize(Object object) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(object);
+		out.close();
+		return bytes.toByteArray();
+	}
+
 	@Test
 	public void testGetK() {
 		assertEquals("KnnClassifier.getK failed",
@@ -138,6 +366,18 @@ public class KNNClassifierTest {
 		assertEquals("knnClassifier.getSortedDistance failed", label, -1);
 	}
 	
+	@Test
+	public void testGetMajorityLabelTies() {
+		ArrayList<ComputedDistance> sortedDistance = 
+				new ArrayList<ComputedDistance>();
+		sortedDistance.add(new ComputedDistance(1, 4.0));
+		sortedDistance.add(new ComputedDistance(-1, 3.0));
+		sortedDistance.add(new ComputedDistance(1, 2.0));
+		sortedDistance.add(new ComputedDistance(-1, 1.0));
+		assertEquals("knnClassifier.getMajorityLabel failed to break tie", 
+				knnClassifier.getMajorityLabel(sortedDistance), -1);
+	}
+	
 	@Test
 	public void testSortDistances() {
 		ArrayList<ComputedDistance> computedDistance = 
@@ -156,4 +396,36 @@ public class KNNClassifierTest {
 		}
 			
 	}
+
+	@Test
+	public void testTrainPacked() {
+		TrainingStore store = new TrainingStore();
+		store.addAll(data);
+		TrainingView view = store.snapshot();
+		if (!knnClassifier.trainPacked(view))
+			fail("Train failed");
+		assertSame("KNNClassifier.trainPacked copied the training data",
+				knnClassifier.model.trainingData, view.getFeatureArray());
+		KNNClassifier reference = new KNNClassifier(k, numFeatures);
+		reference.train(data);
+		Random random = new Random(7);
+		for (int i = 0; i < 20; i++) {
+			double[] sample = new double[numFeatures];
+			for (int j = 0; j < numFeatures; j++)
+				sample[j] = 11 * random.nextDouble();
+			FeatureVector query = new FeatureVector(sample, 
+					ClassLabel.UNKNOWN);
+			assertEquals("KNNClassifier.trainPacked differs from train",
+					knnClassifier.classify(query), reference.classify(query));
+		}
+		
+		/*rows wider than numFeatures are packed into the model*/
+		KNNClassifier narrow = new KNNClassifier(k, 2);
+		narrow.trainPacked(view);
+		assertEquals("KNNClassifier.trainPacked failed to pack rows",
+				narrow.model.numSamples * 2, 
+				narrow.model.trainingData.length);
+		assertEquals("KNNClassifier.trainPacked failed to pack rows",
+				narrow.model.trainingData[2 * (size - 1) + 1], 10.0, 0.0);
+	}
 }
@@ -0,0 +1,64 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus.machinelearning;
+
+/**
+ * Typesafe enum pattern for the ways {@code KNNClassifier.train} can reduce
+ * the training set to a smaller set of prototypes
+ */
+
+public class KNNCondensation {
+	/**
+	 * Integer value of the condensation mode
+	 */
+	private final int value;
+	
+	private KNNCondensation(int value) {
+		this.value = value;
+	}
+	/**
+	 * Get the integer value for this condensation mode
+	 * @return
+	 */
+	public int getValue() {
+		return this.value;
+	}
+	
+	/**
+	 * Every training instance is kept
+	 */
+	public static final KNNCondensation NONE = new KNNCondensation(0);
+	
+	/**
+	 * Wilson's edited nearest neighbor: instances whose k nearest 
+	 * neighbors vote for another class are removed, which drops noise and
+	 * smooths the class boundary
+	 */
+	public static final KNNCondensation EDITED = new KNNCondensation(1);
+	
+	/**
+	 * Edited nearest neighbor followed by Hart's condensed nearest neighbor:
+	 * only the instances needed to classify the rest correctly by their
+	 * single nearest neighbor are kept, which are mostly those near the 
+	 * class boundary
+	 */
+	public static final KNNCondensation CONDENSED = new KNNCondensation(2);
+	
+	/**
+	 * The instances of each class are replaced by the centroids of a 
+	 * k-means clustering of that class
+	 */
+	public static final KNNCondensation KMEANS = new KNNCondensation(3);
+}
@@ -0,0 +1,75 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus.machinelearning;
+
+/**
+ * Typesafe enum pattern for the ways a {@code KNNModel} can hold its 
+ * training data: as doubles, as floats (half the memory) or as bytes 
+ * scaled per feature (an eighth of the memory)
+ */
+
+@SuppressWarnings("serial")
+public class KNNStorage implements java.io.Serializable {
+	/**
+	 * Integer value of the storage mode
+	 */
+	private final int value;
+	
+	private KNNStorage(int value) {
+		this.value = value;
+	}
+	/**
+	 * Get the integer value for this storage mode
+	 * @return
+	 */
+	public int getValue() {
+		return this.value;
+	}
+	
+	/**
+	 * Get the storage mode for an integer value
+	 * @return the storage mode; DOUBLE if {@code intValue} is unknown
+	 */
+	public static KNNStorage getStorage(int intValue) {
+		if (intValue == FLOAT.value)
+			return FLOAT;
+		else if (intValue == INT8.value)
+			return INT8;
+		return DOUBLE;
+	}
+	
+	/**
+	 * Keeps the constants unique when models are deserialized
+	 */
+	private Object readResolve() {
+		return getStorage(value);
+	}
+	
+	/**
+	 * Features are stored as doubles
+	 */
+	public static final KNNStorage DOUBLE = new KNNStorage(0);
+	
+	/**
+	 * Features are stored as floats
+	 */
+	public static final KNNStorage FLOAT = new KNNStorage(1);
+	
+	/**
+	 * Each feature is scaled to the range of its training values and
+	 * stored in a byte
+	 */
+	public static final KNNStorage INT8 = new KNNStorage(2);
+}
@@ -0,0 +1,274 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus.machinelearning;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A locality-sensitive hash index over the packed, row-major training 
+ * matrix of a {@code KNNModel}, for approximate nearest neighbor search. 
+ * Each of {@code numTables} tables hashes a row by projecting it onto 
+ * {@code numProjections} random Gaussian directions and cutting each 
+ * projection into buckets of equal width. Rows that share a bucket with 
+ * the query in any table are ranked exactly; rows that collide in no table
+ * are missed. More tables raise recall, more projections per table make 
+ * buckets more selective, and wider buckets raise recall at the cost of 
+ * more candidates.
+ */
+public class LSHIndex implements java.io.Serializable {
+	/**
+	 * Fixed so that stored models remain readable across versions
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Number of features of every training row
+	 */
+	private final int numFeatures;
+
+	/**
+	 * Number of training rows
+	 */
+	private final int numSamples;
+
+	/**
+	 * Number of hash tables
+	 */
+	private final int numTables;
+
+	/**
+	 * Number of projections hashed together in each table
+	 */
+	private final int numProjections;
+
+	/**
+	 * Bucket width the index was built with, relative to the interquartile
+	 * range; 0 in indexes stored before it was recorded
+	 */
+	private final double bucketWidth;
+
+	/**
+	 * Seed the projections were drawn from
+	 */
+	private final long seed;
+
+	/**
+	 * Projection directions; projection {@code p} of table {@code t} 
+	 * starts at {@code ((t * numProjections) + p) * numFeatures}
+	 */
+	private final double[] directions;
+
+	/**
+	 * Bucket width of each projection, in the units of the training data
+	 */
+	private final double[] widths;
+
+	/**
+	 * Random offset of each projection's buckets, in bucket widths
+	 */
+	private final double[] offsets;
+
+	/**
+	 * Number of low bits of a table entry that hold the row index
+	 */
+	private final int rowBits;
+
+	/**
+	 * Sorted entries of each table, {@code numSamples} per table. An entry
+	 * holds the row's hash in its high bits and the row index in its low
+	 * {@code rowBits} bits, so that each bucket is a contiguous range.
+	 */
+	private final long[] entries;
+
+	/**
+	 * Builds an LSH index over the first {@code numSamples} rows of
+	 * {@code trainingData}
+	 * @param trainingData training instances in row-major order
+	 * @param numSamples number of training rows
+	 * @param numFeatures number of features of every row
+	 * @param numTables number of hash tables
+	 * @param numProjections number of projections per table
+	 * @param bucketWidth width of the buckets, relative to the 
+	 * 			interquartile range of the training rows along each 
+	 * 			projection
+	 * @param seed seed of the random projections
+	 * @throws IllegalArgumentException
+	 */
+	public LSHIndex(double[] trainingData, int numSamples, int numFeatures,
+			int numTables, int numProjections, double bucketWidth, long seed)
+			throws IllegalArgumentException {
+		if (numSamples < 1 || numFeatures < 1 ||
+				trainingData.length < numSamples * numFeatures)
+			throw new IllegalArgumentException("Invalid training matrix");
+		if (numTables < 1 || numProjections < 1 || !(bucketWidth > 0))
+			throw new IllegalArgumentException("Invalid LSH parameters");
+		this.numFeatures = numFeatures;
+		this.numSamples = numSamples;
+		this.numTables = numTables;
+		this.numProjections = numProjections;
+		this.bucketWidth = bucketWidth;
+		this.seed = seed;
+
+		Random random = new Random(seed);
+		int numHashes = numTables * numProjections;
+		directions = new double[numHashes * numFeatures];
+		widths = new double[numHashes];
+		offsets = new double[numHashes];
+		double[] projected = new double[numSamples];
+		for (int h = 0; h < numHashes; h++) {
+			for (int j = 0; j < numFeatures; j++)
+				directions[h * numFeatures + j] = random.nextGaussian();
+			offsets[h] = random.nextDouble();
+			for (int i = 0; i < numSamples; i++)
+				projected[i] = project(h, trainingData, i * numFeatures);
+			/*the interquartile range is not inflated by outlying rows, 
+			 * which would otherwise put every other row in one bucket*/
+			Arrays.sort(projected);
+			double spread = projected[(3 * numSamples) / 4] - 
+					projected[numSamples / 4];
+			if (!(spread > 0))
+				spread = projected[numSamples - 1] - projected[0];
+			widths[h] = bucketWidth * (spread > 0 ? spread : 1);
+		}
+
+		rowBits = 32 - Integer.numberOfLeadingZeros(numSamples - 1);
+		entries = new long[numTables * numSamples];
+		for (int t = 0; t < numTables; t++) {
+			int base = t * numSamples;
+			for (int i = 0; i < numSamples; i++)
+				entries[base + i] = (hash(t, trainingData, i * numFeatures)
+						<< rowBits) | i;
+			Arrays.sort(entries, base, base + numSamples);
+		}
+	}
+
+	/**
+	 * Offers the training rows that share a bucket with {@code query} in 
+	 * any table to {@code nearest}, keyed by squared distance. If fewer 
+	 * than k rows collide with the query, all rows are offered so that the
+	 * result is never short of neighbors.
+	 * @param trainingData the matrix this index was built on
+	 * @param labels class labels of the training rows
+	 * @param query the instance to search for
+	 * @param nearest receives the k nearest neighbors
+	 * @return number of distinct rows ranked
+	 */
+	public int search(double[] trainingData, int[] labels, double[] query,
+			NeighborHeap nearest) {
+		int[] candidates = new int[Math.min(numSamples, 4 * nearest.capacity()
+				* numTables)];
+		int numCandidates = 0;
+		long rowMask = (1L << rowBits) - 1;
+		for (int t = 0; t < numTables; t++) {
+			long bucket = hash(t, query, 0) << rowBits;
+			int base = t * numSamples;
+			int i = Arrays.binarySearch(entries, base, base + numSamples, 
+					bucket);
+			if (i < 0)
+				i = -i - 1;
+			for (; i < base + numSamples && 
+					(entries[i] & ~rowMask) == bucket; i++) {
+				if (numCandidates == candidates.length)
+					candidates = Arrays.copyOf(candidates, 
+							2 * candidates.length);
+				candidates[numCandidates++] = (int) (entries[i] & rowMask);
+			}
+		}
+		Arrays.sort(candidates, 0, numCandidates);
+		int distinct = 0;
+		for (int c = 0; c < numCandidates; c++)
+			if (c == 0 || candidates[c] != candidates[c - 1])
+				candidates[distinct++] = candidates[c];
+		if (distinct < nearest.capacity()) {
+			/*too few collisions to fill the heap*/
+			for (int row = 0; row < numSamples; row++)
+				offer(trainingData, labels, query, nearest, row);
+			return numSamples;
+		}
+		for (int c = 0; c < distinct; c++)
+			offer(trainingData, labels, query, nearest, candidates[c]);
+		return distinct;
+	}
+
+	private void offer(double[] trainingData, int[] labels, double[] query,
+			NeighborHeap nearest, int row) {
+		double bound = nearest.worst();
+		double distance = KNNClassifier.squaredDistance(trainingData,
+				row * numFeatures, query, numFeatures, bound);
+		if (distance <= bound)
+			nearest.offer(distance, labels[row], row);
+	}
+
+	/**
+	 * Hashes the row starting at {@code offset} of {@code data} for 
+	 * table {@code t}. The hash keeps only the bits above {@code rowBits}.
+	 */
+	private long hash(int t, double[] data, int offset) {
+		long key = 17;
+		for (int p = 0; p < numProjections; p++) {
+			int h = t * numProjections + p;
+			long bucket = (long) Math.floor(project(h, data, offset) / 
+					widths[h] + offsets[h]);
+			key = 31 * key + bucket;
+		}
+		/*spread the key over the high bits that survive the shift*/
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return key >>> rowBits;
+	}
+
+	/**
+	 * Projects the row starting at {@code offset} of {@code data} onto
+	 * direction {@code h}
+	 */
+	private double project(int h, double[] data, int offset) {
+		double sum = 0;
+		int base = h * numFeatures;
+		for (int j = 0; j < numFeatures; j++)
+			sum += directions[base + j] * data[offset + j];
+		return sum;
+	}
+
+	/**
+	 * @return number of hash tables
+	 */
+	public int getNumTables() {
+		return numTables;
+	}
+
+	/**
+	 * @return number of projections per table
+	 */
+	public int getNumProjections() {
+		return numProjections;
+	}
+
+	/**
+	 * @return bucket width relative to the interquartile range; 0 if the
+	 * index was stored before it was recorded
+	 */
+	public double getBucketWidth() {
+		return bucketWidth;
+	}
+
+	/**
+	 * @return seed of the random projections
+	 */
+	public long getSeed() {
+		return seed;
+	}
+}
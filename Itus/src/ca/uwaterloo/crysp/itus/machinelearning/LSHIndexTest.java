@@ -0,0 +1,86 @@
+package ca.uwaterloo.crysp.itus.machinelearning;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LSHIndexTest {
+	int numSamples, numFeatures, k;
+	double [] trainingData;
+	int [] labels;
+	Random random;
+
+	@Before
+	public void setUp() {
+		numSamples = 2000;
+		numFeatures = 5;
+		k = 7;
+		random = new Random(42);
+		trainingData = new double[numSamples * numFeatures];
+		labels = new int[numSamples];
+		for (int i = 0; i < numSamples; i++) {
+			/*20 clusters, so that each query has a tight neighborhood*/
+			int cluster = i % 20;
+			for (int j = 0; j < numFeatures; j++)
+				trainingData[i * numFeatures + j] = 10 * ((cluster + j) % 7) +
+						random.nextGaussian();
+			labels[i] = random.nextBoolean() ? 1 : -1;
+		}
+	}
+
+	@Test
+	public void testRecall() {
+		LSHIndex lshIndex = new LSHIndex(trainingData, numSamples,
+				numFeatures, 16, 4, 0.25, 7);
+		int found = 0, candidates = 0, numQueries = 50;
+		for (int q = 0; q < numQueries; q++) {
+			double [] query = new double[numFeatures];
+			int row = random.nextInt(numSamples);
+			for (int j = 0; j < numFeatures; j++)
+				query[j] = trainingData[row * numFeatures + j] +
+					0.1 * random.nextGaussian();
+
+			NeighborHeap expected = new NeighborHeap(k);
+			for (int i = 0; i < numSamples; i++)
+				expected.offer(KNNClassifier.squaredDistance(trainingData,
+						i * numFeatures, query, numFeatures,
+						Double.POSITIVE_INFINITY), labels[i], i);
+			NeighborHeap actual = new NeighborHeap(k);
+			candidates += lshIndex.search(trainingData, labels, query, actual);
+			assertEquals("LSHIndex.search returned wrong number of neighbors",
+					actual.size(), k);
+
+			for (int i = 0; i < k; i++)
+				for (int j = 0; j < k; j++)
+					if (actual.getIndex(j) == expected.getIndex(i))
+						found++;
+		}
+		assertTrue("LSHIndex recall too low: " + found,
+				found >= 0.8 * k * numQueries);
+		assertTrue("LSHIndex ranked too many candidates: " + candidates,
+				candidates < numSamples * numQueries / 2);
+	}
+
+	@Test
+	public void testFallbackToLinearScan() {
+		/*one projection per table and narrow buckets leave too few
+		 * collisions for a query far from the data*/
+		LSHIndex lshIndex = new LSHIndex(trainingData, numSamples,
+				numFeatures, 1, 8, 0.01, 7);
+		double [] query = {1000, 1000, 1000, 1000, 1000};
+		NeighborHeap nearest = new NeighborHeap(k);
+		assertEquals("LSHIndex.search did not fall back to a linear scan",
+				lshIndex.search(trainingData, labels, query, nearest),
+				numSamples);
+		assertEquals("LSHIndex.search returned wrong number of neighbors",
+				nearest.size(), k);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidParameters() {
+		new LSHIndex(trainingData, numSamples, numFeatures, 0, 4, 1.0, 7);
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus.machinelearning;
+
+/**
+ * A bounded max-heap over primitive arrays that keeps the {@code k} nearest
+ * neighbors seen so far in a single pass. The root is the farthest of the
+ * retained neighbors, so a candidate is rejected with one comparison.
+ * Neighbors are ordered by distance and then by training set index, so the
+ * result does not depend on the order in which candidates are offered.
+ */
+public class NeighborHeap {
+	/**
+	 * Distances of the retained neighbors, heap ordered
+	 */
+	private final double[] distances;
+
+	/**
+	 * Class labels of the retained neighbors, parallel to {@code distances}
+	 */
+	private final int[] labels;
+
+	/**
+	 * Training set indices of the retained neighbors, parallel to
+	 * {@code distances}
+	 */
+	private final int[] indices;
+
+	/**
+	 * Number of neighbors currently retained
+	 */
+	private int size;
+
+	/**
+	 * True once {@link #sort()} has been called
+	 */
+	private boolean sorted;
+
+	/**
+	 * Constructor for NeighborHeap
+	 * @param k Number of nearest neighbors to retain
+	 * @throws IllegalArgumentException
+	 */
+	public NeighborHeap(int k) throws IllegalArgumentException {
+		if (k < 1)
+			throw new IllegalArgumentException("k must be greater than zero");
+		distances = new double[k];
+		labels = new int[k];
+		indices = new int[k];
+	}
+
+	/**
+	 * Empties the heap so that it can be reused for another query
+	 */
+	public void clear() {
+		size = 0;
+		sorted = false;
+	}
+
+	/**
+	 * Returns the number of neighbors currently retained
+	 * @return number of retained neighbors
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the maximum number of neighbors this heap retains
+	 * @return 'k'
+	 */
+	public int capacity() {
+		return distances.length;
+	}
+
+	/**
+	 * Returns the distance a candidate has to beat to enter the heap
+	 * @return distance of the k-th nearest neighbor, or
+	 * {@code Double.POSITIVE_INFINITY} if fewer than k have been seen
+	 */
+	public double worst() {
+		if (size < distances.length)
+			return Double.POSITIVE_INFINITY;
+		return distances[0];
+	}
+
+	/**
+	 * Offers a candidate neighbor to the heap. Ties in distance are won by 
+	 * the candidate with the lower training set index.
+	 * @param distance distance of the candidate from the query
+	 * @param label class label of the candidate
+	 * @param index index of the candidate in the training set
+	 * @return true if the candidate was retained
+	 * @throws IllegalStateException
+	 */
+	public boolean offer(double distance, int label, int index)
+			throws IllegalStateException {
+		if (sorted)
+			throw new IllegalStateException("NeighborHeap already sorted");
+		if (size < distances.length) {
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (!after(parent, distance, index))
+					break;
+				move(parent, i);
+				i = parent;
+			}
+			set(i, distance, label, index);
+			return true;
+		}
+		if (!before(0, distance, index))
+			return false;
+		siftDown(0, size, distance, label, index);
+		return true;
+	}
+
+	/**
+	 * Offers all the neighbors retained by {@code other} to this heap
+	 * @param other heap to merge into this one
+	 */
+	public void merge(NeighborHeap other) {
+		for (int i = 0; i < other.size; i++)
+			offer(other.distances[i], other.labels[i], other.indices[i]);
+	}
+
+	/**
+	 * Sorts the retained neighbors in place, nearest first. No further
+	 * candidates may be offered until the heap is cleared.
+	 */
+	public void sort() {
+		if (sorted)
+			return;
+		for (int end = size - 1; end > 0; end--) {
+			double distance = distances[end];
+			int label = labels[end];
+			int index = indices[end];
+			move(0, end);
+			siftDown(0, end, distance, label, index);
+		}
+		sorted = true;
+	}
+
+	/**
+	 * Returns the distance of the i-th retained neighbor; nearest first
+	 * once {@link #sort()} has been called
+	 * @param i position of the neighbor
+	 * @return distance of the neighbor
+	 */
+	public double getDistance(int i) {
+		return distances[i];
+	}
+
+	/**
+	 * Returns the class label of the i-th retained neighbor
+	 * @param i position of the neighbor
+	 * @return class label of the neighbor
+	 */
+	public int getLabel(int i) {
+		return labels[i];
+	}
+
+	/**
+	 * Returns the training set index of the i-th retained neighbor
+	 * @param i position of the neighbor
+	 * @return training set index of the neighbor
+	 */
+	public int getIndex(int i) {
+		return indices[i];
+	}
+
+	/**
+	 * Returns the most frequent class label among the retained neighbors.
+	 * Ties are broken in favour of the label with the nearest neighbor.
+	 * @return majority class label; 0 if the heap is empty
+	 */
+	public int getMajorityLabel() {
+		int majorityClassLabel = 0;
+		int maxOccurences = -1;
+		double nearestOccurence = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < size; i++) {
+			int classLabel = labels[i];
+			boolean counted = false;
+			for (int j = 0; j < i && !counted; j++)
+				counted = labels[j] == classLabel;
+			if (counted)
+				continue;
+			int occurences = 0;
+			double nearest = Double.POSITIVE_INFINITY;
+			for (int j = i; j < size; j++)
+				if (labels[j] == classLabel) {
+					occurences++;
+					if (distances[j] < nearest)
+						nearest = distances[j];
+				}
+			if (occurences > maxOccurences || (occurences == maxOccurences
+					&& nearest < nearestOccurence)) {
+				majorityClassLabel = classLabel;
+				maxOccurences = occurences;
+				nearestOccurence = nearest;
+			}
+		}
+		return majorityClassLabel;
+	}
+
+	/**
+	 * Places the given neighbor at position {@code i} of a heap of
+	 * {@code end} entries and restores the heap property below it
+	 */
+	private void siftDown(int i, int end, double distance, int label,
+			int index) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= end)
+				break;
+			if (child + 1 < end && 
+					after(child, distances[child + 1], indices[child + 1]))
+				child++;
+			if (!before(child, distance, index))
+				break;
+			move(child, i);
+			i = child;
+		}
+		set(i, distance, label, index);
+	}
+
+	/**
+	 * Returns true if a neighbor at {@code distance} with training set index 
+	 * {@code index} is nearer than the neighbor at heap position {@code i}
+	 */
+	private boolean before(int i, double distance, int index) {
+		return distance < distances[i] || 
+				(distance == distances[i] && index < indices[i]);
+	}
+
+	/**
+	 * Returns true if a neighbor at {@code distance} with training set index 
+	 * {@code index} is farther than the neighbor at heap position {@code i}
+	 */
+	private boolean after(int i, double distance, int index) {
+		return distance > distances[i] || 
+				(distance == distances[i] && index > indices[i]);
+	}
+
+	private void move(int from, int to) {
+		distances[to] = distances[from];
+		labels[to] = labels[from];
+		indices[to] = indices[from];
+	}
+
+	private void set(int i, double distance, int label, int index) {
+		distances[i] = distance;
+		labels[i] = label;
+		indices[i] = index;
+	}
+}
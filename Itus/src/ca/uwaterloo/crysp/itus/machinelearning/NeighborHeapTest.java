@@ -0,0 +1,65 @@
+package ca.uwaterloo.crysp.itus.machinelearning;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class NeighborHeapTest {
+
+	@Test
+	public void testOfferKeepsKNearest() {
+		NeighborHeap heap = new NeighborHeap(3);
+		double [] distances = {9.0, 4.0, 7.0, 1.0, 8.0, 2.0, 6.0};
+		for (int i = 0; i < distances.length; i++)
+			heap.offer(distances[i], 1, i);
+		assertEquals("NeighborHeap retained != k elements", heap.size(), 3);
+		assertEquals("NeighborHeap.worst failed", heap.worst(), 4.0, 0.0);
+		
+		heap.sort();
+		double [] expected = {1.0, 2.0, 4.0};
+		int [] expectedIndices = {3, 5, 1};
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals("NeighborHeap.sort failed",
+					heap.getDistance(i), expected[i], 0.0);
+			assertEquals("NeighborHeap index bookkeeping failed",
+					heap.getIndex(i), expectedIndices[i]);
+		}
+	}
+
+	@Test
+	public void testWorstBeforeFull() {
+		NeighborHeap heap = new NeighborHeap(2);
+		heap.offer(3.0, 1, 0);
+		assertTrue("NeighborHeap.worst should be unbounded before full", 
+				Double.isInfinite(heap.worst()));
+	}
+
+	@Test
+	public void testMerge() {
+		NeighborHeap left = new NeighborHeap(2);
+		NeighborHeap right = new NeighborHeap(2);
+		left.offer(5.0, 1, 0);
+		left.offer(3.0, 1, 1);
+		right.offer(4.0, -1, 2);
+		right.offer(1.0, -1, 3);
+		left.merge(right);
+		left.sort();
+		assertEquals("NeighborHeap.merge failed", left.getDistance(0), 1.0, 0.0);
+		assertEquals("NeighborHeap.merge failed", left.getDistance(1), 3.0, 0.0);
+	}
+
+	@Test
+	public void testMajorityLabelBreaksTiesByDistance() {
+		NeighborHeap heap = new NeighborHeap(4);
+		heap.offer(2.0, 1, 0);
+		heap.offer(3.0, 1, 1);
+		heap.offer(1.0, -1, 2);
+		heap.offer(4.0, -1, 3);
+		assertEquals("Tie not broken by nearest neighbor",
+				heap.getMajorityLabel(), -1);
+		
+		heap.clear();
+		assertEquals("Empty heap should have no majority",
+				heap.getMajorityLabel(), 0);
+	}
+}
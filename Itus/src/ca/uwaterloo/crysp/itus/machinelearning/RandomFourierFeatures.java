@@ -0,0 +1,185 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus.machinelearning;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Random;
+
+import ca.uwaterloo.crysp.itus.FeatureVector;
+
+/**
+ * A random Fourier feature map (Rahimi and Recht) approximating the RBF
+ * kernel {@code exp(-gamma * |x - y|^2)}: the dot product of the images of
+ * two instances converges to their kernel value as {@code dimension} grows.
+ * Each output is {@code sqrt(2 / dimension) * cos(w . x + b)}, where the
+ * directions {@code w} are drawn from N(0, 2 * gamma) and the phases
+ * {@code b} uniformly from [0, 2 pi). The map is a function of its seed, so
+ * only the seed is serialized and the directions are drawn again on
+ * deserialization.
+ */
+public class RandomFourierFeatures implements java.io.Serializable {
+	/**
+	 * Fixed so that stored models remain readable across versions
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Number of features of the input instances
+	 */
+	private final int numFeatures;
+
+	/**
+	 * Number of features of the image
+	 */
+	private final int dimension;
+
+	/**
+	 * Width of the approximated RBF kernel
+	 */
+	private final double gamma;
+
+	/**
+	 * Seed of the directions and phases
+	 */
+	private final long seed;
+
+	/**
+	 * Directions; direction {@code i} starts at {@code i * numFeatures}
+	 */
+	private transient double[] directions;
+
+	/**
+	 * Phase of each direction
+	 */
+	private transient double[] phases;
+
+	/**
+	 * Scale of each output, {@code sqrt(2 / dimension)}
+	 */
+	private transient double scale;
+
+	/**
+	 * @param numFeatures number of features of the input instances
+	 * @param dimension number of features of the image
+	 * @param gamma width of the approximated RBF kernel
+	 * @param seed seed of the directions and phases
+	 * @throws IllegalArgumentException
+	 */
+	public RandomFourierFeatures(int numFeatures, int dimension, double gamma,
+			long seed) throws IllegalArgumentException {
+		if (numFeatures < 1 || dimension < 1)
+			throw new IllegalArgumentException("numFeatures and dimension " +
+					"must be greater than zero");
+		if (!(gamma > 0))
+			throw new IllegalArgumentException("gamma must be positive");
+		this.numFeatures = numFeatures;
+		this.dimension = dimension;
+		this.gamma = gamma;
+		this.seed = seed;
+		draw();
+	}
+
+	/**
+	 * Draws the directions and phases from {@link #seed}
+	 */
+	private void draw() {
+		Random random = new Random(seed);
+		double deviation = Math.sqrt(2 * gamma);
+		directions = new double[dimension * numFeatures];
+		for (int i = 0; i < directions.length; i++)
+			directions[i] = deviation * random.nextGaussian();
+		phases = new double[dimension];
+		for (int i = 0; i < dimension; i++)
+			phases[i] = 2 * Math.PI * random.nextDouble();
+		scale = Math.sqrt(2.0 / dimension);
+	}
+
+	private void readObject(ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		draw();
+	}
+
+	/**
+	 * Returns feature {@code i} of the image of {@code fv}
+	 * @param fv instance with {@link #getNumFeatures()} features
+	 * @param i index of the output feature
+	 * @return {@code sqrt(2 / dimension) * cos(w_i . fv + b_i)}
+	 */
+	public double map(FeatureVector fv, int i) {
+		int offset = i * numFeatures;
+		double projection = phases[i];
+		for (int j = 0; j < numFeatures; j++)
+			projection += directions[offset + j] * fv.get(j, 0);
+		return scale * Math.cos(projection);
+	}
+
+	/**
+	 * Returns feature {@code i} of the image of an instance packed in an
+	 * array; features past {@code length} are taken as 0
+	 * @param x array holding the instance
+	 * @param offset index of the instance's first feature in {@code x}
+	 * @param length number of features of the instance
+	 * @param i index of the output feature
+	 * @return {@code sqrt(2 / dimension) * cos(w_i . x + b_i)}
+	 */
+	public double map(double[] x, int offset, int length, int i) {
+		int directionOffset = i * numFeatures;
+		int n = Math.min(numFeatures, length);
+		double projection = phases[i];
+		for (int j = 0; j < n; j++)
+			projection += directions[directionOffset + j] * x[offset + j];
+		return scale * Math.cos(projection);
+	}
+
+	/**
+	 * Writes the image of {@code fv} to {@code out}
+	 * @param fv instance with {@link #getNumFeatures()} features
+	 * @param out buffer of at least {@link #getDimension()} values
+	 */
+	public void map(FeatureVector fv, double[] out) {
+		for (int i = 0; i < dimension; i++)
+			out[i] = map(fv, i);
+	}
+
+	/**
+	 * @return number of features of the input instances
+	 */
+	public int getNumFeatures() {
+		return numFeatures;
+	}
+
+	/**
+	 * @return number of features of the image
+	 */
+	public int getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * @return width of the approximated RBF kernel
+	 */
+	public double getGamma() {
+		return gamma;
+	}
+
+	/**
+	 * @return seed of the directions and phases
+	 */
+	public long getSeed() {
+		return seed;
+	}
+}
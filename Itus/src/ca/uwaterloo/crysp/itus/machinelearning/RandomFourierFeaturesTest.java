@@ -0,0 +1,68 @@
+package ca.uwaterloo.crysp.itus.machinelearning;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.uwaterloo.crysp.itus.FeatureVector;
+
+public class RandomFourierFeaturesTest {
+	int numFeatures = 5, dimension = 4000;
+	double gamma = 0.1;
+
+	@Test
+	public void testKernelApproximation() {
+		RandomFourierFeatures featureMap = new RandomFourierFeatures(
+				numFeatures, dimension, gamma, 7);
+		Random random = new Random(42);
+		double [] x = new double[dimension], y = new double[dimension];
+		for (int trial = 0; trial < 20; trial++) {
+			double [] a = new double[numFeatures], b = new double[numFeatures];
+			double distance = 0;
+			for (int j = 0; j < numFeatures; j++) {
+				a[j] = random.nextGaussian();
+				b[j] = a[j] + random.nextGaussian();
+				distance += (a[j] - b[j]) * (a[j] - b[j]);
+			}
+			featureMap.map(new FeatureVector(a, ClassLabel.UNKNOWN), x);
+			featureMap.map(new FeatureVector(b, ClassLabel.UNKNOWN), y);
+			double dot = 0;
+			for (int i = 0; i < dimension; i++)
+				dot += x[i] * y[i];
+			assertEquals("Feature map does not approximate the RBF kernel",
+					dot, Math.exp(-gamma * distance), 0.05);
+		}
+	}
+
+	@Test
+	public void testSerialization() throws Exception {
+		RandomFourierFeatures featureMap = new RandomFourierFeatures(
+				numFeatures, dimension, gamma, 7);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(featureMap);
+		out.close();
+		assertTrue("Serialized feature map holds its directions: " +
+				bytes.size(), bytes.size() < 1000);
+		RandomFourierFeatures restored = (RandomFourierFeatures)
+				new ObjectInputStream(new ByteArrayInputStream(
+						bytes.toByteArray())).readObject();
+
+		double [] features = {1, -2, 3, 0.5, 0};
+		FeatureVector fv = new FeatureVector(features, ClassLabel.UNKNOWN);
+		for (int i = 0; i < dimension; i += 97)
+			assertEquals("Restored feature map differs",
+					restored.map(fv, i), featureMap.map(fv, i), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidGamma() {
+		new RandomFourierFeatures(numFeatures, dimension, 0, 7);
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus.machinelearning;
+
+import java.util.List;
+
+import ca.uwaterloo.crysp.itus.FeatureVector;
+import ca.uwaterloo.crysp.itus.storage.TrainingView;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import libsvm.svm_problem;
+
+/**
+ * An approximation of the RBF kernel SVM: instances are mapped through
+ * {@link RandomFourierFeatures} and a linear SVM is trained on their
+ * images. Linear models collapse to a weight vector, so prediction costs
+ * one map and one dot product, independent of the number of support
+ * vectors. The RBF width is the {@code gamma} of the SVM parameters; the
+ * kernel type is always linear.
+ */
+public class RandomFourierSVMClassifier extends SVMClassifier {
+
+	/**
+	 * A feature map together with the linear SVM trained on its images
+	 */
+	public static class RandomFourierModel implements java.io.Serializable {
+		/**
+		 * Fixed so that models saved to the permanent storage remain
+		 * readable when fields are added to this class
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Map from instances to the space the SVM was trained in
+		 */
+		public RandomFourierFeatures featureMap;
+
+		/**
+		 * Linear SVM over the images of {@code featureMap}
+		 */
+		public svm_model svmModel;
+
+		public RandomFourierModel(RandomFourierFeatures featureMap,
+				svm_model svmModel) {
+			this.featureMap = featureMap;
+			this.svmModel = svmModel;
+		}
+	}
+
+	/**
+	 * Default number of random Fourier features
+	 */
+	public static final int DEFAULT_DIMENSION = 256;
+
+	/**
+	 * Default seed of the feature map
+	 */
+	public static final long DEFAULT_SEED = 42;
+
+	/**
+	 * Number of features of the instances to classify
+	 */
+	private final int numInputFeatures;
+
+	/**
+	 * Number of random Fourier features
+	 */
+	private final int dimension;
+
+	/**
+	 * Seed of the feature map
+	 */
+	private final long seed;
+
+	/**
+	 * Map the current model was trained with; null until trained
+	 */
+	private RandomFourierFeatures featureMap;
+
+	/**
+	 * A constructor with the default dimension and seed
+	 * @param numFeatures Number of features
+	 * @throws IllegalArgumentException
+	 */
+	public RandomFourierSVMClassifier(int numFeatures)
+			throws IllegalArgumentException {
+		this(numFeatures, DEFAULT_DIMENSION, DEFAULT_SEED);
+	}
+
+	/**
+	 * @param numFeatures Number of features
+	 * @param dimension Number of random Fourier features; the approximation
+	 * 			improves, and prediction slows, as it grows
+	 * @param seed Seed of the feature map
+	 * @throws IllegalArgumentException
+	 */
+	public RandomFourierSVMClassifier(int numFeatures, int dimension,
+			long seed) throws IllegalArgumentException {
+		super(dimension);
+		if (numFeatures < 1)
+			throw new IllegalArgumentException("numFeatures must be greater " +
+					"than zero");
+		this.numInputFeatures = numFeatures;
+		this.dimension = dimension;
+		this.seed = seed;
+		this.parameter.kernel_type = svm_parameter.LINEAR;
+	}
+
+	/**
+	 * Restores a trained classifier from a model returned by
+	 * {@link #getModel()}
+	 * @param objModel a {@code RandomFourierModel}
+	 */
+	public RandomFourierSVMClassifier(Object objModel) {
+		this(((RandomFourierModel) objModel).featureMap.getNumFeatures(),
+				((RandomFourierModel) objModel).featureMap.getDimension(),
+				((RandomFourierModel) objModel).featureMap.getSeed());
+		RandomFourierModel model = (RandomFourierModel) objModel;
+		this.parameter.gamma = model.featureMap.getGamma();
+		this.featureMap = model.featureMap;
+		this.model = model.svmModel;
+		setState(ClassifierState.TRAINED);
+	}
+
+	/**
+	 * Draws the feature map for the current {@code gamma}, unless the
+	 * previous one already matches, and trains a linear SVM on the images
+	 * of {@code data}
+	 */
+	@Override
+	public boolean train(List<FeatureVector> data)
+			throws IllegalArgumentException {
+		prepareFeatureMap();
+		return super.train(data);
+	}
+
+	@Override
+	public boolean trainPacked(TrainingView data)
+			throws IllegalArgumentException {
+		prepareFeatureMap();
+		return super.trainPacked(data);
+	}
+
+	/**
+	 * Draws the feature map for the current {@code gamma}, unless the
+	 * previous one already matches
+	 */
+	private void prepareFeatureMap() {
+		if (this.featureMap == null ||
+				this.featureMap.getGamma() != this.parameter.gamma)
+			this.featureMap = new RandomFourierFeatures(numInputFeatures,
+					dimension, this.parameter.gamma, seed);
+		this.parameter.kernel_type = svm_parameter.LINEAR;
+	}
+
+	/**
+	 * Writes the image of {@code fv} under the feature map into
+	 * {@code nodes}
+	 */
+	@Override
+	void fillNodes(svm_node[] nodes, FeatureVector fv) {
+		fillNodes(nodes, this.featureMap, fv);
+	}
+
+	/**
+	 * Writes the image of {@code fv} under {@code featureMap} into
+	 * {@code nodes}
+	 */
+	private void fillNodes(svm_node[] nodes, RandomFourierFeatures featureMap,
+			FeatureVector fv) {
+		for (int i = 0; i < dimension; i++) {
+			nodes[i].index = i;
+			nodes[i].value = featureMap.map(fv, i);
+		}
+	}
+
+	/**
+	 * Writes the image of row {@code row} of {@code data} under the feature
+	 * map into {@code nodes}
+	 */
+	@Override
+	void fillNodes(svm_node[] nodes, TrainingView data, int row) {
+		RandomFourierFeatures featureMap = this.featureMap;
+		double[] features = data.getFeatureArray();
+		int width = data.getNumFeatures();
+		for (int i = 0; i < dimension; i++) {
+			nodes[i].index = i;
+			nodes[i].value = featureMap.map(features, row * width, width, i);
+		}
+	}
+
+	/**
+	 * Maps {@code data} through the feature map drawn for {@code gamma};
+	 * the map of the current model is left untouched
+	 */
+	@Override
+	svm_problem problem(List<FeatureVector> data, double gamma) {
+		RandomFourierFeatures featureMap = new RandomFourierFeatures(
+				numInputFeatures, dimension, gamma, seed);
+		svm_problem problem = new svm_problem();
+		problem.l = data.size();
+		problem.y = new double[data.size()];
+		problem.x = new svm_node[data.size()][];
+		for (int i = 0; i < data.size(); i++) {
+			problem.x[i] = newNodes(dimension);
+			fillNodes(problem.x[i], featureMap, data.get(i));
+			problem.y[i] = (double) data.get(i).getIntClassLabel();
+		}
+		return problem;
+	}
+
+	/**
+	 * @return true, as the feature map is drawn for gamma
+	 */
+	@Override
+	boolean problemDependsOnGamma() {
+		return true;
+	}
+
+	/**
+	 * @return the feature map of the current model; null until trained
+	 */
+	public RandomFourierFeatures getFeatureMap() {
+		return this.featureMap;
+	}
+
+	/**
+	 * @return a {@code RandomFourierModel}, or null until trained
+	 */
+	@Override
+	public Object getModel() {
+		if (this.model == null)
+			return null;
+		return new RandomFourierModel(this.featureMap, this.model);
+	}
+}
@@ -0,0 +1,69 @@
+package ca.uwaterloo.crysp.itus.machinelearning;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uwaterloo.crysp.itus.FeatureVector;
+
+public class RandomFourierSVMClassifierTest {
+	int numFeatures = 3;
+	ArrayList<FeatureVector> data;
+	RandomFourierSVMClassifier classifier;
+
+	@Before
+	public void setUp() {
+		Random random = new Random(42);
+		data = new ArrayList<FeatureVector>();
+		/*a positive ring around a negative core, which no linear model on
+		 * the raw features separates*/
+		for (int i = 0; i < 200; i++) {
+			boolean positive = i % 2 == 0;
+			double [] features = new double[numFeatures];
+			double norm = 0;
+			for (int j = 0; j < numFeatures; j++) {
+				features[j] = random.nextGaussian();
+				norm += features[j] * features[j];
+			}
+			double radius = (positive ? 3 : 0.5) / Math.sqrt(norm);
+			for (int j = 0; j < numFeatures; j++)
+				features[j] *= radius;
+			data.add(new FeatureVector(features, positive ?
+					ClassLabel.POSITIVE : ClassLabel.NEGATIVE));
+		}
+		classifier = new RandomFourierSVMClassifier(numFeatures, 128, 7);
+	}
+
+	@Test
+	public void testClassify() {
+		if (!classifier.train(data))
+			fail("Random Fourier SVM train failed");
+		double [] outer = {0, 3, 0};
+		double [] inner = {0.3, 0, -0.3};
+		assertEquals("Test of known positive sample failed",
+				classifier.classify(new FeatureVector(outer,
+						ClassLabel.UNKNOWN)), 1);
+		assertEquals("Test of known negative sample failed",
+				classifier.classify(new FeatureVector(inner,
+						ClassLabel.UNKNOWN)), -1);
+		assertEquals("Random Fourier SVM is not linear in its features",
+				classifier.model.w.length, 128);
+	}
+
+	@Test
+	public void testRestoreModel() {
+		if (!classifier.train(data))
+			fail("Random Fourier SVM train failed");
+		RandomFourierSVMClassifier restored = new RandomFourierSVMClassifier(
+				classifier.getModel());
+		int [] expected = classifier.classifyBatch(data);
+		int [] actual = restored.classifyBatch(data);
+		for (int i = 0; i < data.size(); i++)
+			assertEquals("Restored classifier disagrees on instance " + i,
+					actual[i], expected[i]);
+	}
+}
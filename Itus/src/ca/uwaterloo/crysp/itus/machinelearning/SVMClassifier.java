@@ -14,14 +14,21 @@
  */
 package ca.uwaterloo.crysp.itus.machinelearning;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import ca.uwaterloo.crysp.itus.FeatureVector;
+import ca.uwaterloo.crysp.itus.storage.TrainingView;
 import libsvm.svm;
+import libsvm.svm_cache_stats;
 import libsvm.svm_model;
 import libsvm.svm_node;
 import libsvm.svm_parameter;
 import libsvm.svm_problem;
+import libsvm.svm_workspace;
 
 /**
  * A wrapper over SVMlib (assumes two classes only)
@@ -44,6 +51,44 @@ public class SVMClassifier extends Classifier {
 	 */
 	private int numFeatures;
 	public final double threshold = 0.5;
+	/**
+	 * Per-thread prediction buffers, so that steady-state classification 
+	 * allocates nothing. They are rebuilt when {@link #model} changes.
+	 */
+	private final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+		@Override
+		protected Buffers initialValue() {
+			return new Buffers();
+		}
+	};
+	/**
+	 * Training instances of the last call to {@link #train(List)}, reused by
+	 * the next one. The trained model holds copies of its support vectors.
+	 */
+	private svm_node[][] trainingNodes;
+	/**
+	 * Instances the current model was trained on, oldest first; null until
+	 * trained with {@link #train(List)}
+	 */
+	private List<FeatureVector> trainingData;
+	/**
+	 * Update in which each of {@link #trainingData} was added
+	 */
+	private int[] addedIn;
+	/**
+	 * Alpha of each of {@link #trainingData} in the current model; zero for
+	 * instances that are not support vectors
+	 */
+	private double[] alphas;
+	/**
+	 * Number of calls to {@link #update(List)} since the last 
+	 * {@link #train(List)}
+	 */
+	private int updates;
+	/**
+	 * Number of updates an instance is kept for; 0 to keep all instances
+	 */
+	private int maxSampleAge = 0;
 	
 	/**
 	 * A constructor that sets most parameter values of the classifier
@@ -66,7 +111,7 @@ public class SVMClassifier extends Classifier {
 			1,
 			svm_parameter.C_SVC,
 			svm_parameter.RBF,
-			20000,
+			0,
 			0.001
 		);
 	}
@@ -79,7 +124,8 @@ public class SVMClassifier extends Classifier {
 	 * @param C SVM param -- see SVMlib doc for details
 	 * @param svmType SVM param -- see SVMlib doc for details
 	 * @param kernelType SVM param -- see SVMlib doc for details
-	 * @param cacheSize SVM param -- see SVMlib doc for details
+	 * @param cacheSize kernel cache budget in MB; 0 to size it from the 
+	 * available heap -- see SVMlib doc for details
 	 * @param eps SVM param -- see SVMlib doc for details
 	 */
 	public void setSVMParameter(int probability, double gamma, 
@@ -95,33 +141,205 @@ public class SVMClassifier extends Classifier {
 		this.parameter.eps = eps;      
 	}
 	
+	/**
+	 * @return the parameters passed to SVMlib on training
+	 */
+	public svm_parameter getSVMParameter() {
+		return this.parameter;
+	}
+	
+	/**
+	 * Sets the pool on which SVMlib trains the pairwise problems and the
+	 * cross-validation folds of the probability estimates in parallel
+	 * @param pool a fork/join pool, or null to train serially (the default)
+	 */
+	public void setThreadPool(ForkJoinPool pool) {
+		this.parameter.pool = pool;
+	}
+	
+	/**
+	 * Keeps SVMlib's kernel cache outside the Java heap, in a direct buffer
+	 * of the same budget
+	 * @param offHeap whether to use a direct buffer (off by default)
+	 */
+	public void setCacheOffHeap(boolean offHeap) {
+		this.parameter.cache_off_heap = offHeap ? 1 : 0;
+	}
+	
+	/**
+	 * Makes training count kernel cache hits, misses, evictions and sizes.
+	 * The counters are atomic and shared by the solves and folds that run
+	 * in parallel, so they cost some time; they are off by default.
+	 * @param collect whether to collect the counters; turning them on 
+	 * 			starts from zero
+	 */
+	public void setCollectCacheStats(boolean collect) {
+		this.parameter.cache_stats = collect ? new svm_cache_stats() : null;
+	}
+	
+	/**
+	 * @return kernel cache hits, misses, evictions and sizes, accumulated 
+	 * over all trainings of this classifier since 
+	 * {@link #setCollectCacheStats(boolean)}; null unless collected
+	 */
+	public svm_cache_stats getCacheStats() {
+		return this.parameter.cache_stats;
+	}
+	
+	/**
+	 * Sets how long {@link #update(List)} keeps instances: an instance is
+	 * dropped once {@code updates} further updates have been made after
+	 * the one that added it. Instances passed to {@link #train(List)} count
+	 * as added by update 0.
+	 * @param updates number of updates to keep an instance for; 0 to keep
+	 * 			all instances (the default)
+	 * @throws IllegalArgumentException
+	 */
+	public void setMaxSampleAge(int updates) throws IllegalArgumentException {
+		if (updates < 0)
+			throw new IllegalArgumentException("updates must not be " +
+					"negative");
+		this.maxSampleAge = updates;
+	}
+	
+	/**
+	 * @return instances the current model was trained on, oldest first; 
+	 * null until trained with {@link #train(List)}
+	 */
+	public List<FeatureVector> getTrainingData() {
+		if (this.trainingData == null)
+			return null;
+		return Collections.unmodifiableList(this.trainingData);
+	}
 
 	@Override
 	public boolean train(List<FeatureVector> data) 
 			throws IllegalArgumentException{
 		if (data == null || data.size() < 1)
 			throw new IllegalArgumentException("Invalid data");
-				
+		this.updates = 0;
+		return train(new ArrayList<FeatureVector>(data), 
+				new int[data.size()], null);
+	}
+	
+	/**
+	 * Adds {@code samples} to the instances of the current model, drops the
+	 * instances older than the maximum sample age and retrains. The solver
+	 * starts from the alphas of the current model, so when the model 
+	 * changes little only a few iterations are needed. Warm starts apply 
+	 * to C-SVC; other SVM types are retrained from scratch on the same 
+	 * instances.
+	 * @param samples instances to add
+	 * @return true if the classifier was trained
+	 * @throws IllegalArgumentException
+	 */
+	public boolean update(List<FeatureVector> samples) 
+			throws IllegalArgumentException {
+		if (samples == null)
+			throw new IllegalArgumentException("Invalid data");
+		if (this.model == null || this.trainingData == null)
+			return train(samples);
+		
+		this.updates++;
+		int size = this.trainingData.size() + samples.size();
+		List<FeatureVector> data = new ArrayList<FeatureVector>(size);
+		int[] addedIn = new int[size];
+		double[] alphas = new double[size];
+		int kept = 0;
+		for (int i = 0; i < this.trainingData.size(); i++) {
+			if (this.maxSampleAge > 0 && 
+					this.updates - this.addedIn[i] > this.maxSampleAge)
+				continue;
+			data.add(this.trainingData.get(i));
+			addedIn[kept] = this.addedIn[i];
+			alphas[kept] = this.alphas[i];
+			kept++;
+		}
+		for (int i = 0; i < samples.size(); i++) {
+			data.add(samples.get(i));
+			addedIn[kept++] = this.updates;
+		}
+		if (kept < 1)
+			throw new IllegalArgumentException("Invalid data");
+		return train(data, Arrays.copyOf(addedIn, kept), 
+				Arrays.copyOf(alphas, kept));
+	}
+	
+	/**
+	 * Trains on {@code data} and keeps it for later updates
+	 * @param data instances to train on
+	 * @param addedIn update in which each instance was added
+	 * @param alphas starting alpha of each instance, or null to start
+	 * 			from zero
+	 * @return true if the classifier was trained
+	 * @throws IllegalArgumentException
+	 */
+	private boolean train(List<FeatureVector> data, int[] addedIn, 
+			double[] alphas) throws IllegalArgumentException {
 		svm_problem problem = new svm_problem();
 		
 	    problem.l = data.size();
 	    problem.y = new double[data.size()];
 	    problem.x = new svm_node[data.size()][];     
+	    problem.alpha = alphas;
 	    
+	    growTrainingNodes(data.size());
 	    for (int i = 0; i < data.size(); i++){
-	        problem.x[i] = new svm_node[this.numFeatures];
-	        for (int j = 0; j < this.numFeatures; j++){
-	            svm_node node = new svm_node();
-	            node.index = j;
-	            node.value = data.get(i).get(j, 0);
-	            problem.x[i][j] = node;
-	        }           
+	        problem.x[i] = this.trainingNodes[i];
+	        fillNodes(problem.x[i], data.get(i));
 	        problem.y[i] = (double) data.get(i).getIntClassLabel();
 	    }               
-	    this.model = svm.svm_train(problem, this.parameter);
-	    if (this.model == null) 
+	    return train(problem, data, addedIn);
+	}
+	
+	/**
+	 * Trains on the packed rows of {@code data}, filling the training 
+	 * nodes straight from its arrays. The rows are kept, as a List over 
+	 * the view, for later updates.
+	 */
+	@Override
+	public boolean trainPacked(TrainingView data) 
+			throws IllegalArgumentException {
+		if (data == null || data.size() < 1)
+			throw new IllegalArgumentException("Invalid data");
+		this.updates = 0;
+		svm_problem problem = new svm_problem();
+		
+	    problem.l = data.size();
+	    problem.y = new double[data.size()];
+	    problem.x = new svm_node[data.size()][];     
+	    
+	    growTrainingNodes(data.size());
+	    for (int i = 0; i < data.size(); i++){
+	        problem.x[i] = this.trainingNodes[i];
+	        fillNodes(problem.x[i], data, i);
+	        problem.y[i] = (double) data.getLabel(i);
+	    }               
+	    return train(problem, data.asList(), new int[data.size()]);
+	}
+	
+	/**
+	 * Solves {@code problem} and keeps {@code data}, the instances it was
+	 * built from, for later updates
+	 * @param problem the instances in SVMlib's format
+	 * @param data instances to keep
+	 * @param addedIn update in which each instance was added
+	 * @return true if the classifier was trained
+	 * @throws IllegalArgumentException
+	 */
+	private boolean train(svm_problem problem, List<FeatureVector> data, 
+			int[] addedIn) throws IllegalArgumentException {
+	    svm_model trained = svm.svm_train(problem, this.parameter);
+	    if (trained == null) 
 	    	throw new IllegalArgumentException("Malformed data. "
 	    			+ "Failed to train");
+	    /*detach the support vectors from the reusable training nodes*/
+	    for (int i = 0; i < trained.l; i++)
+	    	trained.SV[i] = copyNodes(trained.SV[i]);
+	    this.model = trained;
+	    this.trainingData = data;
+	    this.addedIn = addedIn;
+	    this.alphas = alphas(trained, data.size());
 	    //XXX
 	    //DataStorage.setModel(this, model);
 	    //svm.svm_save_model(model_file_name,model);
@@ -134,25 +352,227 @@ public class SVMClassifier extends Classifier {
 		if (this.model == null || getState() == ClassifierState.NOT_TRAINED)
 			throw new IllegalArgumentException("Ivalid state of classifier");
 		
-	    svm_node[] nodes = new svm_node[this.numFeatures];
+	    Buffers buffers = buffers();
+	    fillNodes(buffers.nodes, fv);
+	    return score(buffers) >= this.threshold ? 1 : -1;
+	}
+	
+	@Override
+	public int[] classifyBatch(List<FeatureVector> featureVectors)
+			throws IllegalStateException {
+		double[] scores = scoreBatch(featureVectors);
+		int[] labels = new int[scores.length];
+		for (int i = 0; i < scores.length; i++)
+			labels[i] = scores[i] >= this.threshold ? 1 : -1;
+		return labels;
+	}
+	
+	/**
+	 * Scores each instance with its estimated probability of being positive.
+	 * The node buffer, probability array and label lookup are the same
+	 * per-thread buffers used by {@link #classify(FeatureVector)}.
+	 */
+	@Override
+	public double[] scoreBatch(List<FeatureVector> featureVectors)
+			throws IllegalStateException {
+		if (this.model == null || getState() == ClassifierState.NOT_TRAINED)
+			throw new IllegalArgumentException("Ivalid state of classifier");
+		
+	    Buffers buffers = buffers();
+	    double[] scores = new double[featureVectors.size()];
+	    for (int i = 0; i < scores.length; i++) {
+	    	fillNodes(buffers.nodes, featureVectors.get(i));
+	    	scores[i] = score(buffers);
+	    }
+	    return scores;
+	}
+	
+	/**
+	 * Returns this thread's prediction buffers, rebuilding them if the model
+	 * has changed since they were last used
+	 * @return buffers sized for the current model
+	 */
+	private Buffers buffers() {
+		Buffers buffers = this.buffers.get();
+		if (buffers.model != this.model || 
+				buffers.nodes.length != this.numFeatures)
+			buffers.reset(this.model, this.numFeatures);
+		return buffers;
+	}
+	
+	/**
+	 * Makes sure {@link #trainingNodes} holds at least {@code size} 
+	 * instances, keeping the existing ones
+	 * @param size number of training instances
+	 */
+	private void growTrainingNodes(int size) {
+		int existing = 0;
+		if (this.trainingNodes != null) {
+			if (this.trainingNodes.length >= size &&
+					this.trainingNodes[0].length == this.numFeatures)
+				return;
+			if (this.trainingNodes[0].length == this.numFeatures)
+				existing = Math.min(this.trainingNodes.length, size);
+		}
+		svm_node[][] grown = new svm_node[size][];
+		for (int i = 0; i < size; i++)
+			grown[i] = i < existing ? this.trainingNodes[i] : 
+				newNodes(this.numFeatures);
+		this.trainingNodes = grown;
+	}
+	
+	/**
+	 * @param size number of nodes
+	 * @return {@code size} freshly allocated nodes
+	 */
+	static svm_node[] newNodes(int size) {
+		svm_node[] nodes = new svm_node[size];
+		for (int i = 0; i < size; i++)
+			nodes[i] = new svm_node();
+		return nodes;
+	}
+	
+	/**
+	 * @param nodes nodes to copy
+	 * @return a deep copy of {@code nodes}
+	 */
+	private static svm_node[] copyNodes(svm_node[] nodes) {
+		svm_node[] copy = newNodes(nodes.length);
+		for (int i = 0; i < nodes.length; i++) {
+			copy[i].index = nodes[i].index;
+			copy[i].value = nodes[i].value;
+		}
+		return copy;
+	}
+	
+	/**
+	 * Converts {@code data}, in nodes of its own, into the problem SVMlib 
+	 * is trained on when the kernel width is {@code gamma}. 
+	 * {@link SVMParameterSearch} evaluates its candidates on it, so that 
+	 * they see the same features as training does.
+	 * @param data labelled instances
+	 * @param gamma kernel width of the parameters to train with
+	 * @return {@code data} in SVMlib's format
+	 */
+	svm_problem problem(List<FeatureVector> data, double gamma) {
+		svm_problem problem = new svm_problem();
+		
+	    problem.l = data.size();
+	    problem.y = new double[data.size()];
+	    problem.x = new svm_node[data.size()][];
+	    for (int i = 0; i < data.size(); i++) {
+	        problem.x[i] = newNodes(this.numFeatures);
+	        fillNodes(problem.x[i], data.get(i));
+	        problem.y[i] = (double) data.get(i).getIntClassLabel();
+	    }
+	    return problem;
+	}
+	
+	/**
+	 * @return true if {@link #problem(List, double)} differs between 
+	 * values of gamma, and so has to be built for each
+	 */
+	boolean problemDependsOnGamma() {
+		return false;
+	}
+	
+	/**
+	 * Copies the features of {@code fv} into {@code nodes}; subclasses that
+	 * train in another feature space map {@code fv} here
+	 * @param nodes preallocated nodes, one per feature
+	 * @param fv instance to copy
+	 */
+	void fillNodes(svm_node[] nodes, FeatureVector fv) {
 	    for (int i = 0; i < this.numFeatures; i++) {
-	        svm_node node = new svm_node();
-	        node.index = i;
-	        node.value = fv.get(i, 0);
-	        nodes[i] = node;
+	        nodes[i].index = i;
+	        nodes[i].value = fv.get(i, 0);
 	    }
-
+	}
+	
+	/**
+	 * Copies the features of row {@code row} of {@code data} into 
+	 * {@code nodes}; the counterpart of {@link #fillNodes(svm_node[], 
+	 * FeatureVector)} for packed training data
+	 * @param nodes preallocated nodes, one per feature
+	 * @param data packed instances
+	 * @param row index of the instance to copy
+	 */
+	void fillNodes(svm_node[] nodes, TrainingView data, int row) {
+		double[] features = data.getFeatureArray();
+		int width = data.getNumFeatures();
+		int offset = row * width;
+	    for (int i = 0; i < this.numFeatures; i++) {
+	        nodes[i].index = i;
+	        nodes[i].value = i < width ? features[offset + i] : 0;
+	    }
+	}
+	
+	/**
+	 * Recovers the alpha of each training instance from a two-class model
+	 * @param model model trained on {@code size} instances
+	 * @param size number of training instances
+	 * @return alpha of each instance; zero for non support vectors
+	 */
+	private static double[] alphas(svm_model model, int size) {
+		double[] alphas = new double[size];
+		if (model.nr_class != 2 || model.sv_indices == null)
+			return alphas;
+		for (int i = 0; i < model.l; i++)
+			alphas[model.sv_indices[i] - 1] = Math.abs(model.sv_coef[0][i]);
+		return alphas;
+	}
+	
+	/**
+	 * Returns the position of the positive class in the model's labels, and
+	 * thus in its probability estimates
+	 * @param model trained model
+	 * @return index of the positive class
+	 */
+	private static int positiveIndex(svm_model model) {
 	    int totalClasses = 2;
 	    int[] labels = new int[totalClasses];
-	    svm.svm_get_labels(this.model, labels);
-
-	    double[] prob_estimates = new double[totalClasses];
-	    svm.svm_predict_probability(this.model, nodes, prob_estimates);
-	    
-	    if (prob_estimates[0] >= prob_estimates[1])
-	    	return 1;
-	    else
-	    	return -1;
+	    svm.svm_get_labels(model, labels);
+	    return labels[1] == ClassLabel.POSITIVE.getClassLabel() ? 1 : 0;
+	}
+	
+	/**
+	 * Estimates the probability that the instance in {@code buffers.nodes} 
+	 * is positive. Models trained without probability estimates score 0 or 1.
+	 * @param buffers buffers holding the instance to score
+	 * @return probability of the positive class
+	 */
+	private static double score(Buffers buffers) {
+		if (!buffers.probabilityModel)
+			return svm.svm_predict(buffers.model, buffers.nodes, 
+					buffers.workspace) == 
+					ClassLabel.POSITIVE.getClassLabel() ? 1 : 0;
+	    svm.svm_predict_probability(buffers.model, buffers.nodes, 
+	    		buffers.prob_estimates, buffers.workspace);
+	    return buffers.prob_estimates[buffers.positiveIndex];
+	}
+	
+	/**
+	 * Prediction buffers of one thread, together with the model properties
+	 * that would otherwise be looked up on every call
+	 */
+	private static class Buffers {
+		svm_model model;
+		svm_node[] nodes = new svm_node[0];
+		double[] prob_estimates;
+		svm_workspace workspace;
+		int positiveIndex;
+		boolean probabilityModel;
+		
+		void reset(svm_model model, int numFeatures) {
+			this.model = model;
+			if (this.nodes.length != numFeatures)
+				this.nodes = newNodes(numFeatures);
+			this.prob_estimates = new double[Math.max(2, model.nr_class)];
+			this.workspace = new svm_workspace(model);
+			this.positiveIndex = positiveIndex(model);
+			this.probabilityModel = 
+					svm.svm_check_probability_model(model) != 0;
+		}
 	}
 	
 	@Override
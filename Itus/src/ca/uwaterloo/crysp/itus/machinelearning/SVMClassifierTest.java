@@ -2,12 +2,28 @@ package ca.uwaterloo.crysp.itus.machinelearning;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import libsvm.svm;
+import libsvm.svm_cache_stats;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import libsvm.svm_print_interface;
+import libsvm.svm_problem;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import ca.uwaterloo.crysp.itus.FeatureVector;
+import ca.uwaterloo.crysp.itus.storage.TrainingStore;
 
 public class SVMClassifierTest {
 	private SVMClassifier svmClassifier;
@@ -76,4 +92,316 @@ public class SVMClassifierTest {
 				svmClassifier.classify(negative), -1);
 	
 	}
+
+	@Test
+	public void testClassifyBatch() {
+		double [] positiveSample = {1.0,2.0,3.0};
+		double [] negativeSample = {10.0,9.0,9.0};
+		ArrayList<FeatureVector> samples = new ArrayList<FeatureVector>();
+		samples.add(new FeatureVector(positiveSample, ClassLabel.UNKNOWN));
+		samples.add(new FeatureVector(negativeSample, ClassLabel.UNKNOWN));
+		
+		if(!svmClassifier.train(data))
+			fail("SVM train failed");
+		int [] labels = svmClassifier.classifyBatch(samples);
+		assertEquals("Batch test of known positive sample failed", 
+				labels[0], 1);
+		assertEquals("Batch test of known negative sample failed", 
+				labels[1], -1);
+		
+		double [] scores = svmClassifier.scoreBatch(samples);
+		assertTrue("Positive sample scored below negative sample", 
+				scores[0] > scores[1]);
+	}
+
+	@Test
+	public void testRetrainKeepsModel() {
+		double [] positiveSample = {1.0,2.0,3.0};
+		FeatureVector positive = new FeatureVector(positiveSample, 
+				ClassLabel.UNKNOWN);
+		if(!svmClassifier.train(data))
+			fail("SVM train failed");
+		svm_model first = svmClassifier.model;
+		double firstValue = first.SV[0][0].value;
+		int label = svmClassifier.classify(positive);
+		for (int i = 0; i < 10; i++)
+			assertEquals("Repeated classification changed the label", 
+					svmClassifier.classify(positive), label);
+		
+		/*retraining reuses the training nodes, not the old support vectors*/
+		ArrayList<FeatureVector> shifted = new ArrayList<FeatureVector>();
+		for (FeatureVector fv : data) {
+			double [] features = new double[numFeatures];
+			for (int j = 0; j < numFeatures; j++)
+				features[j] = fv.get(j, 0) + 100;
+			shifted.add(new FeatureVector(features, fv.getClassLabel()));
+		}
+		if(!svmClassifier.train(shifted))
+			fail("SVM retrain failed");
+		assertEquals("Retraining overwrote the previous support vectors", 
+				first.SV[0][0].value, firstValue, 0);
+		assertEquals("Retrained model misclassified a shifted sample", 
+				svmClassifier.classify(new FeatureVector(new double[] 
+						{101.0,102.0,103.0}, ClassLabel.UNKNOWN)), 1);
+	}
+
+	@Test
+	public void testDenseSupportVectors() {
+		if(!svmClassifier.train(data))
+			fail("SVM train failed");
+		svm_model model = svmClassifier.model;
+		assertEquals("Support vectors were not packed", 
+				model.SV_dense.length, model.l * numFeatures);
+		
+		/*a trailing zero feature forces the sparse kernels*/
+		double [] sample = {1.0,2.0,3.0};
+		svm_node [] dense = new svm_node[numFeatures];
+		svm_node [] sparse = new svm_node[numFeatures + 1];
+		for (int i = 0; i < sparse.length; i++) {
+			sparse[i] = new svm_node();
+			sparse[i].index = i;
+			sparse[i].value = i < numFeatures ? sample[i] : 0;
+			if (i < numFeatures)
+				dense[i] = sparse[i];
+		}
+		double [] denseValue = new double[1];
+		double [] sparseValue = new double[1];
+		svm.svm_predict_values(model, dense, denseValue);
+		svm.svm_predict_values(model, sparse, sparseValue);
+		assertEquals("Dense and sparse decision values differ", 
+				denseValue[0], sparseValue[0], 0);
+	}
+
+	@Test
+	public void testSerializedModel() throws Exception {
+		if(!svmClassifier.train(data))
+			fail("SVM train failed");
+		svm_model model = svmClassifier.model;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(model);
+		out.close();
+		int size = bytes.size();
+		
+		/*the packed support vectors are rebuilt, not stored twice*/
+		double [] packed = model.SV_dense;
+		model.SV_dense = null;
+		model.w = null;
+		bytes = new ByteArrayOutputStream();
+		out = new ObjectOutputStream(bytes);
+		out.writeObject(model);
+		out.close();
+		assertEquals("Packed support vectors were serialized", 
+				size, bytes.size());
+		svm_model read = (svm_model) new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertArrayEquals("Support vectors were not packed on reading", 
+				read.SV_dense, packed, 0);
+	}
+
+	@Test
+	public void testParallelTraining() {
+		/*three classes, so that svm_train solves three pairwise problems*/
+		svm_problem problem = new svm_problem();
+		problem.l = 30;
+		problem.y = new double[problem.l];
+		problem.x = new svm_node[problem.l][];
+		for (int i = 0; i < problem.l; i++) {
+			problem.y[i] = i % 3;
+			problem.x[i] = new svm_node[numFeatures];
+			for (int j = 0; j < numFeatures; j++) {
+				problem.x[i][j] = new svm_node();
+				problem.x[i][j].index = j;
+				problem.x[i][j].value = 10 * (i % 3) + (i * j) % 5;
+			}
+		}
+		svm_parameter parameter = (svm_parameter) 
+				svmClassifier.getSVMParameter().clone();
+		svm_model serial = svm.svm_train(problem, parameter);
+		parameter.pool = new ForkJoinPool(3);
+		svm_model parallel = svm.svm_train(problem, parameter);
+		parameter.pool.shutdown();
+		
+		assertEquals("Parallel training found other support vectors", 
+				parallel.l, serial.l);
+		for (int p = 0; p < serial.rho.length; p++)
+			assertEquals("Parallel training changed a decision function", 
+					parallel.rho[p], serial.rho[p], 0);
+		assertEquals("Parallel training skipped the probability estimates", 
+				svm.svm_check_probability_model(parallel), 1);
+	}
+
+	@Test
+	public void testKernelCache() {
+		double [] sample = {1.0,2.0,3.0};
+		FeatureVector positive = new FeatureVector(sample, ClassLabel.UNKNOWN);
+		assertNull("Kernel cache counters collected by default", 
+				svmClassifier.getCacheStats());
+		svmClassifier.setCollectCacheStats(true);
+		if(!svmClassifier.train(data))
+			fail("SVM train failed");
+		svm_model unbounded = svmClassifier.model;
+		svm_cache_stats stats = svmClassifier.getCacheStats();
+		assertTrue("Kernel cache was not used", 
+				stats.get_hits() + stats.get_misses() > 0);
+		assertTrue("Default kernel cache budget is not positive", 
+				stats.get_budget_bytes() > 0);
+		
+		/*a budget of two columns forces evictions, but not other results*/
+		for (int offHeap = 0; offHeap < 2; offHeap++) {
+			stats.reset();
+			svmClassifier.getSVMParameter().cache_size = 1e-6;
+			svmClassifier.setCacheOffHeap(offHeap == 1);
+			if(!svmClassifier.train(data))
+				fail("SVM train with a small cache failed");
+			assertEquals("Small kernel cache changed the decision function", 
+					svmClassifier.model.rho[0], unbounded.rho[0], 0);
+			assertEquals("Small kernel cache changed the classification", 
+					svmClassifier.classify(positive), 1);
+			assertTrue("Kernel cache exceeded its budget", 
+					stats.get_peak_bytes() <= stats.get_budget_bytes());
+		}
+	}
+
+	@Test
+	public void testLinearWeights() {
+		svmClassifier.setSVMParameter(1, 0.5, 0.5, 1, svm_parameter.C_SVC, 
+				svm_parameter.LINEAR, 0, 0.001);
+		if(!svmClassifier.train(data))
+			fail("SVM train failed");
+		svm_model model = svmClassifier.model;
+		assertEquals("Linear model was not collapsed to a weight vector", 
+				model.w.length, numFeatures);
+		
+		/*a trailing zero feature forces the sum over support vectors*/
+		double [] sample = {1.0,2.0,3.0};
+		svm_node [] dense = new svm_node[numFeatures];
+		svm_node [] sparse = new svm_node[numFeatures + 1];
+		for (int i = 0; i < sparse.length; i++) {
+			sparse[i] = new svm_node();
+			sparse[i].index = i;
+			sparse[i].value = i < numFeatures ? sample[i] : 0;
+			if (i < numFeatures)
+				dense[i] = sparse[i];
+		}
+		double [] linearValue = new double[1];
+		double [] kernelValue = new double[1];
+		svm.svm_predict_values(model, dense, linearValue);
+		svm.svm_predict_values(model, sparse, kernelValue);
+		assertEquals("Weight vector and support vectors disagree", 
+				linearValue[0], kernelValue[0], 1e-9);
+		assertEquals("Test of known positive sample failed", 
+				svmClassifier.classify(new FeatureVector(sample, 
+						ClassLabel.UNKNOWN)), 1);
+	}
+
+	/**
+	 * @return two overlapping blobs of {@code size} instances each
+	 */
+	private List<FeatureVector> blobs(Random random, int size) {
+		List<FeatureVector> blobs = new ArrayList<FeatureVector>();
+		for (int i = 0; i < 2 * size; i++) {
+			boolean positive = i % 2 == 0;
+			double [] features = new double[numFeatures];
+			for (int j = 0; j < numFeatures; j++)
+				features[j] = (positive ? 0 : 1.5) + random.nextGaussian();
+			blobs.add(new FeatureVector(features, positive ? 
+					ClassLabel.POSITIVE : ClassLabel.NEGATIVE));
+		}
+		return blobs;
+	}
+
+	/**
+	 * Counts the solver iterations reported by SVMlib
+	 */
+	private static class IterationCounter implements svm_print_interface {
+		int iterations;
+		public void print(String s) {
+			int at = s.indexOf("#iter = ");
+			if (at >= 0)
+				iterations += Integer.parseInt(
+						s.substring(at + 8).trim());
+		}
+	}
+
+	@Test
+	public void testWarmStartUpdate() {
+		Random random = new Random(42);
+		List<FeatureVector> initial = blobs(random, 100);
+		List<FeatureVector> recent = blobs(random, 5);
+		List<FeatureVector> all = new ArrayList<FeatureVector>(initial);
+		all.addAll(recent);
+		
+		SVMClassifier cold = new SVMClassifier(numFeatures);
+		cold.getSVMParameter().probability = 0;
+		IterationCounter coldIterations = new IterationCounter();
+		cold.getSVMParameter().print_func = coldIterations;
+		if (!cold.train(all))
+			fail("SVM train failed");
+		
+		svmClassifier.getSVMParameter().probability = 0;
+		if (!svmClassifier.train(initial))
+			fail("SVM train failed");
+		IterationCounter warmIterations = new IterationCounter();
+		svmClassifier.getSVMParameter().print_func = warmIterations;
+		if (!svmClassifier.update(recent))
+			fail("SVM update failed");
+		
+		assertEquals("Update lost training instances", 
+				svmClassifier.getTrainingData().size(), all.size());
+		assertTrue("Warm start took " + warmIterations.iterations + 
+				" iterations, from scratch " + coldIterations.iterations,
+				warmIterations.iterations < coldIterations.iterations);
+		assertEquals("Warm start converged to another solution", 
+				svmClassifier.model.rho[0], cold.model.rho[0], 0.01);
+		int [] warmLabels = svmClassifier.classifyBatch(all);
+		int [] coldLabels = cold.classifyBatch(all);
+		for (int i = 0; i < all.size(); i++)
+			assertEquals("Warm start changed a classification", 
+					warmLabels[i], coldLabels[i]);
+	}
+
+	@Test
+	public void testMaxSampleAge() {
+		Random random = new Random(7);
+		List<FeatureVector> first = blobs(random, 10);
+		List<FeatureVector> second = blobs(random, 10);
+		List<FeatureVector> third = blobs(random, 10);
+		try {
+			svmClassifier.setMaxSampleAge(-1);
+			fail("Negative sample age accepted");
+		} catch (IllegalArgumentException e) {
+			
+		}
+		svmClassifier.setMaxSampleAge(1);
+		if (!svmClassifier.train(first) || !svmClassifier.update(second))
+			fail("SVM update failed");
+		assertEquals("Instances dropped too early", 
+				svmClassifier.getTrainingData().size(), 40);
+		if (!svmClassifier.update(third))
+			fail("SVM update failed");
+		List<FeatureVector> kept = svmClassifier.getTrainingData();
+		assertEquals("Old instances were not dropped", kept.size(), 40);
+		assertTrue("Oldest instances were kept", kept.get(0) == second.get(0) 
+				&& kept.get(39) == third.get(19));
+	}
+
+	@Test
+	public void testTrainPacked() {
+		TrainingStore store = new TrainingStore();
+		store.addAll(data);
+		svmClassifier.trainPacked(store.snapshot());
+		SVMClassifier reference = new SVMClassifier(numFeatures);
+		reference.train(data);
+		assertEquals("SVMClassifier.trainPacked differs from train",
+				svmClassifier.model.l, reference.model.l);
+		assertEquals("SVMClassifier.trainPacked differs from train",
+				svmClassifier.model.rho[0], reference.model.rho[0], 1e-9);
+		assertEquals("SVMClassifier.trainPacked lost the training data",
+				svmClassifier.getTrainingData().size(), size);
+		double [] negativeSample = {10.0,9.0,9.0};
+		assertEquals("SVMClassifier.trainPacked failed to classify",
+				svmClassifier.classify(new FeatureVector(negativeSample, 
+						ClassLabel.UNKNOWN)), -1);
+	}
 }
@@ -0,0 +1,282 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus.machinelearning;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import ca.uwaterloo.crysp.itus.FeatureVector;
+import libsvm.svm;
+import libsvm.svm_parameter;
+import libsvm.svm_problem;
+
+/**
+ * Searches (C, gamma) for the pair with the best cross-validation accuracy.
+ * The training instances are converted by the classifier to the 
+ * {@code svm_problem} it trains on, once, and shared by all candidates 
+ * (once per gamma when its features depend on gamma, as those of 
+ * {@link RandomFourierSVMClassifier} do); every candidate is evaluated on
+ * the same folds.
+ * With a thread pool the candidates, and the folds of each candidate, are
+ * trained concurrently. The result is ready for
+ * {@code RunConfiguration.getSVMRunConfiguration(svm_parameter, ...)}.
+ */
+public class SVMParameterSearch {
+
+	/**
+	 * Classifier whose training problem the candidates are evaluated on
+	 */
+	private final SVMClassifier classifier;
+	/**
+	 * Parameters of the candidates other than C and gamma
+	 */
+	private final svm_parameter template;
+	/**
+	 * Number of cross-validation folds
+	 */
+	private int folds = 5;
+	/**
+	 * Seed of the folds and of the random search
+	 */
+	private long seed = 42;
+	/**
+	 * Pool the candidates are evaluated on; null to evaluate them serially
+	 */
+	private ForkJoinPool pool;
+	/**
+	 * Cross-validation accuracy of the last search's best candidate
+	 */
+	private double bestAccuracy = Double.NaN;
+
+	/**
+	 * @param classifier classifier to search parameters for; its parameters
+	 * 			other than C and gamma are kept, and the candidates are 
+	 * 			evaluated on the features it trains on
+	 * @throws IllegalArgumentException
+	 */
+	public SVMParameterSearch(SVMClassifier classifier)
+			throws IllegalArgumentException {
+		if (classifier == null)
+			throw new IllegalArgumentException("classifier must not be null");
+		this.classifier = classifier;
+		this.template = (svm_parameter) 
+				classifier.getSVMParameter().clone();
+		this.pool = this.template.pool;
+	}
+
+	/**
+	 * @param folds number of cross-validation folds (5 by default)
+	 * @throws IllegalArgumentException
+	 */
+	public void setFolds(int folds) throws IllegalArgumentException {
+		if (folds < 2)
+			throw new IllegalArgumentException("folds must be at least 2");
+		this.folds = folds;
+	}
+
+	/**
+	 * @param seed seed of the folds and of the random search
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @param pool pool to evaluate candidates and folds on, or null to
+	 * 			evaluate them serially. Defaults to the template's pool.
+	 */
+	public void setThreadPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * @return cross-validation accuracy of the best candidate of the last
+	 * search; NaN before the first search
+	 */
+	public double getBestAccuracy() {
+		return this.bestAccuracy;
+	}
+
+	/**
+	 * Returns {@code 2^from, 2^(from + step), ...} up to {@code 2^to}, the
+	 * usual spacing of SVM grid searches
+	 * @param from first exponent
+	 * @param to last exponent
+	 * @param step distance between exponents
+	 * @return powers of two
+	 * @throws IllegalArgumentException
+	 */
+	public static double[] powersOfTwo(double from, double to, double step)
+			throws IllegalArgumentException {
+		if (step == 0 || (to - from) / step < 0)
+			throw new IllegalArgumentException("step does not lead from " +
+					"from to to");
+		int size = (int) Math.floor((to - from) / step + 1e-9) + 1;
+		double[] powers = new double[size];
+		for (int i = 0; i < size; i++)
+			powers[i] = Math.pow(2, from + i * step);
+		return powers;
+	}
+
+	/**
+	 * Evaluates every pair of {@code Cs} and {@code gammas}
+	 * @param data labelled training instances
+	 * @param Cs values of C
+	 * @param gammas values of gamma
+	 * @return a copy of the template with the best C and gamma; ties go to
+	 * 			the pair listed first
+	 * @throws IllegalArgumentException
+	 */
+	public svm_parameter gridSearch(List<FeatureVector> data, double[] Cs,
+			double[] gammas) throws IllegalArgumentException {
+		if (Cs == null || gammas == null || Cs.length < 1 ||
+				gammas.length < 1)
+			throw new IllegalArgumentException("Empty grid");
+		double[] candidateCs = new double[Cs.length * gammas.length];
+		double[] candidateGammas = new double[candidateCs.length];
+		for (int i = 0; i < Cs.length; i++)
+			for (int j = 0; j < gammas.length; j++) {
+				candidateCs[i * gammas.length + j] = Cs[i];
+				candidateGammas[i * gammas.length + j] = gammas[j];
+			}
+		return search(data, candidateCs, candidateGammas);
+	}
+
+	/**
+	 * Evaluates {@code candidates} pairs drawn log-uniformly from the given
+	 * ranges
+	 * @param data labelled training instances
+	 * @param candidates number of pairs to evaluate
+	 * @param log2C range of log2(C), {min, max}
+	 * @param log2Gamma range of log2(gamma), {min, max}
+	 * @return a copy of the template with the best C and gamma
+	 * @throws IllegalArgumentException
+	 */
+	public svm_parameter randomSearch(List<FeatureVector> data,
+			int candidates, double[] log2C, double[] log2Gamma)
+					throws IllegalArgumentException {
+		if (candidates < 1 || log2C == null || log2C.length != 2 ||
+				log2Gamma == null || log2Gamma.length != 2)
+			throw new IllegalArgumentException("Invalid search space");
+		Random random = new Random(this.seed);
+		double[] candidateCs = new double[candidates];
+		double[] candidateGammas = new double[candidates];
+		for (int i = 0; i < candidates; i++) {
+			candidateCs[i] = Math.pow(2, log2C[0] +
+					random.nextDouble() * (log2C[1] - log2C[0]));
+			candidateGammas[i] = Math.pow(2, log2Gamma[0] +
+					random.nextDouble() * (log2Gamma[1] - log2Gamma[0]));
+		}
+		return search(data, candidateCs, candidateGammas);
+	}
+
+	/**
+	 * Cross-validates every candidate on the same folds and returns the best
+	 * @param data labelled training instances
+	 * @param Cs C of each candidate
+	 * @param gammas gamma of each candidate
+	 * @return a copy of the template with the best C and gamma
+	 * @throws IllegalArgumentException
+	 */
+	private svm_parameter search(List<FeatureVector> data, double[] Cs,
+			double[] gammas) throws IllegalArgumentException {
+		if (data == null || data.size() < this.folds)
+			throw new IllegalArgumentException("Fewer instances than folds");
+		Map<Double, svm_problem> problems = new HashMap<Double, svm_problem>();
+		boolean perGamma = this.classifier.problemDependsOnGamma();
+		final double[] accuracies = new double[Cs.length];
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[Cs.length];
+		for (int i = 0; i < Cs.length; i++) {
+			final int candidate = i;
+			Double key = perGamma ? gammas[i] : 0;
+			if (!problems.containsKey(key))
+				problems.put(key, this.classifier.problem(data, gammas[i]));
+			final svm_problem problem = problems.get(key);
+			final svm_parameter parameter = candidate(Cs[i], gammas[i]);
+			tasks[i] = new RecursiveAction() {
+				@Override
+				protected void compute() {
+					accuracies[candidate] = crossValidate(problem, parameter);
+				}
+			};
+		}
+		invokeAll(tasks);
+
+		int best = 0;
+		for (int i = 1; i < accuracies.length; i++)
+			if (accuracies[i] > accuracies[best])
+				best = i;
+		this.bestAccuracy = accuracies[best];
+		svm_parameter result = (svm_parameter) this.template.clone();
+		result.C = Cs[best];
+		result.gamma = gammas[best];
+		return result;
+	}
+
+	/**
+	 * @return a copy of the template for one candidate. Probability
+	 * estimates only slow the folds down, as accuracy is measured on
+	 * labels, so they are turned off, as are the kernel cache counters, 
+	 * which the candidates would otherwise all update.
+	 */
+	private svm_parameter candidate(double C, double gamma) {
+		svm_parameter parameter = (svm_parameter) this.template.clone();
+		parameter.C = C;
+		parameter.gamma = gamma;
+		parameter.probability = 0;
+		parameter.cache_stats = null;
+		parameter.pool = this.pool;
+		return parameter;
+	}
+
+	/**
+	 * @return fraction of instances whose label is predicted correctly by
+	 * 			the model trained on the other folds
+	 */
+	private double crossValidate(svm_problem problem,
+			svm_parameter parameter) {
+		double[] target = new double[problem.l];
+		svm.svm_cross_validation(problem, parameter, this.folds, target,
+				new Random(this.seed));
+		int correct = 0;
+		for (int i = 0; i < problem.l; i++)
+			if (target[i] == problem.y[i])
+				correct++;
+		return (double) correct / problem.l;
+	}
+
+	/**
+	 * Runs {@code tasks} on the pool, or serially without one
+	 */
+	private void invokeAll(final ForkJoinTask<?>[] tasks) {
+		if (this.pool == null) {
+			for (ForkJoinTask<?> task : tasks)
+				task.invoke();
+			return;
+		}
+		this.pool.invoke(new RecursiveAction() {
+			@Override
+			protected void compute() {
+				ForkJoinTask.invokeAll(tasks);
+			}
+		});
+	}
+
+}
@@ -0,0 +1,145 @@
+package ca.uwaterloo.crysp.itus.machinelearning;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import libsvm.svm_parameter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uwaterloo.crysp.itus.FeatureVector;
+
+public class SVMParameterSearchTest {
+	int numFeatures;
+	ArrayList<FeatureVector> data;
+	SVMClassifier classifier;
+	svm_parameter template;
+
+	@Before
+	public void setUp() {
+		numFeatures = 2;
+		Random random = new Random(42);
+		data = new ArrayList<FeatureVector>();
+		/*a ring of negatives around a core of positives*/
+		for (int i = 0; i < 80; i++) {
+			boolean positive = i % 2 == 0;
+			double radius = positive ? random.nextDouble() : 
+				2 + random.nextDouble();
+			double angle = 2 * Math.PI * random.nextDouble();
+			double [] features = {radius * Math.cos(angle), 
+					radius * Math.sin(angle)};
+			data.add(new FeatureVector(features, positive ? 
+					ClassLabel.POSITIVE : ClassLabel.NEGATIVE));
+		}
+		classifier = new SVMClassifier(numFeatures);
+		template = classifier.getSVMParameter();
+	}
+
+	@Test
+	public void testPowersOfTwo() {
+		double [] powers = SVMParameterSearch.powersOfTwo(3, -15, -2);
+		assertEquals("Wrong number of powers", powers.length, 10);
+		assertEquals("Wrong first power", powers[0], 8, 0);
+		assertEquals("Wrong last power", powers[9], Math.pow(2, -15), 0);
+		try {
+			SVMParameterSearch.powersOfTwo(0, 1, -1);
+			fail("Step away from the last exponent accepted");
+		} catch (IllegalArgumentException e) {
+			
+		}
+	}
+
+	@Test
+	public void testGridSearch() {
+		double [] Cs = SVMParameterSearch.powersOfTwo(-5, 5, 5);
+		double [] gammas = SVMParameterSearch.powersOfTwo(-15, 1, 8);
+		SVMParameterSearch serial = new SVMParameterSearch(classifier);
+		svm_parameter best = serial.gridSearch(data, Cs, gammas);
+		assertTrue("Ring not separated: " + serial.getBestAccuracy(),
+				serial.getBestAccuracy() > 0.9);
+		assertEquals("Best gamma underfits the ring", best.gamma, 2, 0);
+		assertEquals("Search changed the template's other parameters", 
+				best.probability, template.probability);
+		
+		/*the candidates do not update the classifier's cache counters*/
+		classifier.setCollectCacheStats(true);
+		new SVMParameterSearch(classifier).gridSearch(data, Cs, gammas);
+		assertEquals("Search updated the kernel cache counters", 
+				classifier.getCacheStats().get_hits() + 
+				classifier.getCacheStats().get_misses(), 0);
+		
+		ForkJoinPool pool = new ForkJoinPool(3);
+		SVMParameterSearch parallel = new SVMParameterSearch(classifier);
+		parallel.setThreadPool(pool);
+		svm_parameter parallelBest = parallel.gridSearch(data, Cs, gammas);
+		pool.shutdown();
+		assertEquals("Parallel search found another accuracy", 
+				parallel.getBestAccuracy(), serial.getBestAccuracy(), 0);
+		assertEquals("Parallel search found another C", 
+				parallelBest.C, best.C, 0);
+		assertEquals("Parallel search found another gamma", 
+				parallelBest.gamma, best.gamma, 0);
+	}
+
+	@Test
+	public void testWideInstances() {
+		/*the classifier only trains on the first numFeatures features, so
+		 * the search must ignore the noise appended to each instance*/
+		Random random = new Random(7);
+		ArrayList<FeatureVector> wide = new ArrayList<FeatureVector>();
+		for (FeatureVector fv : data) {
+			double [] features = {fv.get(0), fv.get(1), 
+					100 * random.nextDouble()};
+			wide.add(new FeatureVector(features, fv.getClassLabel()));
+		}
+		double [] Cs = SVMParameterSearch.powersOfTwo(-5, 5, 5);
+		double [] gammas = SVMParameterSearch.powersOfTwo(-15, 1, 8);
+		SVMParameterSearch narrowSearch = new SVMParameterSearch(classifier);
+		svm_parameter narrowBest = narrowSearch.gridSearch(data, Cs, gammas);
+		SVMParameterSearch wideSearch = new SVMParameterSearch(classifier);
+		svm_parameter wideBest = wideSearch.gridSearch(wide, Cs, gammas);
+		assertEquals("Search used the features beyond numFeatures", 
+				wideSearch.getBestAccuracy(), 
+				narrowSearch.getBestAccuracy(), 0);
+		assertEquals("Search used the features beyond numFeatures", 
+				wideBest.gamma, narrowBest.gamma, 0);
+		assertEquals("Search used the features beyond numFeatures", 
+				wideBest.C, narrowBest.C, 0);
+	}
+
+	@Test
+	public void testRandomFourier() {
+		/*gamma only acts through the feature map of the linear SVM*/
+		RandomFourierSVMClassifier fourier = 
+				new RandomFourierSVMClassifier(numFeatures, 64, 42);
+		SVMParameterSearch search = new SVMParameterSearch(fourier);
+		double [] Cs = {1};
+		double [] gammas = {Math.pow(2, -15), 2};
+		svm_parameter best = search.gridSearch(data, Cs, gammas);
+		assertEquals("Search ignored the feature map", best.gamma, 2, 0);
+		assertTrue("Ring not separated: " + search.getBestAccuracy(),
+				search.getBestAccuracy() > 0.9);
+		assertEquals("Search changed the kernel", best.kernel_type, 
+				svm_parameter.LINEAR);
+		assertNull("Search trained the classifier", fourier.getFeatureMap());
+	}
+
+	@Test
+	public void testRandomSearch() {
+		SVMParameterSearch search = new SVMParameterSearch(classifier);
+		search.setFolds(4);
+		double [] log2C = {-5, 5};
+		double [] log2Gamma = {-3, 3};
+		svm_parameter best = search.randomSearch(data, 6, log2C, log2Gamma);
+		assertTrue("C outside its range", 
+				best.C >= Math.pow(2, -5) && best.C <= Math.pow(2, 5));
+		assertTrue("gamma outside its range", best.gamma >= Math.pow(2, -3) 
+				&& best.gamma <= Math.pow(2, 3));
+		assertTrue("Random search found no good candidate: " + 
+				search.getBestAccuracy(), search.getBestAccuracy() > 0.9);
+	}
+}
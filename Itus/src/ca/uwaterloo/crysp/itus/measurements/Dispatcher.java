@@ -19,8 +19,8 @@ import java.util.HashMap;
 
 import ca.uwaterloo.crysp.itus.FeatureVector;
 import ca.uwaterloo.crysp.itus.Itus;
+import ca.uwaterloo.crysp.itus.ItusSession;
 import ca.uwaterloo.crysp.itus.Parameters;
-import ca.uwaterloo.crysp.itus.storage.DataStorage;
 
 /**
  * The dispatcher class dispatches Events from the android subsystem to the
@@ -35,6 +35,27 @@ public class Dispatcher {
 	 */
 	protected HashMap<EventType, ArrayList<Measurement>> 
 		callbackRegister = new HashMap<EventType, ArrayList<Measurement>>();
+	
+	/**
+	 * Session whose bins the FeatureVectors are stored to; null for the 
+	 * default session
+	 */
+	private final ItusSession session;
+	
+	/**
+	 * Creates a dispatcher that stores FeatureVectors to the default session
+	 */
+	public Dispatcher() {
+		this(null);
+	}
+	
+	/**
+	 * Creates a dispatcher that stores FeatureVectors to {@code session}
+	 * @param session session to store to; null for the default session
+	 */
+	public Dispatcher(ItusSession session) {
+		this.session = session;
+	}
 
 	/**
 	 * Registers a callback against 'eventType' for Measurement 'm'.
@@ -46,6 +67,16 @@ public class Dispatcher {
 		if (!callbackRegister.containsKey(eventType))
 			callbackRegister.put(eventType, new ArrayList<Measurement>());
 		callbackRegister.get(eventType).add(measurement);
+		bind(measurement);
+	}
+	
+	/**
+	 * Binds {@code measurement} to the session of this dispatcher
+	 * @param measurement Measurement registering with this dispatcher
+	 */
+	void bind(Measurement measurement) {
+		measurement.bind(session == null || 
+				session == ItusSession.getDefault());
 	}
 
 	/**
@@ -72,11 +103,14 @@ public class Dispatcher {
 		if (!callbackRegister.containsKey(eventType)) 
 			return;
 		ArrayList<Measurement> measurements = callbackRegister.get(eventType);
+		ItusSession target = session != null ? session : 
+				ItusSession.getDefault();
 		for (int i = 0; i < measurements.size(); i++) {
 			Measurement measurement = measurements.get(i);
 			if (measurement.procEvent((Object)ev, eventType)) {
 				//System.out.println("Add to DS");
-				if(Parameters.getMode() ==  Parameters.Mode.CONFIG_MODE) {
+				if(target.getParameters().getMode() == 
+						Parameters.Mode.CONFIG_MODE) {
 					try{ Itus.getPermanentStorage().log(
 							Parameters.getTouchlogfilename(), 
 							deflateFeatureVector(
@@ -86,8 +120,10 @@ public class Dispatcher {
 					}
 				}
 				else {
-					DataStorage.add(measurement.getFeatureVector());
-					measurements.set(i, measurement.newInstance());
+					target.getBins().add(measurement.getFeatureVector());
+					Measurement next = measurement.newInstance();
+					next.copyFeatureList(measurement);
+					measurements.set(i, next);
 				}
 			}
 		}
@@ -29,15 +29,42 @@ import ca.uwaterloo.crysp.itus.FeatureVector;
 */
 public abstract class Measurement {
 	/**
-	 * The subset of Features supported by this measurement
+	 * The subset of Features supported by this measurement. Only kept in 
+	 * sync for Measurements of the default session, which read it back, so
+	 * changes made to it still take effect there.
+	 * @deprecated Measurements of other sessions keep their own feature 
+	 * 			lists; use {@link #usesFeature} and {@link #setUsesFeature}.
 	 */
+	@Deprecated
 	public static HashMap<Class<?>, ArrayList<Boolean>> employedFeatures = 
 			new HashMap<Class<?>, ArrayList<Boolean>>();
 	/**
-	 * Features name-index mapping
+	 * Features name-index mapping. Only kept in sync for Measurements of 
+	 * the default session.
+	 * @deprecated see {@link #employedFeatures}
 	 */
+	@Deprecated
 	public static HashMap<Class<?>, HashMap<String,Integer>> featureIndexMap = 
 			new HashMap<Class<?>, HashMap<String,Integer>>();
+	
+	/**
+	 * Whether each feature is used for classification; null if no feature 
+	 * list was set. Shared with the instances created after this one, so it
+	 * is replaced rather than modified.
+	 */
+	private ArrayList<Boolean> featuresEmployed = null;
+	
+	/**
+	 * Features name-index mapping; null if no feature list was set
+	 */
+	private HashMap<String,Integer> featureIndexes = null;
+	
+	/**
+	 * True if this Measurement belongs to the default session, and so 
+	 * keeps its feature list in {@link #employedFeatures} and 
+	 * {@link #featureIndexMap}
+	 */
+	private boolean shared = false;
 
 	/**
 	 * FeatureVector to store the converted features
@@ -75,24 +102,118 @@ public abstract class Measurement {
 	
 	/**
 	 * To set the name of the FeatureVectors. By default all the features are
-	 * added to the employedFeatures and FeatureIndexMap list
+	 * employed by this Measurement
 	 * @param featureNames name of the features, indexed by array index
 	 */
 	public void setFeatureList(String[] featureNames) {
 		ArrayList<Boolean> arrayList = new ArrayList<Boolean>(featureNames.length);
 		HashMap<String,Integer> hashMap = new HashMap<String,Integer>();
-		/*clear in case this is an update call*/
-		employedFeatures.clear();
-		featureIndexMap.clear();
 		
 		for (int i=0; i<featureNames.length; i++) {
 			arrayList.add(true);
 			hashMap.put(featureNames[i], i);
 		}
-		employedFeatures.put(getClass(), arrayList);
-		featureIndexMap.put(getClass(), hashMap);
+		featuresEmployed = arrayList;
+		featureIndexes = hashMap;
+		if (shared)
+			publishFeatureList();
+	}
+	
+	/**
+	 * Sets whether the feature at {@code featureIndex} is to be used for 
+	 * classification. The Measurements that replace this one after it 
+	 * produces a FeatureVector keep the setting.
+	 * @param featureIndex index of the feature in the feature list
+	 * @param used true if the feature is to be used for classification
+	 * @throws IllegalStateException
+	 * @throws IndexOutOfBoundsException
+	 */
+	public void setUsesFeature(int featureIndex, boolean used) 
+			throws IllegalStateException, IndexOutOfBoundsException {
+		ArrayList<Boolean> current = employedFeatureList();
+		if (current == null)
+			throw new IllegalStateException("No feature list has been set");
+		ArrayList<Boolean> arrayList = new ArrayList<Boolean>(current);
+		arrayList.set(featureIndex, used);
+		featuresEmployed = arrayList;
+		if (shared)
+			synchronized (employedFeatures) {
+				employedFeatures.put(getClass(), 
+						new ArrayList<Boolean>(arrayList));
+			}
+	}
+	
+	/**
+	 * Binds this Measurement to the dispatcher of a session; called by the
+	 * Dispatcher when the Measurement registers with it. Measurements of 
+	 * the default session publish their feature list to 
+	 * {@link #employedFeatures} and {@link #featureIndexMap}.
+	 * @param shared true if the dispatcher belongs to the default session
+	 */
+	void bind(boolean shared) {
+		this.shared = shared;
+		if (shared)
+			publishFeatureList();
 	}
 	
+	/**
+	 * Makes this Measurement use the feature list and session of 
+	 * {@code measurement}; called by the Dispatcher on the instance 
+	 * replacing {@code measurement}
+	 * @param measurement Measurement to take the feature list from
+	 */
+	void copyFeatureList(Measurement measurement) {
+		this.shared = measurement.shared;
+		if (measurement.featuresEmployed == null)
+			return;
+		this.featuresEmployed = measurement.featuresEmployed;
+		this.featureIndexes = measurement.featureIndexes;
+	}
+	
+	/**
+	 * Copies this Measurement's feature list to {@link #employedFeatures} 
+	 * and {@link #featureIndexMap}
+	 */
+	private void publishFeatureList() {
+		if (featuresEmployed == null)
+			return;
+		synchronized (employedFeatures) {
+			employedFeatures.put(getClass(), 
+					new ArrayList<Boolean>(featuresEmployed));
+			featureIndexMap.put(getClass(), 
+					new HashMap<String,Integer>(featureIndexes));
+		}
+	}
+	
+	/**
+	 * Returns whether each feature is used; for the default session, as 
+	 * currently found in {@link #employedFeatures}
+	 * @return the list; null if no feature list was set
+	 */
+	private ArrayList<Boolean> employedFeatureList() {
+		if (shared)
+			synchronized (employedFeatures) {
+				ArrayList<Boolean> arrayList = employedFeatures.get(getClass());
+				if (arrayList != null)
+					return arrayList;
+			}
+		return featuresEmployed;
+	}
+	
+	/**
+	 * Returns the name-index mapping; for the default session, as 
+	 * currently found in {@link #featureIndexMap}
+	 * @return the mapping; null if no feature list was set
+	 */
+	private HashMap<String,Integer> featureIndexList() {
+		if (shared)
+			synchronized (employedFeatures) {
+				HashMap<String,Integer> hashMap = featureIndexMap.get(getClass());
+				if (hashMap != null)
+					return hashMap;
+			}
+		return featureIndexes;
+	}
 	
 	/**
 	 * Returns true if  feature with featureName is to be used for 
@@ -104,16 +225,17 @@ public abstract class Measurement {
 		if (featureName.equals("class")) 
 			return true;
 		
-		if (!employedFeatures.containsKey(getClass())) 
+		ArrayList<Boolean> employed = employedFeatureList();
+		HashMap<String,Integer> indexes = featureIndexList();
+		if (employed == null || indexes == null) 
 			return true;
 		
-		int idx = featureIndexMap.get(getClass()).get(featureName);
+		int idx = indexes.get(featureName);
 		
-		if (employedFeatures.get(getClass()).size() <= idx) 
+		if (employed.size() <= idx) 
 			return true;
 		
-		return employedFeatures.get(getClass()).get( 
-				featureIndexMap.get(getClass()).get(featureName) );
+		return employed.get(idx);
 	}
 
 	/**
@@ -126,13 +248,14 @@ public abstract class Measurement {
 		if (featureIndex == fv.getIntClassLabel()) 
 			return true;
 		
-		if (!employedFeatures.containsKey(getClass())) 
+		ArrayList<Boolean> employed = employedFeatureList();
+		if (employed == null) 
 			return true;
 		
-		if (employedFeatures.get(getClass()).size() <= featureIndex) 
+		if (employed.size() <= featureIndex) 
 			return true;
 		
-		return employedFeatures.get(getClass()).get(featureIndex);
+		return employed.get(featureIndex);
 	}
 	
 	/**
@@ -144,7 +267,7 @@ public abstract class Measurement {
 	}
 	
 	/**
-	 * Gets the FeatureVector that uses {@code employedFeatures}
+	 * Gets the FeatureVector of the features used for classification
 	 * @return the FeatureVector
 	 */
 	public FeatureVector getFeatureVector() {
@@ -80,6 +80,28 @@ public class MultiMeasurement extends Measurement {
 		}
 	}
 
+	/* 
+	 * Binds the submeasurements along with this measurement
+	 */
+	@Override
+	void bind(boolean shared) {
+		super.bind(shared);
+		for (Measurement m : measurements)
+			m.bind(shared);
+	}
+	
+	/* 
+	 * Copies the feature lists of the submeasurements along with this one
+	 */
+	@Override
+	void copyFeatureList(Measurement measurement) {
+		super.copyFeatureList(measurement);
+		MultiMeasurement previous = (MultiMeasurement) measurement;
+		for (int i = 0; i < measurements.size(); i++)
+			measurements.get(i).copyFeatureList(
+					previous.measurements.get(i));
+	}
+
 	/* (non-Javadoc)
 	 * @see ca.uwaterloo.crysp.itus.measurements.Measurement#procEvent(java.lang.Object, ca.uwaterloo.crysp.itus.measurements.EventType)
 	 */
@@ -157,6 +179,14 @@ public class MultiMeasurement extends Measurement {
 			haveDataFor = new boolean[size];
 		}
 		
+		/* 
+		 * Submeasurements are bound with the MultiMeasurement, once it 
+		 * registers with the session's dispatcher
+		 */
+		@Override
+		void bind(Measurement measurement) {
+		}
+		
 		/**
 		 * Fetch the aggregate list of events that any submeasurement has registered for
 		 * 
@@ -80,11 +80,13 @@ public class RunConfiguration {
 			svm_parameter svmParameter, int numFeatures, double trainingSetRatio, 
 			Measurement measurement) {
 		SVMClassifier svmClassifier = new SVMClassifier(numFeatures);
-		if (svmParameter != null)
+		if (svmParameter != null) {
 			svmClassifier.setSVMParameter(svmParameter.probability, 
 					svmParameter.gamma, svmParameter.nu, svmParameter.C, 
 					svmParameter.svm_type, svmParameter.kernel_type, 
 					svmParameter.cache_size, svmParameter.eps);
+			svmClassifier.setThreadPool(svmParameter.pool);
+		}
 			
 		RunConfiguration rc = new RunConfiguration(numFeatures, 
 				trainingSetRatio, svmClassifier, measurement);
@@ -0,0 +1,318 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus.storage;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import ca.uwaterloo.crysp.itus.FeatureVector;
+import ca.uwaterloo.crysp.itus.SessionParameters;
+
+/**
+ * The bins of one {@link ca.uwaterloo.crysp.itus.ItusSession}. The recent
+ * bin is a lock-free {@link RingBuffer}, so the thread dispatching events 
+ * never waits on the monitor held by the Itus thread. The training bin is a
+ * {@link TrainingStore}, synchronized on the Bins, that classifiers train 
+ * from through read-only snapshots. {@link DataStorage} is the static 
+ * facade over the bins of the default session.
+ */
+public class Bins {
+	/**
+	 * Parameters of the session owning the bins
+	 */
+	private final SessionParameters parameters;
+	
+	/**
+	 * Bin_train; null until the first FeatureVector is added to it
+	 */
+	private TrainingStore training = null;
+	
+	
+	/**
+	 * Capacity of bin_recent
+	 */
+	private int maxRecents = 10;
+	
+	/**
+	 * What happens to FeatureVectors added to a full bin_recent
+	 */
+	private RingBuffer.OverflowPolicy recentOverflowPolicy = 
+			RingBuffer.OverflowPolicy.DROP_OLDEST;
+	
+	/**
+	 * Bin_recent; replaced when its capacity or overflow policy changes
+	 */
+	private volatile RingBuffer<FeatureVector> recents = 
+			new RingBuffer<FeatureVector>(maxRecents, recentOverflowPolicy);
+	
+	/**
+	 * Number of FeatureVectors dropped by bin_recents that were replaced
+	 */
+	private long droppedRecents = 0;
+	
+	/**
+	 * Active bin that the incoming data is stored to
+	 */
+	private volatile BinLabel activeBin = BinLabel.BIN_RECENT;
+	
+	/**
+	 * Creates empty bins
+	 * @param parameters parameters of the session owning the bins; its 
+	 * 			training threshold decides when the active bin switches back 
+	 * 			to the recent bin
+	 * @throws IllegalArgumentException
+	 */
+	public Bins(SessionParameters parameters) 
+			throws IllegalArgumentException {
+		if (parameters == null)
+			throw new IllegalArgumentException("parameters must not be null");
+		this.parameters = parameters;
+	}
+	
+	/**
+	 * Returns Featurevector from {@code binType} at the index {@code index}
+	 * @param binLabel Label of bin to get the FeatureVector from
+	 * @param index		Index of the FeatureVector in the bin
+	 * @return		FeatureVector; a copy for the training bin
+	 * @throws NoSuchElementException
+	 */
+	public FeatureVector get(BinLabel binLabel, int index) 
+			throws NoSuchElementException {
+		if (binLabel == BinLabel.BIN_RECENT) {
+			FeatureVector fv = recents.peek(index);
+			if (fv == null)
+				throw new NoSuchElementException(binLabel.toString() + 
+						" has no FeatureVector at " + index);
+			return fv;
+		}
+		synchronized (this) {
+			if (training == null) 
+				throw new NoSuchElementException(binLabel.toString() + 
+						" bin DNE");
+			if (index < 0 || index >= training.size())
+				throw new NoSuchElementException(binLabel.toString() + 
+						" has no FeatureVector at " + index);
+			return training.snapshot().getFeatureVector(index);
+		}
+	}
+
+	/**
+	 * Returns List with all the FeatureVectors of from binLabel 'type'. 
+	 * For the recent bin the List is a copy; for the training bin it is an
+	 * unmodifiable List over {@link #getTrainingData()}.
+	 * @param binLabel Label of bin to get the FeatureVector from
+	 * @return Returns List with all the FeatureVectors
+	 * @throws NoSuchElementException
+	 */
+	public List<FeatureVector> getAll(BinLabel binLabel) 
+			throws NoSuchElementException{
+		if (binLabel == BinLabel.BIN_RECENT)
+			return recents.snapshot();
+		return getTrainingData().asList();
+	}
+	
+	/**
+	 * Returns a consistent read-only snapshot of the training bin, which 
+	 * shares the bin's arrays rather than copying them
+	 * @return the training bin's current FeatureVectors
+	 * @throws NoSuchElementException
+	 */
+	public synchronized TrainingView getTrainingData() 
+			throws NoSuchElementException {
+		if (training == null) 
+			throw new NoSuchElementException(BinLabel.BIN_TRAIN.toString() + 
+					" bin DNE");
+		return training.snapshot();
+	}
+	
+	/**
+	 * Adds the FeatureVector 'fv' to the BinLabel 'binLabel'. Adding to the
+	 * recent bin takes no lock and only waits if its overflow policy is
+	 * {@code BLOCK}.
+	 * @param binLabel BinLabel of bin to put the FeatureVector from
+	 * @param fv FeatureVector to put in the bin
+	 */
+	public void add(BinLabel binLabel, FeatureVector fv) {
+		if (binLabel == BinLabel.BIN_RECENT) {
+			recents.offer(fv);
+			return;
+		}
+		synchronized (this) {
+			if (training == null) 
+				training = new TrainingStore();
+			training.add(fv);
+			if (binSize(binLabel) >= parameters.getTrainingThreshold())
+				setDefaultBin(BinLabel.BIN_RECENT);
+			/*wake the threads waiting in awaitData*/
+			notifyAll();
+		}
+	}
+	
+	/**
+	 * Waits until the bin of BinLabel 'binLabel' holds at least 
+	 * {@code size} FeatureVectors, or {@code timeout} ms have passed
+	 * @param binLabel BinLabel of bin to wait for
+	 * @param size number of FeatureVectors to wait for
+	 * @param timeout longest time to wait in ms; 0 to return at once
+	 * @return true if the bin holds at least {@code size} FeatureVectors
+	 * @throws InterruptedException
+	 */
+	public boolean awaitData(BinLabel binLabel, int size,
+			long timeout) throws InterruptedException {
+		if (binLabel == BinLabel.BIN_RECENT)
+			return recents.await(size, timeout);
+		synchronized (this) {
+			long deadline = System.currentTimeMillis() + timeout;
+			long remaining = timeout;
+			while (binSize(binLabel) < size && remaining > 0) {
+				wait(remaining);
+				remaining = deadline - System.currentTimeMillis();
+			}
+			return binSize(binLabel) >= size;
+		}
+	}
+	
+	/**
+	 * Clears the BinLabel 'binLabel' and removes FeatureVectors from it
+	 * @param binLabel BinLabel of bin to put the FeatureVector from
+	 * @throws NoSuchElementException
+	 */
+	public synchronized void clear(BinLabel binLabel) 
+			throws NoSuchElementException {
+		if (binLabel == BinLabel.BIN_RECENT) {
+			recents.clear();
+			return;
+		}
+		if (training == null) 
+			throw new NoSuchElementException(binLabel.toString() + " bin DNE");
+		training.clear();
+	}
+	
+	/**
+	 * Returns the size of the bin of BinLabel 'binLabel'. The recent bin is
+	 * sized without a lock; the training bin under the Bins' monitor.
+	 * @param binLabel BinLabel of bin to retrieve size
+	 * @return Returns 0 if no such bin exists otherwise returns its size
+	 */
+	public int binSize(BinLabel binLabel) {
+		if (binLabel == BinLabel.BIN_RECENT)
+			return recents.size();
+		synchronized (this) {
+			if (training == null) 
+				return 0;
+			return training.size();
+		}
+	}
+	
+	/**
+	 * Adds the given FeatureVector to the bin that is currently the active bin
+	 * @param fv FeatureVector to add
+	 */
+	public void add(FeatureVector fv) {
+		add(activeBin, fv);
+		/*if (!activeBin.equals(BinLabel.BIN_RECENT))
+			add(BinLabel.BIN_RECENT, fv);*/
+	}
+	
+	/**
+	 * Returns most recent FeatureVector from the RecentBin
+	 * @return Most recent FeatureVector from the bin_recent
+	 */
+	public FeatureVector getMostRecent() {
+		return recents.poll();
+	}
+	
+	/**
+	 * Takes every FeatureVector pending in the RecentBin, leaving it empty
+	 * unless more arrive meanwhile
+	 * @return pending FeatureVectors from the bin_recent, oldest first; 
+	 * 		empty if there are none
+	 */
+	public List<FeatureVector> drainRecent() {
+		return recents.drain();
+	}
+	
+	/**
+	 * Returns the number of FeatureVectors dropped by the RecentBin's 
+	 * overflow policy because it held MAX_RECENT FeatureVectors
+	 * @return number of FeatureVectors dropped before they were classified
+	 */
+	public synchronized long getDroppedRecents() {
+		return droppedRecents + recents.getDropped();
+	}
+	
+	/**
+	 * Sets the Default Bin to 'newDefault'
+	 * @param newDefault Type of the bin to add FeatureVectors to 
+	 */
+	public synchronized void setDefaultBin(BinLabel binLabel) {
+		//System.out.println("Bin set to: " + binLabel.toString());
+		activeBin = binLabel;
+	}
+	
+	/**
+	 * Returns the MAX_RECENT parameter, the capacity of the RecentBin
+	 * @return the current value of MAX_RECENT
+	 */
+	public int getMaxRecent() {
+		return recents.getCapacity();
+	}
+	
+	/**
+	 * Set the MAX_RECENT parameter
+	 * @param maxRecents the new value of MAX_RECENT  
+	 */
+	public synchronized void setMaxRecent(int maxRecents) {
+		this.maxRecents = maxRecents;
+		replaceRecents();
+	}
+	
+	/**
+	 * Sets what happens to FeatureVectors added to a full RecentBin. 
+	 * {@code DROP_OLDEST} (the default) keeps the newest MAX_RECENT 
+	 * FeatureVectors; {@code BLOCK} makes the adding thread wait for the 
+	 * Itus thread, so it does not suit the UI thread.
+	 * @param overflowPolicy the new overflow policy
+	 * @throws IllegalArgumentException
+	 */
+	public synchronized void setRecentOverflowPolicy(
+			RingBuffer.OverflowPolicy overflowPolicy) 
+					throws IllegalArgumentException {
+		if (overflowPolicy == null)
+			throw new IllegalArgumentException("overflowPolicy must not be " +
+					"null");
+		this.recentOverflowPolicy = overflowPolicy;
+		replaceRecents();
+	}
+	
+	/**
+	 * Replaces the RecentBin with one of the current capacity and overflow
+	 * policy, moving the newest pending FeatureVectors over. Meant to be 
+	 * called before events are dispatched; FeatureVectors added meanwhile 
+	 * may be lost.
+	 */
+	private void replaceRecents() {
+		RingBuffer<FeatureVector> old = recents;
+		RingBuffer<FeatureVector> replacement = new RingBuffer<FeatureVector>(
+				maxRecents, recentOverflowPolicy);
+		recents = replacement;
+		List<FeatureVector> pending = old.drain();
+		int excess = Math.max(0, pending.size() - maxRecents);
+		for (int i = excess; i < pending.size(); i++)
+			replacement.offer(pending.get(i));
+		droppedRecents += old.getDropped() + excess;
+	}
+}
+
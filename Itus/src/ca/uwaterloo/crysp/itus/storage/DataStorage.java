@@ -14,82 +14,89 @@
  */
 package ca.uwaterloo.crysp.itus.storage;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.NoSuchElementException;
 
 import ca.uwaterloo.crysp.itus.FeatureVector;
-import ca.uwaterloo.crysp.itus.Parameters;
+import ca.uwaterloo.crysp.itus.ItusSession;
 
 /**
  * 
  * Data storage class. Provides bins to store FeatureVectors and abstract
- * functions for device specific implementation of permanent storage
+ * functions for device specific implementation of permanent storage.
+ * The bins are the {@link Bins} of the default {@link ItusSession}; other
+ * sessions are reached through their own Bins.
  * @author Aaron Atwater
  * @author Hassan Khan
  */
 public class DataStorage {
 	/**
-	 * HashMap indexed by a String and contained ArrayList of FeatureVectors
-	 * for storing of training/recent samples
+	 * Gets the bins of the default session
+	 * @return the default session's bins
 	 */
-	private static HashMap<BinLabel, ArrayList<FeatureVector>> data = new 
-			HashMap<BinLabel, ArrayList<FeatureVector>>();
-	
-	
-	/**
-	 * Capacity of bin_recent
-	 */
-	private static int MAX_RECENTS = 10;
-	
-	/**
-	 * Active bin that the incoming data is stored to
-	 */
-	private static BinLabel activeBin = BinLabel.BIN_RECENT;
-	
+	private static Bins bins() {
+		return ItusSession.getDefault().getBins();
+	}
 	
 	/**
 	 * Returns Featurevector from {@code binType} at the index {@code index}
 	 * @param binLabel Label of bin to get the FeatureVector from
-	 * @param index		Index of the FeatureVector in the ArrayList of bin
-	 * @return		FeatureVector
+	 * @param index		Index of the FeatureVector in the bin
+	 * @return		FeatureVector; a copy for the training bin
 	 * @throws NoSuchElementException
 	 */
-	public static synchronized FeatureVector get(BinLabel binLabel, int index) 
+	public static FeatureVector get(BinLabel binLabel, int index) 
 			throws NoSuchElementException {
-		if (!data.containsKey(binLabel)) 
-			throw new NoSuchElementException(binLabel.toString() + " bin DNE");
-		return data.get(binLabel).get(index);
+		return bins().get(binLabel, index);
 	}
 
 	/**
-	 * Returns List with all the FeatureVectors of from binLabel 'type'
+	 * Returns List with all the FeatureVectors of from binLabel 'type'. 
+	 * For the recent bin the List is a copy; for the training bin it is an
+	 * unmodifiable List over {@link #getTrainingData()}.
 	 * @param binLabel Label of bin to get the FeatureVector from
 	 * @return Returns List with all the FeatureVectors
 	 * @throws NoSuchElementException
 	 */
 	public static List<FeatureVector> getAll(BinLabel binLabel) 
 			throws NoSuchElementException{
-		if (!data.containsKey(binLabel)) 
-			throw new NoSuchElementException(binLabel.toString() + " bin DNE");
-		return data.get(binLabel);
+		return bins().getAll(binLabel);
 	}
 	
 	/**
-	 * Adds the FeatureVector 'fv' to the BinLabel 'binLabel'
+	 * Returns a consistent read-only snapshot of the training bin, which 
+	 * shares the bin's arrays rather than copying them
+	 * @return the training bin's current FeatureVectors
+	 * @throws NoSuchElementException
+	 */
+	public static TrainingView getTrainingData() 
+			throws NoSuchElementException {
+		return bins().getTrainingData();
+	}
+	
+	/**
+	 * Adds the FeatureVector 'fv' to the BinLabel 'binLabel'. Adding to the
+	 * recent bin takes no lock and only waits if its overflow policy is
+	 * {@code BLOCK}.
 	 * @param binLabel BinLabel of bin to put the FeatureVector from
 	 * @param fv FeatureVector to put in the bin
 	 */
-	public static synchronized void add(BinLabel binLabel, FeatureVector fv) {
-		if (!data.containsKey(binLabel)) 
-			data.put(binLabel, new ArrayList<FeatureVector>());
-		data.get(binLabel).add(fv);
-		if (binLabel == BinLabel.BIN_RECENT && binSize(binLabel) > MAX_RECENTS) 
-			data.get(binLabel).remove(0);
-		if (binLabel == BinLabel.BIN_TRAIN && 
-				binSize(binLabel) >= Parameters.getTrainingThreshold())
-			setDefaultBin(BinLabel.BIN_RECENT);
+	public static void add(BinLabel binLabel, FeatureVector fv) {
+		bins().add(binLabel, fv);
+	}
+	
+	/**
+	 * Waits until the bin of BinLabel 'binLabel' holds at least 
+	 * {@code size} FeatureVectors, or {@code timeout} ms have passed
+	 * @param binLabel BinLabel of bin to wait for
+	 * @param size number of FeatureVectors to wait for
+	 * @param timeout longest time to wait in ms; 0 to return at once
+	 * @return true if the bin holds at least {@code size} FeatureVectors
+	 * @throws InterruptedException
+	 */
+	public static boolean awaitData(BinLabel binLabel, int size,
+			long timeout) throws InterruptedException {
+		return bins().awaitData(binLabel, size, timeout);
 	}
 	
 	/**
@@ -97,11 +104,9 @@ public class DataStorage {
 	 * @param binLabel BinLabel of bin to put the FeatureVector from
 	 * @throws NoSuchElementException
 	 */
-	public static synchronized void clear(BinLabel binLabel) 
+	public static void clear(BinLabel binLabel) 
 			throws NoSuchElementException {
-		if (!data.containsKey(binLabel)) 
-			throw new NoSuchElementException(binLabel.toString() + " bin DNE");
-		data.get(binLabel).clear();
+		bins().clear(binLabel);
 	}
 	
 	/**
@@ -110,40 +115,58 @@ public class DataStorage {
 	 * @return Returns 0 if no such bin exists otherwise returns its size
 	 */
 	public static int binSize(BinLabel binLabel) {
-		if (!data.containsKey(binLabel)) 
-			return 0;
-		return data.get(binLabel).size();
+		return bins().binSize(binLabel);
 	}
 	
 	/**
 	 * Adds the given FeatureVector to the bin that is currently the active bin
 	 * @param fv FeatureVector to add
 	 */
-	public static synchronized void add(FeatureVector fv) {
-		add(activeBin, fv);
-		/*if (!activeBin.equals(BinLabel.BIN_RECENT))
-			add(BinLabel.BIN_RECENT, fv);*/
+	public static void add(FeatureVector fv) {
+		bins().add(fv);
 	}
 	
 	/**
 	 * Returns most recent FeatureVector from the RecentBin
 	 * @return Most recent FeatureVector from the bin_recent
 	 */
-	public static synchronized FeatureVector getMostRecent() {
-		if (data.get(BinLabel.BIN_RECENT) == null)
-			return null;
-		if (data.get(BinLabel.BIN_RECENT).size() == 0) 
-			return null;
-		return data.get(BinLabel.BIN_RECENT).remove(0);
+	public static FeatureVector getMostRecent() {
+		return bins().getMostRecent();
+	}
+	
+	/**
+	 * Takes every FeatureVector pending in the RecentBin, leaving it empty
+	 * unless more arrive meanwhile
+	 * @return pending FeatureVectors from the bin_recent, oldest first; 
+	 * 		empty if there are none
+	 */
+	public static List<FeatureVector> drainRecent() {
+		return bins().drainRecent();
+	}
+	
+	/**
+	 * Returns the number of FeatureVectors dropped by the RecentBin's 
+	 * overflow policy because it held MAX_RECENT FeatureVectors
+	 * @return number of FeatureVectors dropped before they were classified
+	 */
+	public static long getDroppedRecents() {
+		return bins().getDroppedRecents();
 	}
 	
 	/**
 	 * Sets the Default Bin to 'newDefault'
 	 * @param newDefault Type of the bin to add FeatureVectors to 
 	 */
-	public static synchronized void setDefaultBin(BinLabel binLabel) {
-		//System.out.println("Bin set to: " + binLabel.toString());
-		activeBin = binLabel;
+	public static void setDefaultBin(BinLabel binLabel) {
+		bins().setDefaultBin(binLabel);
+	}
+	
+	/**
+	 * Returns the MAX_RECENT parameter, the capacity of the RecentBin
+	 * @return the current value of MAX_RECENT
+	 */
+	public static int getMaxRecent() {
+		return bins().getMaxRecent();
 	}
 	
 	/**
@@ -151,7 +174,21 @@ public class DataStorage {
 	 * @param maxRecents the new value of MAX_RECENT  
 	 */
 	public static void setMaxRecent(int maxRecents) {
-		DataStorage.MAX_RECENTS = maxRecents;
+		bins().setMaxRecent(maxRecents);
+	}
+	
+	/**
+	 * Sets what happens to FeatureVectors added to a full RecentBin. 
+	 * {@code DROP_OLDEST} (the default) keeps the newest MAX_RECENT 
+	 * FeatureVectors; {@code BLOCK} makes the adding thread wait for the 
+	 * Itus thread, so it does not suit the UI thread.
+	 * @param overflowPolicy the new overflow policy
+	 * @throws IllegalArgumentException
+	 */
+	public static void setRecentOverflowPolicy(
+			RingBuffer.OverflowPolicy overflowPolicy) 
+					throws IllegalArgumentException {
+		bins().setRecentOverflowPolicy(overflowPolicy);
 	}
 }
 
@@ -102,4 +102,51 @@ public class DataStorageTest {
 		DataStorage.clear(BinLabel.BIN_RECENT);
 	}
 
+	@Test
+	public void testAwaitData() throws InterruptedException {
+		assertFalse("DataStorage.awaitData waited for a missing bin",
+				DataStorage.awaitData(BinLabel.BIN_RECENT, 1, 0));
+		long start = System.currentTimeMillis();
+		assertFalse("DataStorage.awaitData succeeded without data",
+				DataStorage.awaitData(BinLabel.BIN_RECENT, 1, 50));
+		assertTrue("DataStorage.awaitData returned before its timeout",
+				System.currentTimeMillis() - start >= 50);
+		
+		Thread producer = new Thread() {
+			public void run() {
+				try {
+					sleep(50);
+				} catch (InterruptedException e) {
+				}
+				DataStorage.add(BinLabel.BIN_RECENT, fv);
+			}
+		};
+		start = System.currentTimeMillis();
+		producer.start();
+		assertTrue("DataStorage.awaitData missed an arrival",
+				DataStorage.awaitData(BinLabel.BIN_RECENT, 1, 10000));
+		assertTrue("DataStorage.awaitData waited for its timeout",
+				System.currentTimeMillis() - start < 5000);
+		producer.join();
+		DataStorage.clear(BinLabel.BIN_RECENT);
+	}
+
+	@Test
+	public void testDrainRecent() {
+		assertEquals("DataStorage.drainRecent failed on an empty bin",
+				DataStorage.drainRecent().size(), 0);
+		DataStorage.setMaxRecent(3);
+		assertEquals("DataStorage.getMaxRecent failed",
+				DataStorage.getMaxRecent(), 3);
+		long dropped = DataStorage.getDroppedRecents();
+		for (int i = 0; i < 5; i++)
+			DataStorage.add(BinLabel.BIN_RECENT, fv);
+		assertEquals("DataStorage.getDroppedRecents failed",
+				DataStorage.getDroppedRecents() - dropped, 2);
+		assertEquals("DataStorage.drainRecent failed",
+				DataStorage.drainRecent().size(), 3);
+		assertEquals("DataStorage.drainRecent left samples behind",
+				DataStorage.binSize(BinLabel.BIN_RECENT), 0);
+		DataStorage.setMaxRecent(10);
+	}
 }
@@ -0,0 +1,613 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus.storage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import ca.uwaterloo.crysp.itus.machinelearning.KDTree;
+import ca.uwaterloo.crysp.itus.machinelearning.KNNClassifier.KNNModel;
+import ca.uwaterloo.crysp.itus.machinelearning.KNNStorage;
+import ca.uwaterloo.crysp.itus.machinelearning.LSHIndex;
+import ca.uwaterloo.crysp.itus.machinelearning.RandomFourierFeatures;
+import ca.uwaterloo.crysp.itus.machinelearning.RandomFourierSVMClassifier.RandomFourierModel;
+
+/**
+ * A versioned binary format for trained models, which loads without Java
+ * deserialization. A file starts with a fixed 16-byte header: the magic
+ * number {@code ITUM}, a 2-byte version, a 2-byte model type and the 8-byte
+ * length of the payload. The payload holds the model's scalars followed by
+ * its arrays, each a 4-byte length (-1 for null) and the flat primitive
+ * values, all big-endian. Support vectors and KNN training instances are
+ * row-major matrices, so a memory mapped file is read with bulk copies.
+ * Spatial indexes are not stored but rebuilt from their parameters.
+ * <p>
+ * {@link #save(File, Object)} and {@link #load(File)} fall back to Java
+ * serialization for other objects and for files written before this format
+ * existed, so that implementations of {@link PermanentStorage} can use them
+ * for every model.
+ */
+public class ModelFormat {
+	/**
+	 * First four bytes of every model file, "ITUM"
+	 */
+	public static final int MAGIC = 0x4954554D;
+
+	/**
+	 * Version written by this class; readers reject newer versions
+	 */
+	public static final short VERSION = 1;
+
+	/**
+	 * Size of the header in bytes
+	 */
+	public static final int HEADER_SIZE = 16;
+
+	/**
+	 * Model types of the header
+	 */
+	static final short SVM_MODEL = 1;
+	static final short KNN_MODEL = 2;
+	static final short RANDOM_FOURIER_MODEL = 3;
+
+	/**
+	 * Spatial indexes of a KNN model
+	 */
+	private static final int NO_INDEX = 0;
+	private static final int KD_TREE = 1;
+	private static final int LSH_INDEX = 2;
+
+	private ModelFormat() {
+	}
+
+	/**
+	 * @param model a trained model
+	 * @return true if {@code model} can be written in this format
+	 */
+	public static boolean supports(Object model) {
+		if (model instanceof svm_model)
+			return hasSupportVectors((svm_model) model);
+		if (model instanceof RandomFourierModel)
+			return ((RandomFourierModel) model).svmModel != null &&
+				hasSupportVectors(((RandomFourierModel) model).svmModel);
+		if (model instanceof KNNModel) {
+			LSHIndex lshIndex = ((KNNModel) model).lshIndex;
+			/*indexes stored before their bucket width was recorded cannot
+			 * be rebuilt*/
+			return lshIndex == null || lshIndex.getBucketWidth() > 0;
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if {@code model} holds its support vectors as nodes or
+	 * 			packed
+	 */
+	private static boolean hasSupportVectors(svm_model model) {
+		return model.SV != null || model.SV_dense != null;
+	}
+
+	/**
+	 * Saves {@code model} to {@code file}, in this format if it is
+	 * supported and with Java serialization otherwise
+	 * @param file file to write
+	 * @param model model to save
+	 * @throws IOException
+	 */
+	public static void save(File file, Object model) throws IOException {
+		FileOutputStream fos = new FileOutputStream(file);
+		try {
+			if (supports(model))
+				write(model, fos.getChannel());
+			else {
+				ObjectOutputStream out = new ObjectOutputStream(fos);
+				out.writeObject(model);
+				out.flush();
+			}
+		} finally {
+			fos.close();
+		}
+	}
+
+	/**
+	 * Loads a model saved by {@link #save(File, Object)}, or by Java
+	 * serialization alone. Files in this format are memory mapped. SVM 
+	 * models come back with packed support vectors either way; the 
+	 * deserialized ones are packed by {@code svm_model}'s readObject, which
+	 * calls {@code svm.svm_densify}.
+	 * @param file file to read
+	 * @return the model
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public static Object load(File file)
+			throws IOException, ClassNotFoundException {
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			FileChannel channel = fis.getChannel();
+			ByteBuffer magic = ByteBuffer.allocate(4);
+			channel.read(magic, 0);
+			if (magic.position() == 4 && magic.getInt(0) == MAGIC)
+				return read(channel);
+			return new ObjectInputStream(fis).readObject();
+		} finally {
+			fis.close();
+		}
+	}
+
+	/**
+	 * Maps {@code channel} read-only and decodes the model it holds
+	 * @param channel channel positioned anywhere in a model file
+	 * @return the model
+	 * @throws IOException
+	 */
+	public static Object read(FileChannel channel) throws IOException {
+		return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+				channel.size()));
+	}
+
+	/**
+	 * Writes {@code model} to {@code channel}
+	 * @param model a model for which {@link #supports(Object)} holds
+	 * @param channel channel to write to
+	 * @throws IOException
+	 */
+	public static void write(Object model, WritableByteChannel channel)
+			throws IOException {
+		ByteBuffer buffer = encode(model);
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	/**
+	 * Encodes {@code model}, header included
+	 * @param model a model for which {@link #supports(Object)} holds
+	 * @return a buffer positioned at the start of the header
+	 * @throws IllegalArgumentException
+	 */
+	public static ByteBuffer encode(Object model)
+			throws IllegalArgumentException {
+		if (!supports(model))
+			throw new IllegalArgumentException("Unsupported model: " + model);
+		short type;
+		int size;
+		if (model instanceof svm_model) {
+			type = SVM_MODEL;
+			size = svmSize((svm_model) model);
+		} else if (model instanceof RandomFourierModel) {
+			type = RANDOM_FOURIER_MODEL;
+			size = 24 + svmSize(((RandomFourierModel) model).svmModel);
+		} else {
+			type = KNN_MODEL;
+			size = knnSize((KNNModel) model);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + size);
+		buffer.putInt(MAGIC);
+		buffer.putShort(VERSION);
+		buffer.putShort(type);
+		buffer.putLong(size);
+		if (type == SVM_MODEL)
+			putSVM(buffer, (svm_model) model);
+		else if (type == RANDOM_FOURIER_MODEL) {
+			RandomFourierFeatures featureMap =
+					((RandomFourierModel) model).featureMap;
+			buffer.putInt(featureMap.getNumFeatures());
+			buffer.putInt(featureMap.getDimension());
+			buffer.putDouble(featureMap.getGamma());
+			buffer.putLong(featureMap.getSeed());
+			putSVM(buffer, ((RandomFourierModel) model).svmModel);
+		} else
+			putKNN(buffer, (KNNModel) model);
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Decodes a model from {@code buffer}, starting at its first byte
+	 * @param buffer the encoded model, e.g. a mapped file
+	 * @return an {@code svm_model}, {@code KNNModel} or
+	 * 			{@code RandomFourierModel}
+	 * @throws IOException if {@code buffer} is not a model of a known
+	 * 			version or is truncated
+	 */
+	public static Object decode(ByteBuffer buffer) throws IOException {
+		buffer = buffer.duplicate();
+		buffer.position(0);
+		try {
+			if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC)
+				throw new IOException("Not a model file");
+			short version = buffer.getShort();
+			if (version < 1 || version > VERSION)
+				throw new IOException("Unsupported model version " + version);
+			short type = buffer.getShort();
+			long size = buffer.getLong();
+			if (size != buffer.remaining())
+				throw new IOException("Model file is truncated");
+			if (type == SVM_MODEL)
+				return getSVM(buffer);
+			else if (type == RANDOM_FOURIER_MODEL) {
+				RandomFourierFeatures featureMap = new RandomFourierFeatures(
+						buffer.getInt(), buffer.getInt(), buffer.getDouble(),
+						buffer.getLong());
+				return new RandomFourierModel(featureMap, getSVM(buffer));
+			} else if (type == KNN_MODEL)
+				return getKNN(buffer);
+			throw new IOException("Unknown model type " + type);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Model file is truncated");
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Malformed model: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return size of the SVM payload in bytes
+	 */
+	private static int svmSize(svm_model model) {
+		svm_parameter param = model.param;
+		int size = 4 * 7 + 8 * 7 + size(param.weight_label) +
+				size(param.weight);
+		size += 4 * 3 + size(model.label) + size(model.nSV) +
+				size(model.rho) + size(model.probA) + size(model.probB) +
+				size(model.sv_indices);
+		for (int i = 0; i < model.sv_coef.length; i++)
+			size += size(model.sv_coef[i]);
+		if (model.SV_dense != null)
+			size += 4 * 2 + size(model.SV_dense) + size(model.w);
+		else {
+			svm_node[][] SV = svm.svm_support_vectors(model);
+			int values = 0;
+			for (int i = 0; i < model.l; i++)
+				values += SV[i].length;
+			size += 4 + 4 + model.l * 4 + 4 + values * 4 + 4 + values * 8;
+		}
+		return size;
+	}
+
+	private static void putSVM(ByteBuffer buffer, svm_model model) {
+		svm_parameter param = model.param;
+		buffer.putInt(param.svm_type);
+		buffer.putInt(param.kernel_type);
+		buffer.putInt(param.degree);
+		buffer.putDouble(param.gamma);
+		buffer.putDouble(param.coef0);
+		buffer.putDouble(param.cache_size);
+		buffer.putInt(param.cache_off_heap);
+		buffer.putDouble(param.eps);
+		buffer.putDouble(param.C);
+		buffer.putInt(param.nr_weight);
+		put(buffer, param.weight_label);
+		put(buffer, param.weight);
+		buffer.putDouble(param.nu);
+		buffer.putDouble(param.p);
+		buffer.putInt(param.shrinking);
+		buffer.putInt(param.probability);
+
+		buffer.putInt(model.nr_class);
+		buffer.putInt(model.l);
+		put(buffer, model.label);
+		put(buffer, model.nSV);
+		put(buffer, model.rho);
+		put(buffer, model.probA);
+		put(buffer, model.probB);
+		put(buffer, model.sv_indices);
+		buffer.putInt(model.sv_coef.length);
+		for (int i = 0; i < model.sv_coef.length; i++)
+			put(buffer, model.sv_coef[i]);
+
+		/*dense support vectors are stored packed; others by their nodes*/
+		if (model.SV_dense != null) {
+			buffer.putInt(model.SV_dim);
+			buffer.putInt(model.SV_first_index);
+			put(buffer, model.SV_dense);
+			put(buffer, model.w);
+		} else {
+			buffer.putInt(-1);
+			svm_node[][] SV = svm.svm_support_vectors(model);
+			int[] lengths = new int[model.l];
+			int values = 0;
+			for (int i = 0; i < model.l; i++) {
+				lengths[i] = SV[i].length;
+				values += lengths[i];
+			}
+			int[] indices = new int[values];
+			double[] nodeValues = new double[values];
+			int p = 0;
+			for (int i = 0; i < model.l; i++)
+				for (int j = 0; j < lengths[i]; j++, p++) {
+					indices[p] = SV[i][j].index;
+					nodeValues[p] = SV[i][j].value;
+				}
+			put(buffer, lengths);
+			put(buffer, indices);
+			put(buffer, nodeValues);
+		}
+	}
+
+	private static svm_model getSVM(ByteBuffer buffer) throws IOException {
+		svm_parameter param = new svm_parameter();
+		param.svm_type = buffer.getInt();
+		param.kernel_type = buffer.getInt();
+		param.degree = buffer.getInt();
+		param.gamma = buffer.getDouble();
+		param.coef0 = buffer.getDouble();
+		param.cache_size = buffer.getDouble();
+		param.cache_off_heap = buffer.getInt();
+		param.eps = buffer.getDouble();
+		param.C = buffer.getDouble();
+		param.nr_weight = buffer.getInt();
+		param.weight_label = getInts(buffer);
+		param.weight = getDoubles(buffer);
+		param.nu = buffer.getDouble();
+		param.p = buffer.getDouble();
+		param.shrinking = buffer.getInt();
+		param.probability = buffer.getInt();
+
+		svm_model model = new svm_model();
+		model.param = param;
+		model.nr_class = buffer.getInt();
+		model.l = buffer.getInt();
+		model.label = getInts(buffer);
+		model.nSV = getInts(buffer);
+		model.rho = getDoubles(buffer);
+		model.probA = getDoubles(buffer);
+		model.probB = getDoubles(buffer);
+		model.sv_indices = getInts(buffer);
+		model.sv_coef = new double[buffer.getInt()][];
+		for (int i = 0; i < model.sv_coef.length; i++)
+			model.sv_coef[i] = getDoubles(buffer);
+
+		int dim = buffer.getInt();
+		if (dim >= 0) {
+			model.SV_dim = dim;
+			model.SV_first_index = buffer.getInt();
+			model.SV_dense = getDoubles(buffer);
+			model.w = getDoubles(buffer);
+			if (model.SV_dense == null ||
+					model.SV_dense.length != model.l * dim)
+				throw new IOException("Malformed support vectors");
+			/*the nodes are only built if a sparse query or svm_save_model
+			 * needs them; see svm.svm_support_vectors*/
+		} else {
+			model.SV = new svm_node[model.l][];
+			int[] lengths = getInts(buffer);
+			int[] indices = getInts(buffer);
+			double[] values = getDoubles(buffer);
+			if (lengths == null || lengths.length != model.l ||
+					indices == null || values == null ||
+					indices.length != values.length)
+				throw new IOException("Malformed support vectors");
+			int p = 0;
+			for (int i = 0; i < model.l; i++) {
+				if (p + lengths[i] > values.length)
+					throw new IOException("Malformed support vectors");
+				model.SV[i] = new svm_node[lengths[i]];
+				for (int j = 0; j < lengths[i]; j++, p++) {
+					model.SV[i][j] = new svm_node();
+					model.SV[i][j].index = indices[p];
+					model.SV[i][j].value = values[p];
+				}
+			}
+			svm.svm_densify(model);
+		}
+		return model;
+	}
+
+	/**
+	 * @return size of the KNN payload in bytes
+	 */
+	private static int knnSize(KNNModel model) {
+		int size = 4 * 6 + size(model.labels, model.numSamples) +
+				size(model.trainingData, model.numSamples * model.numFeatures) +
+				size(model.floatData) + size(model.int8Data) +
+				size(model.quantMin) + size(model.quantStep) + 4;
+		if (model.lshIndex != null)
+			size += 4 * 2 + 8 * 2;
+		return size;
+	}
+
+	private static void putKNN(ByteBuffer buffer, KNNModel model) {
+		buffer.putInt(model.k);
+		buffer.putInt(model.numFeatures);
+		buffer.putInt(model.vectorSize);
+		buffer.putInt(model.numSamples);
+		buffer.putInt(model.numOriginalSamples);
+		buffer.putInt(model.storage == null ?
+				KNNStorage.DOUBLE.getValue() : model.storage.getValue());
+		/*arrays shared with a TrainingView may be longer than the model*/
+		put(buffer, model.labels, model.numSamples);
+		put(buffer, model.trainingData, model.numSamples * model.numFeatures);
+		put(buffer, model.floatData);
+		put(buffer, model.int8Data);
+		put(buffer, model.quantMin);
+		put(buffer, model.quantStep);
+		if (model.lshIndex != null) {
+			buffer.putInt(LSH_INDEX);
+			buffer.putInt(model.lshIndex.getNumTables());
+			buffer.putInt(model.lshIndex.getNumProjections());
+			buffer.putDouble(model.lshIndex.getBucketWidth());
+			buffer.putLong(model.lshIndex.getSeed());
+		} else
+			buffer.putInt(model.kdTree != null ? KD_TREE : NO_INDEX);
+	}
+
+	private static KNNModel getKNN(ByteBuffer buffer) throws IOException {
+		KNNModel model = new KNNModel(buffer.getInt(), buffer.getInt());
+		model.vectorSize = buffer.getInt();
+		model.numSamples = buffer.getInt();
+		model.numOriginalSamples = buffer.getInt();
+		model.storage = KNNStorage.getStorage(buffer.getInt());
+		model.labels = getInts(buffer);
+		model.trainingData = getDoubles(buffer);
+		model.floatData = getFloats(buffer);
+		model.int8Data = getBytes(buffer);
+		model.quantMin = getDoubles(buffer);
+		model.quantStep = getDoubles(buffer);
+		int index = buffer.getInt();
+		if (index == LSH_INDEX)
+			model.lshIndex = new LSHIndex(model.trainingData,
+					model.numSamples, model.numFeatures, buffer.getInt(),
+					buffer.getInt(), buffer.getDouble(), buffer.getLong());
+		else if (index == KD_TREE)
+			model.kdTree = new KDTree(model.trainingData, model.numSamples,
+					model.numFeatures);
+		else if (index != NO_INDEX)
+			throw new IOException("Unknown index " + index);
+		return model;
+	}
+
+	/*
+	 * Arrays: a 4-byte length, -1 for null, followed by the values
+	 */
+
+	private static int size(int[] array) {
+		return 4 + (array == null ? 0 : array.length * 4);
+	}
+
+	private static int size(double[] array) {
+		return 4 + (array == null ? 0 : array.length * 8);
+	}
+
+	private static int size(int[] array, int length) {
+		return 4 + (array == null ? 0 : length * 4);
+	}
+
+	private static int size(double[] array, int length) {
+		return 4 + (array == null ? 0 : length * 8);
+	}
+
+	private static int size(float[] array) {
+		return 4 + (array == null ? 0 : array.length * 4);
+	}
+
+	private static int size(byte[] array) {
+		return 4 + (array == null ? 0 : array.length);
+	}
+
+	private static void put(ByteBuffer buffer, int[] array) {
+		buffer.putInt(array == null ? -1 : array.length);
+		if (array != null) {
+			buffer.asIntBuffer().put(array);
+			buffer.position(buffer.position() + array.length * 4);
+		}
+	}
+
+	private static void put(ByteBuffer buffer, double[] array) {
+		buffer.putInt(array == null ? -1 : array.length);
+		if (array != null) {
+			buffer.asDoubleBuffer().put(array);
+			buffer.position(buffer.position() + array.length * 8);
+		}
+	}
+
+	/**
+	 * Writes the first {@code length} values of {@code array}
+	 */
+	private static void put(ByteBuffer buffer, int[] array, int length) {
+		buffer.putInt(array == null ? -1 : length);
+		if (array != null) {
+			buffer.asIntBuffer().put(array, 0, length);
+			buffer.position(buffer.position() + length * 4);
+		}
+	}
+
+	/**
+	 * Writes the first {@code length} values of {@code array}
+	 */
+	private static void put(ByteBuffer buffer, double[] array, int length) {
+		buffer.putInt(array == null ? -1 : length);
+		if (array != null) {
+			buffer.asDoubleBuffer().put(array, 0, length);
+			buffer.position(buffer.position() + length * 8);
+		}
+	}
+
+	private static void put(ByteBuffer buffer, float[] array) {
+		buffer.putInt(array == null ? -1 : array.length);
+		if (array != null) {
+			buffer.asFloatBuffer().put(array);
+			buffer.position(buffer.position() + array.length * 4);
+		}
+	}
+
+	private static void put(ByteBuffer buffer, byte[] array) {
+		buffer.putInt(array == null ? -1 : array.length);
+		if (array != null)
+			buffer.put(array);
+	}
+
+	/**
+	 * @return the length of the next array, or -1 if it is null
+	 * @throws IOException if the length is negative or exceeds the buffer
+	 */
+	private static int length(ByteBuffer buffer, int bytes)
+			throws IOException {
+		int length = buffer.getInt();
+		if (length < -1 || (long) length * bytes > buffer.remaining())
+			throw new IOException("Malformed array length " + length);
+		return length;
+	}
+
+	private static int[] getInts(ByteBuffer buffer) throws IOException {
+		int length = length(buffer, 4);
+		if (length < 0)
+			return null;
+		int[] array = new int[length];
+		buffer.asIntBuffer().get(array);
+		buffer.position(buffer.position() + length * 4);
+		return array;
+	}
+
+	private static double[] getDoubles(ByteBuffer buffer) throws IOException {
+		int length = length(buffer, 8);
+		if (length < 0)
+			return null;
+		double[] array = new double[length];
+		buffer.asDoubleBuffer().get(array);
+		buffer.position(buffer.position() + length * 8);
+		return array;
+	}
+
+	private static float[] getFloats(ByteBuffer buffer) throws IOException {
+		int length = length(buffer, 4);
+		if (length < 0)
+			return null;
+		float[] array = new float[length];
+		buffer.asFloatBuffer().get(array);
+		buffer.position(buffer.position() + length * 4);
+		return array;
+	}
+
+	private static byte[] getBytes(ByteBuffer buffer) throws IOException {
+		int length = length(buffer, 1);
+		if (length < 0)
+			return null;
+		byte[] array = new byte[length];
+		buffer.get(array);
+		return array;
+	}
+}
@@ -0,0 +1,255 @@
+package ca.uwaterloo.crysp.itus.storage;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import libsvm.svm_problem;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.uwaterloo.crysp.itus.FeatureVector;
+import ca.uwaterloo.crysp.itus.machinelearning.ClassLabel;
+import ca.uwaterloo.crysp.itus.machinelearning.KNNClassifier;
+import ca.uwaterloo.crysp.itus.machinelearning.KNNStorage;
+import ca.uwaterloo.crysp.itus.machinelearning.RandomFourierSVMClassifier;
+import ca.uwaterloo.crysp.itus.machinelearning.SVMClassifier;
+
+public class ModelFormatTest {
+	int numFeatures;
+	List<FeatureVector> data;
+
+	@Before
+	public void setUp() {
+		numFeatures = 3;
+		Random random = new Random(42);
+		data = new ArrayList<FeatureVector>();
+		for (int i = 0; i < 60; i++) {
+			boolean positive = i % 2 == 0;
+			double [] features = new double[numFeatures];
+			for (int j = 0; j < numFeatures; j++)
+				features[j] = (positive ? 0 : 1.5) + random.nextGaussian();
+			data.add(new FeatureVector(features, positive ? 
+					ClassLabel.POSITIVE : ClassLabel.NEGATIVE));
+		}
+	}
+
+	private static Object roundTrip(Object model) throws IOException {
+		ByteBuffer buffer = ModelFormat.encode(model);
+		assertEquals("Header does not start with the magic number", 
+				buffer.getInt(0), ModelFormat.MAGIC);
+		return ModelFormat.decode(buffer);
+	}
+
+	@Test
+	public void testSVMModel() throws IOException {
+		for (int kernel = 0; kernel < 2; kernel++) {
+			SVMClassifier svmClassifier = new SVMClassifier(numFeatures);
+			svmClassifier.getSVMParameter().kernel_type = kernel == 0 ? 
+					svm_parameter.RBF : svm_parameter.LINEAR;
+			svmClassifier.train(data);
+			svm_model model = svmClassifier.model;
+			svm_model decoded = (svm_model) roundTrip(model);
+			
+			assertEquals("Support vectors lost", decoded.l, model.l);
+			assertTrue("Packed support vectors differ", 
+					Arrays.equals(decoded.SV_dense, model.SV_dense));
+			assertTrue("Weight vector differs", 
+					Arrays.equals(decoded.w, model.w));
+			assertTrue("Coefficients differ", 
+					Arrays.equals(decoded.sv_coef[0], model.sv_coef[0]));
+			assertTrue("Probability parameters differ", 
+					Arrays.equals(decoded.probA, model.probA) && 
+					Arrays.equals(decoded.probB, model.probB));
+			assertNull("Support vector nodes built on decoding", decoded.SV);
+			double [] scores = svmClassifier.scoreBatch(data);
+			svmClassifier.model = decoded;
+			assertTrue("Decoded model scores differently", 
+					Arrays.equals(svmClassifier.scoreBatch(data), scores));
+			assertNull("Dense queries built support vector nodes", 
+					decoded.SV);
+			/*sparse queries and svm_save_model rebuild the nodes*/
+			svm_node [][] SV = svm.svm_support_vectors(decoded);
+			assertEquals("Support vector nodes differ", 
+					SV[model.l - 1][numFeatures - 1].value, 
+					model.SV[model.l - 1][numFeatures - 1].value, 0);
+			assertEquals("Support vector nodes differ", 
+					SV[model.l - 1][numFeatures - 1].index, 
+					model.SV[model.l - 1][numFeatures - 1].index);
+			assertTrue("Re-encoded model differs", ModelFormat.encode(
+					decoded).equals(ModelFormat.encode(model)));
+		}
+	}
+
+	@Test
+	public void testSparseSVMModel() throws IOException {
+		/*instances of different lengths cannot be packed*/
+		svm_problem problem = new svm_problem();
+		problem.l = 20;
+		problem.y = new double[problem.l];
+		problem.x = new svm_node[problem.l][];
+		for (int i = 0; i < problem.l; i++) {
+			problem.y[i] = i % 2 == 0 ? 1 : -1;
+			problem.x[i] = new svm_node[1 + i % 3];
+			for (int j = 0; j < problem.x[i].length; j++) {
+				problem.x[i][j] = new svm_node();
+				problem.x[i][j].index = j + 1;
+				problem.x[i][j].value = problem.y[i] * (j + 1) + i % 5;
+			}
+		}
+		svm_parameter parameter = 
+				new SVMClassifier(numFeatures).getSVMParameter();
+		parameter.probability = 0;
+		svm_model model = svm.svm_train(problem, parameter);
+		assertNull("Model unexpectedly packed", model.SV_dense);
+		svm_model decoded = (svm_model) roundTrip(model);
+		for (int i = 0; i < problem.l; i++)
+			assertEquals("Decoded sparse model predicts differently", 
+					svm.svm_predict(decoded, problem.x[i]), 
+					svm.svm_predict(model, problem.x[i]), 0);
+	}
+
+	@Test
+	public void testKNNModel() throws IOException {
+		for (int mode = 0; mode < 4; mode++) {
+			KNNClassifier knnClassifier = new KNNClassifier(3, numFeatures);
+			if (mode == 1)
+				knnClassifier.setUseKDTree(true);
+			else if (mode == 2)
+				knnClassifier.setUseLSH(true);
+			else if (mode == 3)
+				knnClassifier.setStorage(KNNStorage.INT8);
+			knnClassifier.train(data);
+			KNNClassifier.KNNModel model = 
+					(KNNClassifier.KNNModel) knnClassifier.getModel();
+			KNNClassifier restored = 
+					new KNNClassifier(roundTrip(model));
+			assertEquals("Storage mode lost", restored.model.storage, 
+					model.storage);
+			assertEquals("KD-tree lost", restored.model.kdTree != null, 
+					model.kdTree != null);
+			assertEquals("LSH index lost", restored.model.lshIndex != null, 
+					model.lshIndex != null);
+			assertTrue("Decoded model classifies differently", 
+					Arrays.equals(restored.classifyBatch(data), 
+							knnClassifier.classifyBatch(data)));
+		}
+	}
+
+	@Test
+	public void testPackedKNNModel() throws IOException {
+		TrainingStore store = new TrainingStore();
+		store.addAll(data);
+		KNNClassifier knnClassifier = new KNNClassifier(3, numFeatures);
+		knnClassifier.trainPacked(store.snapshot());
+		KNNClassifier.KNNModel model = 
+				(KNNClassifier.KNNModel) knnClassifier.getModel();
+		KNNClassifier restored = new KNNClassifier(roundTrip(model));
+		assertEquals("Unused capacity of the training data was stored", 
+				restored.model.trainingData.length, 
+				data.size() * numFeatures);
+		assertEquals("Unused capacity of the labels was stored", 
+				restored.model.labels.length, data.size());
+		assertTrue("Decoded model classifies differently", 
+				Arrays.equals(restored.classifyBatch(data), 
+						knnClassifier.classifyBatch(data)));
+	}
+
+	@Test
+	public void testRandomFourierModel() throws IOException {
+		RandomFourierSVMClassifier classifier = 
+				new RandomFourierSVMClassifier(numFeatures, 64, 7);
+		classifier.train(data);
+		RandomFourierSVMClassifier restored = new RandomFourierSVMClassifier(
+				roundTrip(classifier.getModel()));
+		assertTrue("Decoded model scores differently", Arrays.equals(
+				restored.scoreBatch(data), classifier.scoreBatch(data)));
+	}
+
+	@Test
+	public void testFiles() throws Exception {
+		File file = File.createTempFile("itus_model", null);
+		file.deleteOnExit();
+		KNNClassifier knnClassifier = new KNNClassifier(3, numFeatures);
+		knnClassifier.train(data);
+		
+		ModelFormat.save(file, knnClassifier.getModel());
+		KNNClassifier.KNNModel model = 
+				(KNNClassifier.KNNModel) ModelFormat.load(file);
+		assertEquals("Mapped model lost instances", model.numSamples, 60);
+		
+		/*models written by earlier versions are Java serialized*/
+		ObjectOutputStream out = 
+				new ObjectOutputStream(new FileOutputStream(file));
+		out.writeObject(knnClassifier.getModel());
+		out.close();
+		model = (KNNClassifier.KNNModel) ModelFormat.load(file);
+		assertEquals("Serialized model lost instances", model.numSamples, 60);
+		SVMClassifier svmClassifier = new SVMClassifier(numFeatures);
+		svmClassifier.train(data);
+		out = new ObjectOutputStream(new FileOutputStream(file));
+		out.writeObject(svmClassifier.model);
+		out.close();
+		svm_model svmModel = (svm_model) ModelFormat.load(file);
+		assertTrue("Serialized model was not packed", Arrays.equals(
+				svmModel.SV_dense, svmClassifier.model.SV_dense));
+		
+		/*a decoded model is serialized with its nodes*/
+		ModelFormat.save(file, svmClassifier.model);
+		svmModel = (svm_model) ModelFormat.load(file);
+		out = new ObjectOutputStream(new FileOutputStream(file));
+		out.writeObject(svmModel);
+		out.close();
+		svmModel = (svm_model) ModelFormat.load(file);
+		assertTrue("Serialized model lost its support vectors", 
+				Arrays.equals(svmModel.SV_dense, 
+						svmClassifier.model.SV_dense));
+		
+		
+		ModelFormat.save(file, new ArrayList<FeatureVector>(data));
+		assertEquals("Other objects were not serialized", 
+				((List<?>) ModelFormat.load(file)).size(), 60);
+	}
+
+	@Test
+	public void testMalformed() {
+		KNNClassifier knnClassifier = new KNNClassifier(3, numFeatures);
+		knnClassifier.train(data);
+		ByteBuffer buffer = ModelFormat.encode(knnClassifier.getModel());
+		ByteBuffer truncated = ByteBuffer.allocate(buffer.limit() - 8);
+		truncated.put(buffer.array(), 0, truncated.limit());
+		truncated.flip();
+		try {
+			ModelFormat.decode(truncated);
+			fail("Truncated model decoded");
+		} catch (IOException e) {
+			
+		}
+		buffer.putShort(4, (short) (ModelFormat.VERSION + 1));
+		try {
+			ModelFormat.decode(buffer);
+			fail("Model of a later version decoded");
+		} catch (IOException e) {
+			
+		}
+		try {
+			ModelFormat.encode(data);
+			fail("Unsupported object encoded");
+		} catch (IllegalArgumentException e) {
+			
+		}
+	}
+}
@@ -20,7 +20,8 @@ import java.io.IOException;
 
 /**
  * Interface for permanent storage that is to be implemented by 
- * device specific libraries
+ * device specific libraries. Models are best stored through 
+ * {@link ModelFormat}, which loads them without Java deserialization.
  * 
  * @author Aaron Atwater
  * @author Hassan Khan
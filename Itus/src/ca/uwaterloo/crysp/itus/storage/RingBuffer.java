@@ -0,0 +1,406 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded multi-producer, multi-consumer queue over a fixed array of 
+ * slots that never takes a lock. Each slot carries a sequence number 
+ * telling producers and consumers whether it is free or filled (Vyukov's 
+ * bounded queue), so offer and poll are a compare-and-set on the tail or 
+ * head and touch no other shared state. They are lock-free, not wait-free:
+ * a compare-and-set only fails when another thread has just offered or 
+ * polled, so some thread always makes progress, but a given thread may 
+ * retry. Under {@code DROP_OLDEST} a producer facing a full buffer polls 
+ * the oldest element itself, so producers and the consumer can race for 
+ * the head even with a single producer. {@link #offer} and {@link #poll}
+ * allocate nothing; {@link #drain()} and {@link #snapshot()} return new 
+ * Lists, so consumers that must not allocate use 
+ * {@link #drainTo(Collection)} with a List they reuse.
+ *
+ * One consumer thread may wait for elements with {@link #await}; producers
+ * wake it with {@link LockSupport#unpark} rather than a monitor, so they
+ * never block on it.
+ */
+public class RingBuffer<E> {
+
+	/**
+	 * Typesafe enum pattern for what {@link RingBuffer#offer} does when the
+	 * buffer is full
+	 */
+	public static class OverflowPolicy {
+		/**
+		 * String label for the policy
+		 */
+		private final String name;
+
+		private OverflowPolicy(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Gets the string value for this policy
+		 * @return Returns the name of the policy
+		 */
+		public String toString() {
+			return this.name;
+		}
+
+		/**
+		 * Evicts the oldest element to make room for the new one
+		 */
+		public static final OverflowPolicy DROP_OLDEST =
+				new OverflowPolicy("DROP_OLDEST");
+		/**
+		 * Discards the new element
+		 */
+		public static final OverflowPolicy DROP_NEWEST =
+				new OverflowPolicy("DROP_NEWEST");
+		/**
+		 * Waits for the consumer to make room. The producer parks, so only
+		 * use it on threads that may be held up by the consumer.
+		 */
+		public static final OverflowPolicy BLOCK = new OverflowPolicy("BLOCK");
+	}
+
+	/**
+	 * How long a blocked producer parks before checking for room again, in ns
+	 */
+	private static final long BLOCK_PARK_NANOS = 100000;
+
+	/**
+	 * Number of slots
+	 */
+	private final int capacity;
+
+	/**
+	 * Elements; slot {@code i} holds position {@code p} with
+	 * {@code p % capacity == i}
+	 */
+	private final AtomicReferenceArray<E> slots;
+
+	/**
+	 * Sequence number of each slot: {@code 2p} when it is free for the
+	 * producer of position {@code p}, {@code 2p + 1} when it holds position
+	 * {@code p}. Doubling keeps the two apart even with a single slot.
+	 */
+	private final AtomicLongArray sequences;
+
+	/**
+	 * Position of the next element to poll
+	 */
+	private final AtomicLong head = new AtomicLong();
+
+	/**
+	 * Position of the next element to offer
+	 */
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * Number of elements discarded because the buffer was full
+	 */
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Consumer parked in {@link #await}; null if none
+	 */
+	private final AtomicReference<Thread> waiter =
+			new AtomicReference<Thread>();
+
+	/**
+	 * What {@link #offer} does when the buffer is full
+	 */
+	private final OverflowPolicy overflowPolicy;
+
+	/**
+	 * @param capacity number of slots
+	 * @param overflowPolicy what {@link #offer} does when the buffer is full
+	 * @throws IllegalArgumentException
+	 */
+	public RingBuffer(int capacity, OverflowPolicy overflowPolicy)
+			throws IllegalArgumentException {
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be greater " +
+					"than zero");
+		if (overflowPolicy == null)
+			throw new IllegalArgumentException("overflowPolicy must not be " +
+					"null");
+		this.capacity = capacity;
+		this.overflowPolicy = overflowPolicy;
+		this.slots = new AtomicReferenceArray<E>(capacity);
+		this.sequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++)
+			this.sequences.set(i, 2L * i);
+	}
+
+	/**
+	 * Adds {@code e}, applying the overflow policy if the buffer is full,
+	 * and wakes the consumer waiting in {@link #await}
+	 * @param e element to add
+	 * @return true if {@code e} was added; false if it was dropped
+	 * @throws IllegalArgumentException
+	 */
+	public boolean offer(E e) throws IllegalArgumentException {
+		if (e == null)
+			throw new IllegalArgumentException("e must not be null");
+		boolean added = tryOffer(e);
+		while (!added) {
+			if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+				dropped.incrementAndGet();
+				return false;
+			}
+			if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+				if (poll() != null)
+					dropped.incrementAndGet();
+			}
+			else {
+				if (Thread.currentThread().isInterrupted()) {
+					dropped.incrementAndGet();
+					return false;
+				}
+				signal();
+				LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+			}
+			added = tryOffer(e);
+		}
+		signal();
+		return true;
+	}
+
+	/**
+	 * Claims the tail slot for {@code e}
+	 * @return false if the buffer is full
+	 */
+	private boolean tryOffer(E e) {
+		long position = tail.get();
+		while (true) {
+			int slot = (int) (position % capacity);
+			long difference = sequences.get(slot) - 2 * position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					slots.set(slot, e);
+					sequences.set(slot, 2 * position + 1);
+					return true;
+				}
+				position = tail.get();
+			}
+			else if (difference < 0)
+				return false;
+			else
+				position = tail.get();
+		}
+	}
+
+	/**
+	 * Removes the oldest element
+	 * @return the oldest element; null if the buffer is empty
+	 */
+	public E poll() {
+		return poll(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Removes the oldest element if its position is before {@code limit}
+	 * @return the oldest element; null if the buffer is empty or the oldest
+	 * 			element is at {@code limit} or later
+	 */
+	private E poll(long limit) {
+		long position = head.get();
+		while (true) {
+			if (position >= limit)
+				return null;
+			int slot = (int) (position % capacity);
+			long difference = sequences.get(slot) - (2 * position + 1);
+			if (difference == 0) {
+				if (head.compareAndSet(position, position + 1)) {
+					E e = slots.get(slot);
+					slots.set(slot, null);
+					sequences.set(slot, 2 * (position + capacity));
+					return e;
+				}
+				position = head.get();
+			}
+			else if (difference < 0)
+				return null;
+			else
+				position = head.get();
+		}
+	}
+
+	/**
+	 * Returns the element {@code index} positions after the oldest without
+	 * removing it. If other threads poll meanwhile, {@code index} counts 
+	 * from the oldest element at the time the element is read.
+	 * @param index distance from the oldest element
+	 * @return the element; null if there is none at {@code index}
+	 */
+	public E peek(int index) {
+		if (index < 0)
+			return null;
+		while (true) {
+			long position = head.get() + index;
+			if (position >= tail.get())
+				return null;
+			int slot = (int) (position % capacity);
+			long sequence = sequences.get(slot);
+			if (sequence == 2 * position + 1) {
+				E e = slots.get(slot);
+				/*the slot still holds position if its sequence is unchanged*/
+				if (e != null && sequences.get(slot) == sequence)
+					return e;
+			}
+			else if (sequence < 2 * position + 1)
+				/*claimed by a producer that has not published it yet*/
+				Thread.yield();
+			/*otherwise the element was polled; retry from the new head*/
+		}
+	}
+
+	/**
+	 * Removes the elements that were in the buffer when the call began. 
+	 * Elements offered meanwhile are left for the next drain, so a producer
+	 * that keeps offering cannot make the batch grow without bound.
+	 * @return the removed elements, oldest first
+	 */
+	public List<E> drain() {
+		List<E> elements = new ArrayList<E>(size());
+		drainTo(elements);
+		return elements;
+	}
+
+	/**
+	 * Removes the elements that were in the buffer when the call began and
+	 * adds them to {@code elements}, as {@link #drain()} does, without 
+	 * allocating a List
+	 * @param elements collection to add the removed elements to, oldest 
+	 * 			first
+	 * @return number of elements removed
+	 */
+	public int drainTo(Collection<? super E> elements) {
+		long end = tail.get();
+		int drained = 0;
+		E e;
+		while ((e = poll(end)) != null) {
+			elements.add(e);
+			drained++;
+		}
+		return drained;
+	}
+
+	/**
+	 * Returns the elements currently in the buffer without removing them.
+	 * Only consistent while no other thread polls; elements polled 
+	 * meanwhile may be skipped.
+	 * @return the elements, oldest first
+	 */
+	public List<E> snapshot() {
+		int size = size();
+		List<E> elements = new ArrayList<E>(size);
+		for (int i = 0; i < size; i++) {
+			E e = peek(i);
+			if (e != null)
+				elements.add(e);
+		}
+		return elements;
+	}
+
+	/**
+	 * Removes every element
+	 */
+	public void clear() {
+		while (poll() != null)
+			;
+	}
+
+	/**
+	 * Waits until the buffer holds at least {@code size} elements, or
+	 * {@code timeout} ms have passed. Only one thread may wait at a time.
+	 * @param size number of elements to wait for
+	 * @param timeout longest time to wait in ms; 0 to return at once
+	 * @return true if the buffer holds at least {@code size} elements
+	 * @throws InterruptedException
+	 */
+	public boolean await(int size, long timeout) throws InterruptedException {
+		if (size() >= size || timeout <= 0)
+			return size() >= size;
+		long deadline = System.nanoTime() +
+				TimeUnit.MILLISECONDS.toNanos(timeout);
+		Thread current = Thread.currentThread();
+		waiter.set(current);
+		try {
+			while (size() < size) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0)
+					break;
+				LockSupport.parkNanos(this, remaining);
+				if (Thread.interrupted())
+					throw new InterruptedException();
+			}
+		} finally {
+			waiter.compareAndSet(current, null);
+		}
+		return size() >= size;
+	}
+
+	/**
+	 * Wakes the consumer waiting in {@link #await}, if any
+	 */
+	private void signal() {
+		Thread consumer = waiter.get();
+		if (consumer != null)
+			LockSupport.unpark(consumer);
+	}
+
+	/**
+	 * @return number of elements in the buffer
+	 */
+	public int size() {
+		long headPosition = head.get();
+		long size = tail.get() - headPosition;
+		if (size < 0)
+			return 0;
+		return (int) Math.min(size, capacity);
+	}
+
+	/**
+	 * @return number of slots
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return what {@link #offer} does when the buffer is full
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * @return number of elements discarded because the buffer was full
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+}
@@ -0,0 +1,185 @@
+package ca.uwaterloo.crysp.itus.storage;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RingBufferTest {
+
+	@Test
+	public void testOfferPoll() {
+		RingBuffer<Integer> buffer = new RingBuffer<Integer>(3,
+				RingBuffer.OverflowPolicy.DROP_OLDEST);
+		assertNull("RingBuffer.poll failed on an empty buffer", buffer.poll());
+		for (int round = 0; round < 5; round++) {
+			for (int i = 0; i < 3; i++)
+				assertTrue("RingBuffer.offer failed", buffer.offer(i));
+			assertEquals("RingBuffer.size failed", buffer.size(), 3);
+			assertEquals("RingBuffer.peek failed", (int) buffer.peek(1), 1);
+			assertNull("RingBuffer.peek failed", buffer.peek(3));
+			for (int i = 0; i < 3; i++)
+				assertEquals("RingBuffer.poll failed", (int) buffer.poll(), i);
+			assertEquals("RingBuffer.size failed", buffer.size(), 0);
+		}
+	}
+
+	@Test
+	public void testDropOldest() {
+		RingBuffer<Integer> buffer = new RingBuffer<Integer>(3,
+				RingBuffer.OverflowPolicy.DROP_OLDEST);
+		for (int i = 0; i < 5; i++)
+			assertTrue("RingBuffer.offer failed", buffer.offer(i));
+		assertEquals("RingBuffer.getDropped failed", buffer.getDropped(), 2);
+		List<Integer> drained = buffer.drain();
+		assertEquals("RingBuffer.drain failed", drained.size(), 3);
+		for (int i = 0; i < 3; i++)
+			assertEquals("RingBuffer kept the wrong elements",
+					(int) drained.get(i), i + 2);
+	}
+
+	@Test
+	public void testDrainTo() {
+		RingBuffer<Integer> buffer = new RingBuffer<Integer>(3,
+				RingBuffer.OverflowPolicy.DROP_OLDEST);
+		List<Integer> drained = new ArrayList<Integer>();
+		for (int round = 0; round < 3; round++) {
+			drained.clear();
+			for (int i = 0; i < round; i++)
+				buffer.offer(i);
+			assertEquals("RingBuffer.drainTo failed", 
+					buffer.drainTo(drained), round);
+			for (int i = 0; i < round; i++)
+				assertEquals("RingBuffer.drainTo reordered elements",
+						(int) drained.get(i), i);
+			assertEquals("RingBuffer.drainTo left elements behind", 
+					buffer.size(), 0);
+		}
+	}
+
+	@Test
+	public void testDropNewest() {
+		RingBuffer<Integer> buffer = new RingBuffer<Integer>(3,
+				RingBuffer.OverflowPolicy.DROP_NEWEST);
+		for (int i = 0; i < 5; i++)
+			assertEquals("RingBuffer.offer failed", buffer.offer(i), i < 3);
+		assertEquals("RingBuffer.getDropped failed", buffer.getDropped(), 2);
+		List<Integer> snapshot = buffer.snapshot();
+		for (int i = 0; i < 3; i++)
+			assertEquals("RingBuffer kept the wrong elements",
+					(int) snapshot.get(i), i);
+		assertEquals("RingBuffer.snapshot removed elements", buffer.size(), 3);
+	}
+
+	@Test
+	public void testBlock() throws InterruptedException {
+		final RingBuffer<Integer> buffer = new RingBuffer<Integer>(1,
+				RingBuffer.OverflowPolicy.BLOCK);
+		buffer.offer(0);
+		Thread producer = new Thread() {
+			public void run() {
+				buffer.offer(1);
+			}
+		};
+		producer.start();
+		producer.join(50);
+		assertTrue("RingBuffer.offer did not block", producer.isAlive());
+		assertEquals("RingBuffer.poll failed", (int) buffer.poll(), 0);
+		producer.join(10000);
+		assertFalse("RingBuffer.offer stayed blocked", producer.isAlive());
+		assertEquals("RingBuffer.poll failed", (int) buffer.poll(), 1);
+		assertEquals("RingBuffer.getDropped failed", buffer.getDropped(), 0);
+	}
+
+	@Test
+	public void testProducers() throws InterruptedException {
+		final int producers = 4;
+		final int offers = 10000;
+		final RingBuffer<Integer> buffer = new RingBuffer<Integer>(16,
+				RingBuffer.OverflowPolicy.BLOCK);
+		Thread[] threads = new Thread[producers];
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			threads[p] = new Thread() {
+				public void run() {
+					for (int i = 0; i < offers; i++)
+						buffer.offer(producer * offers + i);
+				}
+			};
+			threads[p].start();
+		}
+		/*every producer's elements must arrive once and in order*/
+		int[] next = new int[producers];
+		int received = 0;
+		while (received < producers * offers) {
+			if (!buffer.await(1, 10000))
+				fail("RingBuffer lost elements");
+			List<Integer> batch = buffer.drain();
+			/*a drain only takes what was pending when it began*/
+			assertTrue("RingBuffer.drain outran the producers",
+					batch.size() <= buffer.getCapacity());
+			for (int e : batch) {
+				int producer = e / offers;
+				assertEquals("RingBuffer reordered elements",
+						e % offers, next[producer]);
+				next[producer]++;
+				received++;
+			}
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals("RingBuffer.size failed", buffer.size(), 0);
+	}
+
+	@Test
+	public void testPeekWhileOffering() throws InterruptedException {
+		final int capacity = 4;
+		final RingBuffer<Integer> buffer = new RingBuffer<Integer>(capacity,
+				RingBuffer.OverflowPolicy.DROP_OLDEST);
+		Thread producer = new Thread() {
+			public void run() {
+				for (int i = 0; i < 200000; i++)
+					buffer.offer(i);
+			}
+		};
+		producer.start();
+		/*only the producer polls, and once full it keeps capacity - 1
+		 * elements, so each index peeked is present, if maybe unpublished*/
+		while (producer.isAlive()) {
+			int index = Math.min(buffer.size(), capacity - 1) - 1;
+			if (index >= 0)
+				assertNotNull("RingBuffer.peek missed an element",
+						buffer.peek(index));
+		}
+		producer.join();
+	}
+
+	@Test
+	public void testAwait() throws InterruptedException {
+		final RingBuffer<Integer> buffer = new RingBuffer<Integer>(3,
+				RingBuffer.OverflowPolicy.DROP_OLDEST);
+		assertFalse("RingBuffer.await succeeded without elements",
+				buffer.await(1, 0));
+		assertFalse("RingBuffer.await succeeded without elements",
+				buffer.await(1, 20));
+		Thread producer = new Thread() {
+			public void run() {
+				try {
+					sleep(50);
+				} catch (InterruptedException e) {
+				}
+				buffer.offer(0);
+				buffer.offer(1);
+			}
+		};
+		long start = System.currentTimeMillis();
+		producer.start();
+		assertTrue("RingBuffer.await missed an arrival",
+				buffer.await(2, 10000));
+		assertTrue("RingBuffer.await waited for its timeout",
+				System.currentTimeMillis() - start < 5000);
+		producer.join();
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus.storage;
+
+import java.util.List;
+
+import ca.uwaterloo.crysp.itus.FeatureVector;
+
+/**
+ * Training instances packed into primitive arrays: features in a growable
+ * row-major {@code double[]} and class labels in an {@code int[]}, with no
+ * object per instance. {@link #snapshot()} returns a {@link TrainingView}
+ * over the arrays without copying them. Rows are only ever appended, and
+ * growing, widening or clearing allocates new arrays, so a view keeps
+ * seeing exactly the rows it was taken with.
+ *
+ * All rows have the width of the widest FeatureVector added; shorter ones
+ * are padded with zeros. Not thread-safe; {@link Bins} guards its
+ * store with its own lock.
+ */
+public class TrainingStore {
+
+	/**
+	 * Number of rows allocated by the first add
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Features in row-major order; row {@code i} starts at
+	 * {@code i * numFeatures}
+	 */
+	private double[] features = new double[0];
+
+	/**
+	 * Integer class label of each row
+	 */
+	private int[] labels = new int[0];
+
+	/**
+	 * Number of rows
+	 */
+	private int size = 0;
+
+	/**
+	 * Number of features of each row
+	 */
+	private int numFeatures = 0;
+
+	/**
+	 * Creates an empty store
+	 */
+	public TrainingStore() {
+	}
+
+	/**
+	 * Creates a store holding the rows of {@code view}
+	 * @param view rows to copy
+	 */
+	public TrainingStore(TrainingView view) {
+		this.numFeatures = view.getNumFeatures();
+		this.size = view.size();
+		int capacity = Math.max(size, INITIAL_CAPACITY);
+		this.features = new double[capacity * numFeatures];
+		System.arraycopy(view.getFeatureArray(), 0, this.features, 0,
+				size * numFeatures);
+		this.labels = new int[capacity];
+		System.arraycopy(view.getLabelArray(), 0, this.labels, 0, size);
+	}
+
+	/**
+	 * Appends the features and class label of {@code fv}
+	 * @param fv instance to append
+	 * @throws IllegalArgumentException
+	 */
+	public void add(FeatureVector fv) throws IllegalArgumentException {
+		if (fv == null)
+			throw new IllegalArgumentException("fv must not be null");
+		int capacity = size < labels.length ? labels.length :
+				Math.max(2 * size, INITIAL_CAPACITY);
+		if (capacity != labels.length || fv.size() > numFeatures)
+			reallocate(capacity, Math.max(numFeatures, fv.size()));
+		int offset = size * numFeatures;
+		for (int j = 0; j < fv.size(); j++)
+			features[offset + j] = fv.get(j);
+		labels[size] = fv.getClassLabel() == null ? 0 :
+				fv.getIntClassLabel();
+		size++;
+	}
+
+	/**
+	 * Appends every FeatureVector in {@code fvs}
+	 * @param fvs instances to append
+	 * @throws IllegalArgumentException
+	 */
+	public void addAll(List<FeatureVector> fvs)
+			throws IllegalArgumentException {
+		for (int i = 0; i < fvs.size(); i++)
+			add(fvs.get(i));
+	}
+
+	/**
+	 * Copies the rows into new arrays of {@code capacity} rows of
+	 * {@code width} features
+	 */
+	private void reallocate(int capacity, int width) {
+		double[] newFeatures = new double[capacity * width];
+		if (width == numFeatures)
+			System.arraycopy(features, 0, newFeatures, 0, size * numFeatures);
+		else
+			for (int i = 0; i < size; i++)
+				System.arraycopy(features, i * numFeatures, newFeatures,
+						i * width, numFeatures);
+		int[] newLabels = new int[capacity];
+		System.arraycopy(labels, 0, newLabels, 0, size);
+		this.features = newFeatures;
+		this.labels = newLabels;
+		this.numFeatures = width;
+	}
+
+	/**
+	 * @return number of rows
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return number of features of each row
+	 */
+	public int getNumFeatures() {
+		return numFeatures;
+	}
+
+	/**
+	 * Removes every row. Views taken before keep their rows.
+	 */
+	public void clear() {
+		this.features = new double[0];
+		this.labels = new int[0];
+		this.size = 0;
+		this.numFeatures = 0;
+	}
+
+	/**
+	 * @return a read-only view of the current rows, sharing the arrays
+	 */
+	public TrainingView snapshot() {
+		return new TrainingView(features, labels, size, numFeatures);
+	}
+}
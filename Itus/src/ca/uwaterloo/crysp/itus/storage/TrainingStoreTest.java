@@ -0,0 +1,107 @@
+package ca.uwaterloo.crysp.itus.storage;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uwaterloo.crysp.itus.FeatureVector;
+import ca.uwaterloo.crysp.itus.machinelearning.ClassLabel;
+
+public class TrainingStoreTest {
+
+	private static FeatureVector fv(double value, int size, ClassLabel label) {
+		double[] features = new double[size];
+		for (int j = 0; j < size; j++)
+			features[j] = value + j;
+		return new FeatureVector(features, label);
+	}
+
+	@Test
+	public void testAdd() {
+		TrainingStore store = new TrainingStore();
+		for (int i = 0; i < 100; i++)
+			store.add(fv(i, 3, i % 2 == 0 ? ClassLabel.POSITIVE :
+					ClassLabel.NEGATIVE));
+		TrainingView view = store.snapshot();
+		assertEquals("TrainingStore.size failed", view.size(), 100);
+		assertEquals("TrainingStore.getNumFeatures failed",
+				view.getNumFeatures(), 3);
+		for (int i = 0; i < 100; i++) {
+			assertEquals("TrainingView.get failed", view.get(i, 2), i + 2,
+					0.0);
+			assertEquals("TrainingView.getLabel failed", view.getLabel(i),
+					i % 2 == 0 ? 1 : -1);
+		}
+		assertEquals("TrainingView.get failed past the row", view.get(0, 3),
+				0, 0.0);
+		try {
+			view.get(100, 0);
+			fail("TrainingView.get failed on a missing row");
+		} catch (IndexOutOfBoundsException e) {
+		}
+	}
+
+	@Test
+	public void testSnapshot() {
+		TrainingStore store = new TrainingStore();
+		store.add(fv(1, 3, ClassLabel.POSITIVE));
+		TrainingView view = store.snapshot();
+		assertSame("TrainingStore.snapshot copied the features",
+				view.getFeatureArray(), store.snapshot().getFeatureArray());
+		for (int i = 0; i < 40; i++)
+			store.add(fv(2, 3, ClassLabel.NEGATIVE));
+		store.add(fv(3, 5, ClassLabel.NEGATIVE));
+		store.clear();
+		store.add(fv(4, 3, ClassLabel.NEGATIVE));
+		assertEquals("TrainingView changed with the store", view.size(), 1);
+		assertEquals("TrainingView changed with the store",
+				view.getNumFeatures(), 3);
+		assertEquals("TrainingView changed with the store", view.get(0, 0),
+				1, 0.0);
+		assertEquals("TrainingView changed with the store", view.getLabel(0),
+				1);
+	}
+
+	@Test
+	public void testWiden() {
+		TrainingStore store = new TrainingStore();
+		store.add(fv(1, 2, ClassLabel.POSITIVE));
+		store.add(fv(10, 4, ClassLabel.NEGATIVE));
+		store.add(fv(20, 3, ClassLabel.NEGATIVE));
+		TrainingView view = store.snapshot();
+		assertEquals("TrainingStore failed to widen", view.getNumFeatures(),
+				4);
+		double[][] expected = {{1, 2, 0, 0}, {10, 11, 12, 13},
+				{20, 21, 22, 0}};
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 4; j++)
+				assertEquals("TrainingStore failed to widen",
+						view.get(i, j), expected[i][j], 0.0);
+	}
+
+	@Test
+	public void testAsList() {
+		TrainingStore store = new TrainingStore();
+		store.add(fv(1, 3, ClassLabel.POSITIVE));
+		store.add(fv(5, 3, ClassLabel.NEGATIVE));
+		List<FeatureVector> rows = store.snapshot().asList();
+		assertEquals("TrainingView.asList failed", rows.size(), 2);
+		assertEquals("TrainingView.asList failed", rows.get(1).get(2), 7,
+				0.0);
+		assertSame("TrainingView.asList failed", rows.get(1).getClassLabel(),
+				ClassLabel.NEGATIVE);
+		try {
+			rows.add(fv(9, 3, ClassLabel.POSITIVE));
+			fail("TrainingView.asList is modifiable");
+		} catch (UnsupportedOperationException e) {
+		}
+		TrainingStore copy = new TrainingStore(store.snapshot());
+		copy.add(fv(9, 3, ClassLabel.POSITIVE));
+		assertEquals("TrainingStore copy changed the original",
+				store.size(), 2);
+		assertEquals("TrainingStore copy failed", copy.snapshot().get(1, 0),
+				5, 0.0);
+	}
+}
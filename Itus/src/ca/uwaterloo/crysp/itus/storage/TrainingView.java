@@ -0,0 +1,165 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus.storage;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import ca.uwaterloo.crysp.itus.FeatureVector;
+import ca.uwaterloo.crysp.itus.machinelearning.ClassLabel;
+
+/**
+ * A read-only snapshot of a {@link TrainingStore}. The view shares the
+ * store's arrays instead of copying them: the store only ever appends past
+ * the rows of its views, and allocates new arrays when it grows or is
+ * cleared, so the rows of a view never change.
+ */
+public class TrainingView {
+
+	/**
+	 * Features in row-major order; row {@code i} starts at
+	 * {@code i * numFeatures}. Shared with the store.
+	 */
+	private final double[] features;
+
+	/**
+	 * Integer class label of each row. Shared with the store.
+	 */
+	private final int[] labels;
+
+	/**
+	 * Number of rows in the view
+	 */
+	private final int size;
+
+	/**
+	 * Number of features of each row
+	 */
+	private final int numFeatures;
+
+	TrainingView(double[] features, int[] labels, int size,
+			int numFeatures) {
+		this.features = features;
+		this.labels = labels;
+		this.size = size;
+		this.numFeatures = numFeatures;
+	}
+
+	/**
+	 * @return number of rows
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return number of features of each row
+	 */
+	public int getNumFeatures() {
+		return numFeatures;
+	}
+
+	/**
+	 * Returns the value of a feature of a row
+	 * @param row index of the row
+	 * @param feature index of the feature
+	 * @return the value; 0 for features beyond {@link #getNumFeatures()},
+	 * 			as {@code FeatureVector.get(index, 0)} does
+	 * @throws IndexOutOfBoundsException
+	 */
+	public double get(int row, int feature) throws IndexOutOfBoundsException {
+		checkRow(row);
+		if (feature < 0 || feature >= numFeatures)
+			return 0;
+		return features[row * numFeatures + feature];
+	}
+
+	/**
+	 * @param row index of the row
+	 * @return integer class label of the row
+	 * @throws IndexOutOfBoundsException
+	 */
+	public int getLabel(int row) throws IndexOutOfBoundsException {
+		checkRow(row);
+		return labels[row];
+	}
+
+	/**
+	 * Returns the features of every row in row-major order. The array is
+	 * shared, not copied, and must not be modified; it may be longer than
+	 * {@code size() * getNumFeatures()}.
+	 * @return the features
+	 */
+	public double[] getFeatureArray() {
+		return features;
+	}
+
+	/**
+	 * Returns the integer class label of every row. The array is shared,
+	 * not copied, and must not be modified; it may be longer than
+	 * {@code size()}.
+	 * @return the labels
+	 */
+	public int[] getLabelArray() {
+		return labels;
+	}
+
+	/**
+	 * @param row index of the row
+	 * @return a new FeatureVector holding a copy of the row
+	 * @throws IndexOutOfBoundsException
+	 */
+	public FeatureVector getFeatureVector(int row)
+			throws IndexOutOfBoundsException {
+		checkRow(row);
+		FeatureVector fv = new FeatureVector(numFeatures);
+		for (int j = 0; j < numFeatures; j++)
+			fv.set(j, features[row * numFeatures + j]);
+		fv.setClassLabel(ClassLabel.getClassLabel(labels[row]));
+		return fv;
+	}
+
+	/**
+	 * Returns an unmodifiable List over the rows, for code that consumes
+	 * FeatureVectors. Each {@code get} creates a new FeatureVector.
+	 * @return the rows as FeatureVectors
+	 */
+	public List<FeatureVector> asList() {
+		return new Rows();
+	}
+
+	private void checkRow(int row) throws IndexOutOfBoundsException {
+		if (row < 0 || row >= size)
+			throw new IndexOutOfBoundsException(String.valueOf(row) +
+					" out of bounds for TrainingView with size " + size);
+	}
+
+	/**
+	 * The rows of the view as a List
+	 */
+	private class Rows extends AbstractList<FeatureVector>
+			implements RandomAccess {
+		@Override
+		public FeatureVector get(int index) {
+			return getFeatureVector(index);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
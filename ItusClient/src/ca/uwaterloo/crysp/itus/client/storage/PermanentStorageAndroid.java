@@ -16,16 +16,13 @@ package ca.uwaterloo.crysp.itus.client.storage;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 
 import android.os.Environment;
 
+import ca.uwaterloo.crysp.itus.storage.ModelFormat;
 import ca.uwaterloo.crysp.itus.storage.PermanentStorage;
 
 /**
@@ -40,26 +37,14 @@ public class PermanentStorageAndroid implements PermanentStorage {
 	public Object retrieveModel(String fileName) throws FileNotFoundException,
 			IOException, ClassNotFoundException {
 		File directory = Environment.getExternalStorageDirectory();
-		Object obj = null;
-		FileInputStream fis = null;
-		ObjectInputStream in = null;
-		fis = new FileInputStream(directory + "/" + fileName);
-		in = new ObjectInputStream(fis);
-		obj = in.readObject();
-		in.close();
-		return obj;
+		return ModelFormat.load(new File(directory + "/" + fileName));
 	}
 
 	@Override
 	public boolean saveModel(String fileName, Object model)
 			throws FileNotFoundException, IOException {
 		File directory = Environment.getExternalStorageDirectory();
-		FileOutputStream fos = null;
-		ObjectOutputStream out = null;
-		fos = new FileOutputStream(directory + "/" + fileName);
-		out = new ObjectOutputStream(fos);
-		out.writeObject(model);
-		out.close();
+		ModelFormat.save(new File(directory + "/" + fileName), model);
 		return true;
 	}
 
@@ -10,7 +10,11 @@ import ca.uwaterloo.crysp.itus.Itus;
 import ca.uwaterloo.crysp.itus.Parameters;
 import ca.uwaterloo.crysp.itus.machinelearning.ClassLabel;
 import ca.uwaterloo.crysp.itus.machinelearning.Classifier;
+import ca.uwaterloo.crysp.itus.machinelearning.ClassifierState;
 import ca.uwaterloo.crysp.itus.machinelearning.KNNClassifier;
+import ca.uwaterloo.crysp.itus.machinelearning.KNNCondensation;
+import ca.uwaterloo.crysp.itus.machinelearning.RandomFourierSVMClassifier;
+import ca.uwaterloo.crysp.itus.machinelearning.SVMClassifier;
 import ca.uwaterloo.crysp.itus.measurements.EventType;
 import ca.uwaterloo.crysp.itus.measurements.Measurement;
 import ca.uwaterloo.crysp.itus.measurements.TouchEvent;
@@ -33,6 +37,10 @@ public class Oracle extends Itus {
 	private String  keystrokePrefix = "itus_keystroke_data_";
 	private int minKeystrokes = 50;
 	private double trainTestRatio = 0.5;
+	private int lshTables = 16;
+	private int lshProjections = 8;
+	private double lshBucketWidth = 0.25;
+	private int rffDimension = 256;
 	private ArrayList<String> touchFiles, keystrokeFiles;
 	ArrayList<ArrayList<FeatureVector>> touchFVs;
 	ArrayList<ArrayList<FeatureVector>> keystrokeFVs;
@@ -106,6 +114,14 @@ public class Oracle extends Itus {
 					minKeystrokes = Integer.parseInt(config.get(key));
 				else if (key.equals("train_test_ratio"))
 					trainTestRatio = Double.parseDouble(config.get(key));
+				else if (key.equals("lsh_tables"))
+					lshTables = Integer.parseInt(config.get(key));
+				else if (key.equals("lsh_projections"))
+					lshProjections = Integer.parseInt(config.get(key));
+				else if (key.equals("lsh_bucket_width"))
+					lshBucketWidth = Double.parseDouble(config.get(key));
+				else if (key.equals("rff_dimension"))
+					rffDimension = Integer.parseInt(config.get(key));
 				else
 					System.out.println("Unsupported config parameter: " + 
 							config.get(key));
@@ -159,8 +175,6 @@ public class Oracle extends Itus {
 				partitioner.getTrainingSamples(partitionIndex);
 		ArrayList <FeatureVector> testingInstances = 
 				partitioner.getTestingSamples(partitionIndex);
-		Parameters.setScoreHistorySize(testingInstances.size());
-		DataStorage.setMaxRecent(testingInstances.size());
 		Parameters.setTrainingThreshold(trainingInstances.size());
 		Parameters.setItusPeriod(0);
 		
@@ -169,32 +183,36 @@ public class Oracle extends Itus {
 			Itus.getItus().getDispatcher().procEvent(EventType.TOUCH_INPUT, 
 					trainingInstances.get(i));
 		}
-
-		for (int i = 0; i < testingInstances.size(); i++) {
-			Itus.getItus().getDispatcher().procEvent(EventType.TOUCH_INPUT, 
-					testingInstances.get(i));
-		}
-		
-		ArrayList<Integer> scores = new ArrayList<Integer>();
-		while (scores.size() < testingInstances.size()) {
-			scores.addAll(getPastScores());
+		while (getClassifier().getState() != ClassifierState.TRAINED) {
 			try {sleep(Parameters.getItusPeriod()+500);}
 			catch (Exception e) {e.printStackTrace();}
 		}
 		Parameters.setItusState(Parameters.State.STOPPED);
 		
+		/*replay the held-out swipes through the measurement and score them
+		 * as a single batch*/
+		Measurement measurement = touchalyticsConfig.getMeasurement();
+		ArrayList<FeatureVector> testVectors = 
+				new ArrayList<FeatureVector>(testingInstances.size());
+		for (int i = 0; i < testingInstances.size(); i++) {
+			measurement.procEvent(testingInstances.get(i), 
+					EventType.TOUCH_INPUT);
+			testVectors.add(measurement.getFeatureVector());
+		}
+		int[] scores = getClassifier().classifyBatch(testVectors);
+		
 		int TP = 0, FP = 0, TN = 0, FN = 0;
 		for (int i = 0; i < testingInstances.size(); i++) {
 			if (testingInstances.get(i).getClassLabel() == 
 					ClassLabel.POSITIVE) {
-				if (scores.get(i) == 1)
+				if (scores[i] == 1)
 					TP++;
 				else
 					FN++;
 			}
 			if (testingInstances.get(i).getClassLabel() == 
 					ClassLabel.NEGATIVE) {
-				if (scores.get(i) == -1)
+				if (scores[i] == -1)
 					TN++;
 				else
 					FP++;
@@ -202,9 +220,154 @@ public class Oracle extends Itus {
 		}
 		System.out.println("TP: " + TP + "; FP: " + FP + "; TN: " + TN + 
 				"; FN: " + FN);
+		if (getClassifier() instanceof KNNClassifier) {
+			evaluateApproximateKNN((KNNClassifier) getClassifier(), 
+					testVectors);
+			evaluateCondensedKNN((KNNClassifier) getClassifier(), 
+					testVectors, testingInstances);
+		}
+		evaluateRandomFourierSVM(DataStorage.getAll(BinLabel.BIN_TRAIN), 
+				testVectors, testingInstances);
 		System.out.print("Stopping simulation");
 	}
 	
+	/**
+	 * Retrains {@code exact}'s training data with an LSH index and reports 
+	 * the fraction of the exact k nearest neighbors it finds (recall), how 
+	 * often both classify alike, and the search time of each
+	 * @param exact the trained classifier
+	 * @param testVectors instances to search for
+	 */
+	private void evaluateApproximateKNN(KNNClassifier exact, 
+			List<FeatureVector> testVectors) {
+		KNNClassifier.KNNModel model = 
+				(KNNClassifier.KNNModel) exact.getModel();
+		if (model.data == null || testVectors.size() == 0)
+			return;
+		KNNClassifier approximate = new KNNClassifier(model.k, 
+				model.numFeatures);
+		approximate.setUseLSH(true);
+		approximate.setLSHParameters(lshTables, lshProjections, 
+				lshBucketWidth);
+		approximate.train(model.data);
+		
+		long exactTime = 0, approximateTime = 0;
+		int found = 0, total = 0, agree = 0;
+		for (FeatureVector fv : testVectors) {
+			long start = System.nanoTime();
+			int[] exactNeighbors = exact.getNeighbors(fv, true);
+			exactTime += System.nanoTime() - start;
+			start = System.nanoTime();
+			int[] approximateNeighbors = approximate.getNeighbors(fv, false);
+			approximateTime += System.nanoTime() - start;
+			
+			for (int neighbor : exactNeighbors)
+				for (int candidate : approximateNeighbors)
+					if (candidate == neighbor) {
+						found++;
+						break;
+					}
+			total += exactNeighbors.length;
+			if (exact.classify(fv) == approximate.classify(fv))
+				agree++;
+		}
+		System.out.println(String.format("LSH (%d tables x %d projections, " +
+				"width %.2f): recall@%d: %.3f; label agreement: %d/%d; " +
+				"exact: %d ns/query; LSH: %d ns/query", lshTables, 
+				lshProjections, lshBucketWidth, model.k, 
+				total == 0 ? 1.0 : (double) found / total, agree, 
+				testVectors.size(), exactTime / testVectors.size(), 
+				approximateTime / testVectors.size()));
+	}
+	
+	/**
+	 * Retrains {@code full}'s training data with each condensation mode and
+	 * reports how much smaller the model gets and how its accuracy on the
+	 * test instances changes
+	 * @param full the trained, uncondensed classifier
+	 * @param testVectors instances to classify
+	 * @param testingInstances labelled instances {@code testVectors} were
+	 * 			derived from
+	 */
+	private void evaluateCondensedKNN(KNNClassifier full, 
+			List<FeatureVector> testVectors, 
+			List<FeatureVector> testingInstances) {
+		KNNClassifier.KNNModel model = 
+				(KNNClassifier.KNNModel) full.getModel();
+		if (model.data == null || testVectors.size() == 0)
+			return;
+		double fullAccuracy = accuracy(full.classifyBatch(testVectors), 
+				testingInstances);
+		KNNCondensation [] modes = {KNNCondensation.EDITED, 
+				KNNCondensation.CONDENSED, KNNCondensation.KMEANS};
+		String [] names = {"edited", "condensed", "k-means"};
+		for (int m = 0; m < modes.length; m++) {
+			KNNClassifier condensed = new KNNClassifier(model.k, 
+					model.numFeatures);
+			condensed.setCondensation(modes[m]);
+			condensed.train(model.data);
+			double accuracy = accuracy(condensed.classifyBatch(testVectors),
+					testingInstances);
+			KNNClassifier.KNNModel condensedModel = 
+					(KNNClassifier.KNNModel) condensed.getModel();
+			System.out.println(String.format("Condensation (%s): %d of %d " +
+					"instances kept; compression ratio: %.2f; accuracy: " +
+					"%.3f (%+.3f)", names[m], condensedModel.numSamples, 
+					condensedModel.numOriginalSamples, 
+					condensed.getCompressionRatio(), accuracy, 
+					accuracy - fullAccuracy));
+		}
+	}
+	
+	/**
+	 * Trains the exact RBF SVM and its random Fourier feature approximation
+	 * on {@code trainingData} and reports the accuracy and prediction time 
+	 * of each
+	 * @param trainingData labelled training instances
+	 * @param testVectors instances to classify
+	 * @param testingInstances labelled instances {@code testVectors} were
+	 * 			derived from
+	 */
+	private void evaluateRandomFourierSVM(List<FeatureVector> trainingData,
+			List<FeatureVector> testVectors, 
+			List<FeatureVector> testingInstances) {
+		if (trainingData == null || trainingData.size() == 0 || 
+				testVectors.size() == 0)
+			return;
+		int numFeatures = trainingData.get(0).size();
+		SVMClassifier [] classifiers = {new SVMClassifier(numFeatures), 
+				new RandomFourierSVMClassifier(numFeatures, rffDimension, 
+						RandomFourierSVMClassifier.DEFAULT_SEED)};
+		String [] names = {"exact RBF", "random Fourier"};
+		for (int c = 0; c < classifiers.length; c++) {
+			classifiers[c].train(trainingData);
+			/*warm up before timing*/
+			classifiers[c].classifyBatch(testVectors);
+			int [] labels = new int[testVectors.size()];
+			long start = System.nanoTime();
+			for (int i = 0; i < labels.length; i++)
+				labels[i] = classifiers[c].classify(testVectors.get(i));
+			long elapsed = System.nanoTime() - start;
+			System.out.println(String.format("SVM (%s%s): accuracy: %.3f; " +
+					"%d ns/query", names[c], c == 0 ? "" : ", " + 
+					rffDimension + " features", accuracy(labels, 
+					testingInstances), elapsed / labels.length));
+		}
+	}
+	
+	/**
+	 * Returns the fraction of {@code labels} that match the class labels 
+	 * of {@code instances}
+	 */
+	private static double accuracy(int[] labels, 
+			List<FeatureVector> instances) {
+		int correct = 0;
+		for (int i = 0; i < labels.length; i++)
+			if (labels[i] == instances.get(i).getIntClassLabel())
+				correct++;
+		return (double) correct / labels.length;
+	}
+	
 	public Oracle() {
 		super();
 		Parameters.setOracleMode(new PermanentStorageOracle());
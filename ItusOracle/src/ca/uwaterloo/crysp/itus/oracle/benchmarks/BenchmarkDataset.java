@@ -0,0 +1,109 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus.oracle.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import ca.uwaterloo.crysp.itus.FeatureVector;
+import ca.uwaterloo.crysp.itus.machinelearning.ClassLabel;
+import ca.uwaterloo.crysp.itus.measurements.TouchEvent;
+import ca.uwaterloo.crysp.itus.oracle.utils.FeatureVectorParser;
+import ca.uwaterloo.crysp.itus.oracle.utils.FileIO;
+
+/**
+ * Loads the bundled touch datasets for benchmarking. The first data source
+ * is labelled as the positive user and all others as negative, the same way
+ * the Oracle partitions them.
+ */
+public class BenchmarkDataset {
+	/**
+	 * Default location of the bundled datasets
+	 */
+	public static final String DEFAULT_PATH = "./res/";
+
+	/**
+	 * Default prefix of the touch dataset files
+	 */
+	public static final String TOUCH_PREFIX = "itus_touch_data_";
+
+	/**
+	 * Reads every touch dataset in {@code datasetPath}, keeping the first
+	 * {@code numFeatures} features of each swipe
+	 * @param datasetPath directory containing the datasets
+	 * @param numFeatures number of features to keep
+	 * @return labelled FeatureVectors
+	 * @throws Exception
+	 */
+	public static ArrayList<FeatureVector> loadTouchData(String datasetPath,
+			int numFeatures) throws Exception {
+		File [] fileList = new File(datasetPath).listFiles();
+		if (fileList == null)
+			throw new IllegalArgumentException("No dataset at " + datasetPath);
+		Arrays.sort(fileList);
+
+		ArrayList<FeatureVector> FVs = new ArrayList<FeatureVector>();
+		boolean positive = true;
+		for (File f : fileList) {
+			if (f.isDirectory() || !f.getName().startsWith(TOUCH_PREFIX))
+				continue;
+			for (String strFV : FileIO.readFile(f.getPath())) {
+				if (strFV.trim().length() == 0)
+					continue;
+				FeatureVector fv = new FeatureVector(TouchEvent.NUM_FEATURES);
+				FeatureVectorParser.parseFeatureVectorFromString(fv, strFV);
+				FVs.add(new FeatureVector(
+						Arrays.copyOf(fv.getAll(), numFeatures),
+						positive ? ClassLabel.POSITIVE : ClassLabel.NEGATIVE));
+			}
+			positive = false;
+		}
+		if (FVs.size() == 0)
+			throw new IllegalArgumentException("No touch data found in " +
+					datasetPath);
+		return FVs;
+	}
+
+	/**
+	 * Grows {@code FVs} to {@code replicas} copies of itself. Every copy
+	 * after the first has each feature perturbed by up to
+	 * {@code jitter} of its magnitude so that the copies are distinct.
+	 * @param FVs the FeatureVectors to replicate
+	 * @param replicas number of copies
+	 * @param jitter relative perturbation of each feature
+	 * @param seed seed of the perturbation
+	 * @return the replicated FeatureVectors
+	 */
+	public static ArrayList<FeatureVector> replicate(
+			ArrayList<FeatureVector> FVs, int replicas, double jitter,
+			long seed) {
+		Random random = new Random(seed);
+		ArrayList<FeatureVector> replicated =
+				new ArrayList<FeatureVector>(FVs.size() * replicas);
+		replicated.addAll(FVs);
+		for (int r = 1; r < replicas; r++)
+			for (FeatureVector fv : FVs) {
+				double [] features = fv.getAll();
+				for (int j = 0; j < features.length; j++)
+					features[j] += features[j] * jitter *
+						(2 * random.nextDouble() - 1);
+				replicated.add(new FeatureVector(features,
+						fv.getClassLabel()));
+			}
+		return replicated;
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus.oracle.benchmarks;
+
+import java.util.ArrayList;
+
+import ca.uwaterloo.crysp.itus.FeatureVector;
+import ca.uwaterloo.crysp.itus.machinelearning.KNNClassifier;
+import ca.uwaterloo.crysp.itus.machinelearning.NeighborHeap;
+
+/**
+ * Compares {@code KNNClassifier.classify}, which ranks on squared distances
+ * and abandons a training row once it cannot be among the k nearest,
+ * against a reference scan that computes the full Euclidean distance to
+ * every row. Run from the ItusOracle directory:
+ * <pre>
+ * KNNBenchmark [datasetPath] [replicas] [iterations]
+ * </pre>
+ * The early-abandoning scan is also timed with parallel scans enabled.
+ * The bundled datasets are small, so the training set is replicated
+ * {@code replicas} times (with jitter) to reach realistic per-user sizes.
+ */
+public class KNNBenchmark {
+	/**
+	 * Touchalytics configuration
+	 */
+	static final int numFeatures = 29;
+	static final int k = 7;
+
+	public static void main(String [] args) throws Exception {
+		String datasetPath = args.length > 0 ? args[0] :
+			BenchmarkDataset.DEFAULT_PATH;
+		int replicas = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+		ArrayList<FeatureVector> queries =
+				BenchmarkDataset.loadTouchData(datasetPath, numFeatures);
+		ArrayList<FeatureVector> training =
+				BenchmarkDataset.replicate(queries, replicas, 0.05, 42);
+		KNNClassifier knnClassifier = new KNNClassifier(k, numFeatures);
+		knnClassifier.train(training);
+		System.out.println("Training samples: " + training.size() +
+				"; queries: " + queries.size() + "; iterations: " + iterations);
+
+		/*warm up both paths before timing*/
+		run(knnClassifier, queries, iterations, false);
+		run(knnClassifier, queries, iterations, true);
+
+		long reference = run(knnClassifier, queries, iterations, true);
+		long earlyAbandon = run(knnClassifier, queries, iterations, false);
+		long numQueries = (long) queries.size() * iterations;
+
+		int mismatches = 0;
+		for (FeatureVector fv : queries)
+			if (knnClassifier.classify(fv) !=
+					referenceClassify(knnClassifier.model, fv.getAll()))
+				mismatches++;
+
+		System.out.println("Full distance scan:     " +
+				reference / numQueries + " ns/query");
+		System.out.println("Early-abandoning scan:  " +
+				earlyAbandon / numQueries + " ns/query");
+		System.out.println(String.format("Speedup: %.2fx; label mismatches: %d",
+				(double) reference / earlyAbandon, mismatches));
+
+		/*same scan split across all cores*/
+		knnClassifier.setParallelThreshold(1);
+		run(knnClassifier, queries, iterations, false);
+		long parallel = run(knnClassifier, queries, iterations, false);
+		System.out.println("Parallel scan (" +
+				Runtime.getRuntime().availableProcessors() + " cores): " +
+				parallel / numQueries + " ns/query");
+	}
+
+	/**
+	 * Classifies every query {@code iterations} times
+	 * @return elapsed time in ns
+	 */
+	static long run(KNNClassifier knnClassifier,
+			ArrayList<FeatureVector> queries, int iterations,
+			boolean reference) {
+		int checksum = 0;
+		long start = System.nanoTime();
+		for (int it = 0; it < iterations; it++)
+			for (FeatureVector fv : queries)
+				checksum += reference ?
+						referenceClassify(knnClassifier.model, fv.getAll()) :
+						knnClassifier.classify(fv);
+		long elapsed = System.nanoTime() - start;
+		if (checksum == Integer.MIN_VALUE)
+			System.out.println();	//keep the loop from being optimized out
+		return elapsed;
+	}
+
+	/**
+	 * Linear scan computing the full Euclidean distance to every row
+	 */
+	static int referenceClassify(KNNClassifier.KNNModel model,
+			double [] query) {
+		NeighborHeap nearest = new NeighborHeap(model.k);
+		int offset = 0;
+		for (int i = 0; i < model.numSamples; i++) {
+			double distance = 0;
+			for (int j = 0; j < model.numFeatures; j++) {
+				double diff = model.trainingData[offset++] - query[j];
+				distance += diff * diff;
+			}
+			nearest.offer(Math.sqrt(distance), model.labels[i], i);
+		}
+		return nearest.getMajorityLabel();
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uwaterloo.crysp.itus.oracle.benchmarks;
+
+import java.util.ArrayList;
+
+import libsvm.svm;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import libsvm.svm_problem;
+import ca.uwaterloo.crysp.itus.FeatureVector;
+import ca.uwaterloo.crysp.itus.machinelearning.SVMClassifier;
+
+/**
+ * Compares libsvm's kernel evaluation on dense instances, which are packed
+ * into contiguous arrays and skip the index comparisons, against the general
+ * sparse merge, both for training and for prediction. The sparse path is 
+ * forced by appending a zero-valued feature to each query, and to every 
+ * other training instance, which leaves every kernel value unchanged. Run 
+ * from the ItusOracle directory:
+ * <pre>
+ * SVMKernelBenchmark [datasetPath] [replicas] [iterations]
+ * </pre>
+ */
+public class SVMKernelBenchmark {
+	/**
+	 * Touchalytics configuration
+	 */
+	static final int numFeatures = 29;
+
+	public static void main(String [] args) throws Exception {
+		String datasetPath = args.length > 0 ? args[0] :
+			BenchmarkDataset.DEFAULT_PATH;
+		int replicas = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+		ArrayList<FeatureVector> queries =
+				BenchmarkDataset.loadTouchData(datasetPath, numFeatures);
+		ArrayList<FeatureVector> training =
+				BenchmarkDataset.replicate(queries, replicas, 0.05, 42);
+		SVMClassifier svmClassifier = new SVMClassifier(numFeatures);
+		svmClassifier.train(training);
+		long sparseTrainTime = train(svmClassifier, training, true);
+		long denseTrainTime = train(svmClassifier, training, false);
+		System.out.println("Training samples: " + training.size() +
+				"; support vectors: " + svm.svm_get_nr_sv(svmClassifier.model) +
+				"; queries: " + queries.size() + "; iterations: " + iterations);
+
+		svm_node [][] dense = new svm_node[queries.size()][];
+		svm_node [][] sparse = new svm_node[queries.size()][];
+		for (int q = 0; q < queries.size(); q++) {
+			dense[q] = toNodes(queries.get(q), numFeatures);
+			sparse[q] = toNodes(queries.get(q), numFeatures + 1);
+		}
+
+		/*warm up both paths before timing*/
+		run(svmClassifier, dense, iterations);
+		run(svmClassifier, sparse, iterations);
+
+		long sparseTime = run(svmClassifier, sparse, iterations);
+		long denseTime = run(svmClassifier, dense, iterations);
+		long numQueries = (long) queries.size() * iterations;
+
+		int mismatches = 0;
+		double [] denseValue = new double[1];
+		double [] sparseValue = new double[1];
+		for (int q = 0; q < queries.size(); q++) {
+			svm.svm_predict_values(svmClassifier.model, dense[q], denseValue);
+			svm.svm_predict_values(svmClassifier.model, sparse[q], sparseValue);
+			if (denseValue[0] != sparseValue[0])
+				mismatches++;
+		}
+
+		System.out.println("Sparse training: " + sparseTrainTime / 1000000 +
+				" ms");
+		System.out.println("Dense training:  " + denseTrainTime / 1000000 +
+				" ms");
+		System.out.println("Sparse kernel:  " + sparseTime / numQueries +
+				" ns/query");
+		System.out.println("Dense kernel:   " + denseTime / numQueries +
+				" ns/query");
+		System.out.println(String.format(
+				"Speedup: %.2fx; decision value mismatches: %d",
+				(double) sparseTime / denseTime, mismatches));
+	}
+
+	/**
+	 * Trains libsvm with the parameters of {@code svmClassifier}
+	 * @param sparse whether to pad every other instance so that training
+	 * cannot use the dense kernels
+	 * @return elapsed time in ns
+	 */
+	static long train(SVMClassifier svmClassifier, 
+			ArrayList<FeatureVector> training, boolean sparse) {
+		svm_problem problem = new svm_problem();
+		problem.l = training.size();
+		problem.y = new double[problem.l];
+		problem.x = new svm_node[problem.l][];
+		for (int i = 0; i < problem.l; i++) {
+			problem.x[i] = toNodes(training.get(i), 
+					sparse && i % 2 == 1 ? numFeatures + 1 : numFeatures);
+			problem.y[i] = training.get(i).getIntClassLabel();
+		}
+		svm_parameter parameter = (svm_parameter) 
+				svmClassifier.getSVMParameter().clone();
+		long start = System.nanoTime();
+		svm.svm_train(problem, parameter);
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Evaluates the decision function of every query {@code iterations}
+	 * times
+	 * @return elapsed time in ns
+	 */
+	static long run(SVMClassifier svmClassifier, svm_node [][] queries,
+			int iterations) {
+		double [] decValue = new double[1];
+		double checksum = 0;
+		long start = System.nanoTime();
+		for (int it = 0; it < iterations; it++)
+			for (svm_node [] query : queries)
+				checksum += svm.svm_predict_values(svmClassifier.model, query,
+						decValue);
+		long elapsed = System.nanoTime() - start;
+		if (checksum == Double.MIN_VALUE)
+			System.out.println();	//keep the loop from being optimized out
+		return elapsed;
+	}
+
+	/**
+	 * Converts {@code fv} to libsvm nodes indexed from 0, padding with
+	 * zeros up to {@code size} nodes
+	 */
+	static svm_node [] toNodes(FeatureVector fv, int size) {
+		svm_node [] nodes = new svm_node[size];
+		for (int i = 0; i < size; i++) {
+			nodes[i] = new svm_node();
+			nodes[i].index = i;
+			nodes[i].value = fv.get(i, 0);
+		}
+		return nodes;
+	}
+}
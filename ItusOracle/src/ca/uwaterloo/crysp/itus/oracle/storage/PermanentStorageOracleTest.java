@@ -62,13 +62,10 @@ public class PermanentStorageOracleTest {
 			fail("Retrieved null object/ malformed kNN data from storage");
 		
 	}
-	/*
 	@Test
 	public void testKNNModelStorage() {
 		KNNClassifier knnClassifier;
 		int size, k, numFeatures;
-		double [] fv;
-		ClassLabel label;
 		ArrayList<FeatureVector> data;
 		double [] positiveFV = {1.0,1.0,1.0};
 		double [] negativeFV = {10.0,10.0,10.0};
@@ -93,12 +90,26 @@ public class PermanentStorageOracleTest {
 			fail("Train failed");
 		
 		PermanentStorageOracle storageHandle = new PermanentStorageOracle();
-		storageHandle.saveModel(knnClassifier, "knn_model", knnClassifier.data);
+		Object model = null;
+		try {
+			if (!storageHandle.saveModel("knn_model", knnClassifier.getModel()))
+				fail("Failed to saveModel");
+			model = storageHandle.retrieveModel("knn_model");
+		} catch (Exception e) {
+			fail("Failed to save/retrieve KNNModel");
+		}
+		
+		KNNClassifier restored = new KNNClassifier(model);
+		assertEquals("Retrieved malformed kNN data from storage",
+				restored.model.numSamples, size);
 		
-		svmClassifier.model = (svm_model)
-				storageHandle.retrieveModel(svmClassifier, "svm_model");
+		double [] positiveSample = {1.0,2.0,3.0};
+		double [] negativeSample = {7.0,8.0,9.0};
+		assertEquals("Test of known positive sample failed", restored.classify(
+				new FeatureVector(positiveSample, ClassLabel.UNKNOWN)), 1);
+		assertEquals("Test of known negative sample failed", restored.classify(
+				new FeatureVector(negativeSample, ClassLabel.UNKNOWN)), -1);
 	}
-*/
 	@Test
 	public void testSVMModelStorage() {
 		/*Test SVM Model permanent storage and Retrieval*/